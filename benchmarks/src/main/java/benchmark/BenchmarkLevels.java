@@ -0,0 +1,92 @@
+package benchmark;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import model.BackgroundTile;
+import model.LevelEditorModel;
+import model.TilePalette;
+
+/**
+ * Builds the levels the benchmarks work on.  Tiles are laid down in runs along each row,
+ * like a painted level rather than noise, and the same size, density and seed always give
+ * the same level.  The tile images are made up, so no images folder is needed.
+ */
+class BenchmarkLevels {
+
+	static final int NUM_TILES = 8;
+	static final int TILE_SIZE = 32;
+	static final long SEED = 42;
+
+	private static final int MAX_RUN = 16;		// Longest run of one tile (or of empty cells)
+
+	private static short[] tileIds;
+
+	/** Palette IDs of the made up tiles, registering them the first time */
+	static synchronized short[] tileIds() {
+		if (tileIds != null)
+			return tileIds;
+		tileIds = new short[NUM_TILES];
+		for (int i = 0; i < NUM_TILES; i++) {
+			BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = img.createGraphics();
+			g.setColor(Color.getHSBColor(i / (float)NUM_TILES, 0.7f, 0.9f));
+			g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+			g.setColor(Color.DARK_GRAY);
+			g.drawRect(2, 2, TILE_SIZE - 5, TILE_SIZE - 5);
+			g.dispose();
+			tileIds[i] = TilePalette.getShared().intern(img, "benchmark" + i + ".png");
+		}
+		return tileIds;
+	}
+
+	/** The made up tiles as BackgroundTiles */
+	static BackgroundTile[] backgroundTiles() {
+		TilePalette palette = TilePalette.getShared();
+		BackgroundTile[] tiles = new BackgroundTile[NUM_TILES];
+		for (int i = 0; i < NUM_TILES; i++)
+			tiles[i] = new BackgroundTile(palette.getImage(tileIds()[i]), palette.getFileName(tileIds()[i]));
+		return tiles;
+	}
+
+	/** A size x size level with about density of its cells holding a tile */
+	static LevelEditorModel create(int size, double density) {
+		LevelEditorModel model = new LevelEditorModel(size, size);
+		fill(model, 0, 0, size, size, density, SEED);
+		model.getHistory().clear();
+		return model;
+	}
+
+	/** Lays tiles down in rows [r1, r2) and columns [c1, c2) so about density of the
+	 *  cells hold one.  Cells left empty aren't touched. */
+	static void fill(LevelEditorModel model, int r1, int c1, int r2, int c2, double density, long seed) {
+		short[] ids = tileIds();
+		Random random = new Random(seed);
+		for (int r = r1; r < r2; r++) {
+			for (int c = c1; c < c2; ) {
+				int run = Math.min(1 + random.nextInt(MAX_RUN), c2 - c);
+				if (random.nextDouble() < density)
+					model.fillRegion(r, c, r + 1, c + run, ids[random.nextInt(ids.length)]);
+				c += run;
+			}
+		}
+	}
+
+	/** An empty folder for files a benchmark writes, deleted when the JVM exits */
+	static File tempDir() throws IOException {
+		File dir = Files.createTempDirectory("leveleditor-bench").toFile();
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	/** Marks a file written in a temp folder for deletion when the JVM exits */
+	static File tempFile(File dir, String name) {
+		File file = new File(dir, name);
+		file.deleteOnExit();
+		return file;
+	}
+}
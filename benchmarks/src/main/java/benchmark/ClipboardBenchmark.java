@@ -0,0 +1,70 @@
+package benchmark;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.LevelEditorModel;
+
+/**
+ * Copying a square selection to the clipboard and pasting it back at different places.
+ * Copying includes publishing to the shared clipboard file, which goes in a temp folder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ClipboardBenchmark {
+
+	@Param({"100", "1000", "4000"})
+	public int size;
+
+	@Param({"0.1", "0.5", "1.0"})
+	public double density;
+
+	@Param({"32", "256"})
+	public int selection;			// Width and height of the copied square, at most the level size
+
+	private LevelEditorModel model;
+	private Point start;
+	private Point end;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLevel() throws IOException {
+		File dir = BenchmarkLevels.tempDir();
+		System.setProperty("leveleditor.clipboardFile", BenchmarkLevels.tempFile(dir, "clipboard.bin").getPath());
+		model = BenchmarkLevels.create(size, density);
+		int n = Math.min(selection, size);
+		start = new Point((size - n) / 2, (size - n) / 2);
+		end = new Point(start.x + n, start.y + n);
+		model.setClipboardLayer(start, end);
+	}
+
+	@Benchmark
+	public void setClipboardLayer() {
+		model.setClipboardLayer(start, end);
+	}
+
+	/** Pastes along the diagonal, so it moves between chunks */
+	@Benchmark
+	public void pasteClipboardLayer() {
+		int offset = (next++ * 17) % size;
+		model.pasteClipboardLayer(offset, offset);
+	}
+}
@@ -0,0 +1,78 @@
+package benchmark;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.BackgroundTile;
+import model.LevelEditorModel;
+
+/**
+ * Single cell edits and resizing the level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ModelBenchmark {
+
+	private static final int NUM_CELLS = 4096;		// Cells setObjectAt cycles through
+	private static final int CROP = 50;				// Rows and columns setGridSize cuts off
+
+	@Param({"100", "1000", "4000"})
+	public int size;
+
+	@Param({"0.1", "0.5", "1.0"})
+	public double density;
+
+	private LevelEditorModel model;
+	private BackgroundTile[] tiles;
+	private int[] cells;							// Row and column pairs spread over the level
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLevel() {
+		model = BenchmarkLevels.create(size, density);
+		tiles = BenchmarkLevels.backgroundTiles();
+		cells = new int[2 * NUM_CELLS];
+		Random random = new Random(BenchmarkLevels.SEED);
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = random.nextInt(size);
+	}
+
+	/** Puts back the strips setGridSize() cropped away */
+	@Setup(Level.Invocation)
+	public void restoreSize() {
+		if (model.numRows() == size)
+			return;
+		model.setGridSize(size, size);
+		BenchmarkLevels.fill(model, size - CROP, 0, size, size, density, next++);
+		BenchmarkLevels.fill(model, 0, size - CROP, size - CROP, size, density, next++);
+		model.getHistory().clear();
+	}
+
+	@Benchmark
+	public void setObjectAt() {
+		int i = next++ & (NUM_CELLS - 1);
+		model.setObjectAt(cells[2*i], cells[2*i + 1], tiles[next & (tiles.length - 1)]);
+	}
+
+	/** Cropping only has to touch the chunks hanging over the new edge */
+	@Benchmark
+	public void setGridSize() {
+		model.setGridSize(size - CROP, size - CROP);
+	}
+}
@@ -0,0 +1,74 @@
+package benchmark;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.LevelEditorController;
+import model.LevelEditorModel;
+import view.CanvasPanel;
+
+/**
+ * Painting one window's worth of the canvas into an offscreen image while panning across
+ * the level, at cell sizes that hit each way CanvasPanel draws: the overview, flat
+ * swatches, baked chunks and, past what ChunkImageCache bakes, single tiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	private static final int VIEW_WIDTH = 1280;
+	private static final int VIEW_HEIGHT = 800;
+	private static final int NUM_STEPS = 64;		// Scroll positions panned through
+
+	@Param({"100", "1000", "4000"})
+	public int size;
+
+	@Param({"0.1", "0.5", "1.0"})
+	public double density;
+
+	@Param({"2", "4", "16", "32", "128"})
+	public int cellWidth;
+
+	private CanvasPanel canvas;
+	private BufferedImage frame;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createCanvas() {
+		LevelEditorModel model = BenchmarkLevels.create(size, density);
+		canvas = new CanvasPanel(new LevelEditorController(model));
+		canvas.setSize(size * cellWidth, size * cellWidth);
+		frame = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/** Paints the view at the next scroll position along the diagonal */
+	@Benchmark
+	public BufferedImage paint() {
+		int step = next++ % NUM_STEPS;
+		int x = (int)((long)Math.max(0, canvas.getWidth() - VIEW_WIDTH) * step / NUM_STEPS);
+		int y = (int)((long)Math.max(0, canvas.getHeight() - VIEW_HEIGHT) * step / NUM_STEPS);
+		Graphics2D g = frame.createGraphics();
+		g.translate(-x, -y);
+		g.setClip(x, y, VIEW_WIDTH, VIEW_HEIGHT);
+		canvas.paint(g);
+		g.dispose();
+		return frame;
+	}
+}
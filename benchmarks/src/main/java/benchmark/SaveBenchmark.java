@@ -0,0 +1,70 @@
+package benchmark;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.BinaryLevelFile;
+import model.LevelEditorModel;
+import model.LevelSnapshot;
+
+/**
+ * Saving the whole level the way the editor's Save menu item does: take a snapshot, write
+ * it, then hand it back to the model.  Saves alternate between two files so every binary
+ * save writes the whole level rather than just the chunks changed since the last one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SaveBenchmark {
+
+	@Param({"100", "1000", "4000"})
+	public int size;
+
+	@Param({"0.1", "0.5", "1.0"})
+	public double density;
+
+	@Param({"lvl", "txt"})
+	public String format;
+
+	private LevelEditorModel model;
+	private File[] files;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createLevel() throws IOException {
+		model = BenchmarkLevels.create(size, density);
+		File dir = BenchmarkLevels.tempDir();
+		String extension = format.equals("lvl") ? BinaryLevelFile.EXTENSION : ".txt";
+		files = new File[] {BenchmarkLevels.tempFile(dir, "a" + extension), BenchmarkLevels.tempFile(dir, "b" + extension)};
+	}
+
+	@Benchmark
+	public void save() throws IOException {
+		File file = files[next++ & 1];
+		LevelSnapshot snapshot = model.snapshot();
+		try {
+			if (file.getName().endsWith(BinaryLevelFile.EXTENSION))
+				snapshot.saveBinary(file, null);
+			else
+				snapshot.saveText(file, null);
+		} finally {
+			model.finishSave(snapshot);
+		}
+	}
+}
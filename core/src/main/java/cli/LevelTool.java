@@ -0,0 +1,265 @@
+package cli;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.BinaryLevelFile;
+import model.LevelEditorModel;
+import model.LevelStats;
+
+/**
+ * Checks, converts or summarizes level files in bulk without a display, e.g. on a build
+ * server:
+ *
+ *   java -jar leveleditor-core.jar validate|stats|convert [options] files or folders...
+ *
+ * Folders are searched for .lvl and .txt levels.  Every level is a separate job, and the
+ * jobs run on a pool with one thread per core.  Each job prints one line as soon as it's
+ * done, and a summary with the throughput comes at the end.  Options:
+ *
+ *   --images <folder>   validate: the tile images levels may use (default images/ if it exists)
+ *   --to lvl|txt        convert: the format to write (default the other one)
+ *   --out <folder>      convert: where to write (default next to each level)
+ *   --threads <n>       jobs to run at once (default one per core)
+ *
+ * The exit code is 0 if every job succeeded, 1 if any failed and 2 for bad arguments.
+ */
+public class LevelTool {
+
+	public static final String TEXT_EXTENSION = ".txt";
+
+	private static final String USAGE = "Usage: LevelTool validate|stats|convert [--images folder] [--to lvl|txt] [--out folder] [--threads n] files or folders...";
+
+	private String command;
+	private File imagesDir;
+	private String toExtension;				// Format convert writes, null for the other one
+	private File outDir;
+	private int numThreads;
+	private ArrayList<File> levels;
+	private HashSet<String> imageNames;		// Tile images validate accepts, null to skip the check
+
+	/** What one job did */
+	private static class Result {
+		File file;
+		boolean ok;
+		String message;
+		long cells;
+		long bytes;
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		LevelTool tool = new LevelTool();
+		String error = tool.parse(args);
+		if (error != null) {
+			System.err.println(error);
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		System.exit(tool.run() ? 0 : 1);
+	}
+
+	private LevelTool() {
+		numThreads = Runtime.getRuntime().availableProcessors();
+		levels = new ArrayList<File>();
+	}
+
+	/** Reads the arguments.  Returns what's wrong with them, or null. */
+	private String parse(String[] args) {
+		if (args.length == 0)
+			return "No command given";
+		command = args[0];
+		if (!command.equals("validate") && !command.equals("stats") && !command.equals("convert"))
+			return "Unknown command " + command;
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.startsWith("--") && i + 1 >= args.length)
+				return "Missing value for " + arg;
+			if (arg.equals("--images"))
+				imagesDir = new File(args[++i]);
+			else if (arg.equals("--to")) {
+				toExtension = "." + args[++i];
+				if (!toExtension.equals(BinaryLevelFile.EXTENSION) && !toExtension.equals(TEXT_EXTENSION))
+					return "Can only convert to lvl or txt";
+			}
+			else if (arg.equals("--out"))
+				outDir = new File(args[++i]);
+			else if (arg.equals("--threads")) {
+				try {
+					numThreads = Math.max(1, Integer.parseInt(args[++i]));
+				} catch (NumberFormatException e) {
+					return "Bad thread count " + args[i];
+				}
+			}
+			else if (arg.startsWith("--"))
+				return "Unknown option " + arg;
+			else
+				addLevels(new File(arg));
+		}
+		if (levels.isEmpty())
+			return "No level files given";
+
+		if (command.equals("validate")) {
+			if (imagesDir == null && new File("images").isDirectory())
+				imagesDir = new File("images");
+			if (imagesDir != null) {
+				String[] names = imagesDir.list();
+				if (names == null)
+					return "Can't read images folder " + imagesDir;
+				imageNames = new HashSet<String>();
+				for (String name : names)
+					imageNames.add(name);
+			}
+		}
+		if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs())
+			return "Can't create output folder " + outDir;
+		return null;
+	}
+
+	/** Adds a level file, or every level file under a folder */
+	private void addLevels(File file) {
+		if (!file.isDirectory()) {
+			levels.add(file);
+			return;
+		}
+		File[] files = file.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (f.isDirectory())
+				addLevels(f);
+			else if (f.getName().endsWith(BinaryLevelFile.EXTENSION) || f.getName().endsWith(TEXT_EXTENSION))
+				levels.add(f);
+		}
+	}
+
+	/** Runs every job and prints the results as they come in.  Returns false if any failed. */
+	private boolean run() {
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		ExecutorCompletionService<Result> jobs = new ExecutorCompletionService<Result>(pool);
+		for (final File level : levels) {
+			jobs.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					return runJob(level);
+				}
+			});
+		}
+
+		int failed = 0;
+		long cells = 0;
+		long bytes = 0;
+		try {
+			for (int i = 0; i < levels.size(); i++) {
+				Result result = jobs.take().get();
+				System.out.println((result.ok ? "" : "FAILED ") + result.file.getPath() + ": " + result.message);
+				if (!result.ok)
+					failed++;
+				cells += result.cells;
+				bytes += result.bytes;
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			pool.shutdownNow();
+		}
+
+		double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		System.out.println(String.format(Locale.ROOT, "%s: %d levels, %d ok, %d failed in %.2f s (%.1f levels/s, %.1f M cells/s, %.1f MB/s on %d threads)",
+				command, levels.size(), levels.size() - failed, failed, seconds, levels.size() / seconds,
+				cells / seconds / 1e6, bytes / seconds / 1e6, numThreads));
+		return failed == 0;
+	}
+
+	/** Loads one level and does the command to it */
+	private Result runJob(File file) {
+		Result result = new Result();
+		result.file = file;
+		result.bytes = file.length();
+		try {
+			LevelEditorModel model = load(file);
+			try {
+				result.cells = (long)model.numRows() * model.numCols();
+				if (command.equals("validate"))
+					validate(model, result);
+				else if (command.equals("stats"))
+					stats(model, result);
+				else
+					convert(model, file, result);
+			} finally {
+				model.closeLevelFile();
+			}
+		} catch (IOException | RuntimeException e) {
+			result.ok = false;
+			result.message = e.toString();
+		}
+		return result;
+	}
+
+	private static LevelEditorModel load(File file) throws IOException {
+		LevelEditorModel model = new LevelEditorModel(1, 1);
+		if (file.getName().endsWith(BinaryLevelFile.EXTENSION))
+			model.loadBinary(file);
+		else
+			model.loadText(file);
+		return model;
+	}
+
+	/** Fails levels with no cells or that use tiles with no image */
+	private void validate(LevelEditorModel model, Result result) {
+		// Counting pages in every chunk, so a damaged binary file fails here
+		LevelStats stats = model.computeStats();
+		if (model.numRows() <= 0 || model.numCols() <= 0) {
+			result.message = "level is " + model.numRows() + "x" + model.numCols();
+			return;
+		}
+		if (imageNames != null) {
+			ArrayList<String> missing = new ArrayList<String>();
+			for (String name : stats.getTileNames())
+				if (!imageNames.contains(name))
+					missing.add(name);
+			if (!missing.isEmpty()) {
+				result.message = missing.size() + " tile(s) with no image: " + String.join(", ", missing);
+				return;
+			}
+		}
+		result.ok = true;
+		result.message = "ok";
+	}
+
+	private void stats(LevelEditorModel model, Result result) {
+		LevelStats stats = model.computeStats();
+		result.ok = true;
+		result.message = stats.numRows() + "x" + stats.numCols() + ", " + stats.numTiles() + " tiles of "
+				+ stats.getTileNames().size() + " kinds, " + stats.numWalkable() + " walkable in "
+				+ stats.numRegions() + " regions";
+	}
+
+	/** Saves the level in the other format, or the one asked for */
+	private void convert(LevelEditorModel model, File file, Result result) throws IOException {
+		String name = file.getName();
+		boolean binary = name.endsWith(BinaryLevelFile.EXTENSION);
+		String extension = toExtension != null ? toExtension : binary ? TEXT_EXTENSION : BinaryLevelFile.EXTENSION;
+		int dot = name.lastIndexOf('.');
+		File out = new File(outDir != null ? outDir : file.getAbsoluteFile().getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + extension);
+		if (out.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+			result.message = "would overwrite itself";
+			return;
+		}
+		if (extension.equals(BinaryLevelFile.EXTENSION))
+			model.saveBinary(out);
+		else
+			model.saveText(out);
+		result.ok = true;
+		result.message = "-> " + out.getPath();
+	}
+}
@@ -0,0 +1,101 @@
+package model;
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into fixed size pages with shelf packing: each page is filled with
+ * rows ("shelves") from the top down, a rectangle goes at the end of the last shelf of
+ * the last page, and a new shelf or page is started when it doesn't fit.  Rectangles
+ * can be added one at a time, or all at once with pack() which sorts them tallest first
+ * so the shelves waste less space.
+ *
+ * Each rectangle is kept padding pixels away from its neighbours so that scaling a
+ * page doesn't bleed one tile's edge into the next.
+ */
+public class AtlasPacker {
+
+	private int pageWidth;
+	private int pageHeight;
+	private int padding;
+	private int numPages;
+	private int shelfX;				// Where the next rectangle goes on the current shelf
+	private int shelfY;				// Top of the current shelf
+	private int shelfHeight;		// Tallest rectangle on the current shelf
+	private int usedHeight;			// Bottom of the lowest shelf on the last page, padding included
+
+	public AtlasPacker(int pageWidth, int pageHeight, int padding) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.padding = padding;
+	}
+
+	/**
+	 * Finds a place for a width x height rectangle, opening a new shelf or page if
+	 * needed.  Returns {page, x, y}, or null if the rectangle is bigger than a page.
+	 */
+	public int[] add(int width, int height) {
+		if (width + 2 * padding > pageWidth || height + 2 * padding > pageHeight)
+			return null;
+		if (numPages == 0)
+			newPage();
+		if (shelfX + width + padding > pageWidth) {
+			// Next shelf
+			shelfY += shelfHeight;
+			shelfX = padding;
+			shelfHeight = 0;
+		}
+		if (shelfY + height + padding > pageHeight)
+			newPage();
+		int[] place = {numPages - 1, shelfX, shelfY};
+		shelfX += width + padding;
+		shelfHeight = Math.max(shelfHeight, height + padding);
+		usedHeight = shelfY + shelfHeight;
+		return place;
+	}
+
+	/**
+	 * Packs every rectangle, tallest first.  Returns {page, x, y} for each rectangle in
+	 * the order given, null for those bigger than a page.
+	 */
+	public int[][] pack(int[] widths, int[] heights) {
+		Integer[] order = new Integer[widths.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> heights[b] != heights[a] ? heights[b] - heights[a] : widths[b] - widths[a]);
+		int[][] places = new int[widths.length][];
+		for (int i : order)
+			places[i] = add(widths[i], heights[i]);
+		return places;
+	}
+
+	/** Number of pages opened so far */
+	public int numPages() {
+		return numPages;
+	}
+
+	/** Height of the last page actually in use, so it can be cropped */
+	public int lastPageHeight() {
+		return Math.min(pageHeight, usedHeight);
+	}
+
+	/** Widest any page gets, so pages can be cropped when there's only one shelf */
+	public int usedWidth() {
+		return numPages > 1 || shelfY > padding ? pageWidth : shelfX;
+	}
+
+	public int pageWidth() {
+		return pageWidth;
+	}
+
+	public int pageHeight() {
+		return pageHeight;
+	}
+
+	/** Starts an empty page */
+	private void newPage() {
+		numPages++;
+		shelfX = padding;
+		shelfY = padding;
+		shelfHeight = 0;
+		usedHeight = padding;
+	}
+}
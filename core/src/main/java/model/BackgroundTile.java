@@ -1,5 +1,5 @@
 package model;
-import javax.swing.ImageIcon;
+import java.awt.Image;
 
 /**
  * Represents a scenery tile intended to be used as a background tile in the game.
@@ -10,8 +10,8 @@ public class BackgroundTile extends Tile {
 
 	private boolean walkable;	// Determines whether this tile can be walked on
 	
-	public BackgroundTile(ImageIcon icon, String fileName) {
-		super(icon, fileName);
+	public BackgroundTile(Image image, String fileName) {
+		super(image, fileName);
 		walkable = true;
 	}
 	
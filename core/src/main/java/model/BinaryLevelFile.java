@@ -0,0 +1,558 @@
+package model;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A level stored in the chunked binary format:
+ *
+ *   header | chunk record | chunk record | ... | palette | layer table | chunk index
+ *
+ * The header holds the level size and where the palette, layer table and index start.
+ * The palette lists the tile file names (file tile ID 1 is the first name, 0 is an empty
+ * cell).  A file's tile IDs are its own: a full rewrite lists just the tiles the layers
+ * use, sorted by name, and an incremental save adds new tiles to the end.  The layer table gives each layer's name, visibility and opacity, bottom layer
+ * first.  The index maps each non-empty chunk's layer and coordinates to the offset of
+ * its record, and every record is the same size: CHUNK_CELLS tile IDs followed by
+ * CHUNK_CELLS walkable bits.  Version 1 files have no layer table and only a background.
+ *
+ * Opening a file only reads the header, palette, layer table and index; chunk records
+ * are paged in by each layer's ChunkedGrid the first time they're touched, so a layer
+ * nobody looks at is never read.  Records are read with positional reads rather than
+ * through a mapping, since a mapped file can't be replaced or resized on Windows.
+ *
+ * Saving back to the same file appends just the chunks that changed, followed by a new
+ * palette and index, and then rewrites the header.  The header write is the commit point,
+ * so a save that dies half way leaves the previous version intact.  Once the file holds
+ * too many stale records it is rewritten from scratch.  Rewriting the file a level was
+ * loaded from switches its BinaryLevelFile over to the new file, so layers still paging
+ * in from it read the same chunks from their new place.
+ *
+ * A save may run on a background thread while chunks are still being paged in on the
+ * event thread: saving builds a new palette and index and only swaps them in at the end.
+ */
+public class BinaryLevelFile {
+
+	public static final String EXTENSION = ".lvl";
+
+	private static final int MAGIC = 0x4C564C31;		// "LVL1"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int INDEX_ENTRY_SIZE = 20;		// layer, chunkRow, chunkCol, record offset
+	private static final int V1_INDEX_ENTRY_SIZE = 16;	// chunkRow, chunkCol, record offset
+	private static final int RECORD_SIZE = ChunkedGrid.CHUNK_CELLS * 2 + ChunkedGrid.CHUNK_CELLS / 8;
+
+	private File file;
+	private int numRows;
+	private int numCols;
+	private volatile String[] paletteNames;			// File tile ID -> tile name, index 0 unused
+	private volatile short[] toPaletteIds;			// File tile ID -> TilePalette ID
+	private volatile ArrayList<HashMap<Long, Long>> indexes;	// Per layer, chunk key -> record offset, replaced rather than changed once published
+	private String[] layerNames;			// Layer table as read by open()
+	private boolean[] layerVisible;
+	private float[] layerOpacity;
+	private long fileEnd;					// End of the index, where the next save appends
+	private FileChannel channel;			// Open for paging in chunks, null if there's nothing to page in.  Guarded by this.
+
+	private BinaryLevelFile(File file) {
+		this.file = file;
+		indexes = new ArrayList<HashMap<Long, Long>>();
+	}
+
+	/** Opens a level file and reads its header, palette and chunk index.  The file stays
+	 *  open for paging in chunks. */
+	public static BinaryLevelFile open(File file) throws IOException {
+		BinaryLevelFile level = new BinaryLevelFile(file);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			level.read(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		level.channel = channel;
+		return level;
+	}
+
+	/** Reads the header, palette, layer table and index */
+	private void read(FileChannel channel) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+
+		// Header
+		if (channel.size() < HEADER_SIZE)
+			throw new IOException(file + " is not a level file");
+		readFully(channel, buf, 0);
+		buf.flip();
+		if (buf.getInt() != MAGIC)
+			throw new IOException(file + " is not a level file");
+		int version = buf.getInt();
+		if (version < 1 || version > VERSION)
+			throw new IOException(file + " was written by a newer version of the editor");
+		numRows = buf.getInt();
+		numCols = buf.getInt();
+		if (buf.getInt() != ChunkedGrid.CHUNK_SIZE)
+			throw new IOException(file + " uses an unsupported chunk size");
+		int paletteSize = buf.getInt();
+		long paletteOffset = buf.getLong();
+		long indexOffset = buf.getLong();
+		int indexCount = buf.getInt();
+		int layerCount = version == 1 ? 1 : buf.getInt();
+		long layersOffset = version == 1 ? paletteOffset : buf.getLong();
+
+		// The palette, layer table and index are written one after the other at the end
+		long end = indexOffset + (long)indexCount * (version == 1 ? V1_INDEX_ENTRY_SIZE : INDEX_ENTRY_SIZE);
+		if (paletteSize < 1 || indexCount < 0 || layerCount < 1 || paletteOffset < HEADER_SIZE || layersOffset < paletteOffset
+				|| indexOffset < layersOffset || end > channel.size() || end - paletteOffset > Integer.MAX_VALUE)
+			throw new IOException(file + " is damaged");
+		buf = ByteBuffer.allocate((int)(end - paletteOffset));
+		readFully(channel, buf, paletteOffset);
+		buf.flip();
+
+		// Palette, translated to the shared palette's IDs
+		TilePalette palette = TilePalette.getShared();
+		paletteNames = new String[paletteSize];
+		toPaletteIds = new short[paletteSize];
+		for (int i = 1; i < paletteSize; i++) {
+			byte[] name = new byte[buf.getShort() & 0xffff];
+			buf.get(name);
+			paletteNames[i] = new String(name, StandardCharsets.UTF_8);
+			toPaletteIds[i] = palette.intern(null, paletteNames[i]);
+		}
+
+		// Layers
+		layerNames = new String[layerCount];
+		layerVisible = new boolean[layerCount];
+		layerOpacity = new float[layerCount];
+		if (version == 1) {
+			layerNames[0] = LevelLayer.DEFAULT_NAMES[0];
+			layerVisible[0] = true;
+			layerOpacity[0] = 1f;
+		}
+		else {
+			buf.position((int)(layersOffset - paletteOffset));
+			for (int i = 0; i < layerCount; i++) {
+				byte[] name = new byte[buf.getShort() & 0xffff];
+				buf.get(name);
+				layerNames[i] = new String(name, StandardCharsets.UTF_8);
+				layerVisible[i] = buf.get() != 0;
+				layerOpacity[i] = buf.getFloat();
+			}
+		}
+		ArrayList<HashMap<Long, Long>> indexes = new ArrayList<HashMap<Long, Long>>();
+		for (int i = 0; i < layerCount; i++)
+			indexes.add(new HashMap<Long, Long>());
+
+		// Chunk index
+		buf.position((int)(indexOffset - paletteOffset));
+		for (int i = 0; i < indexCount; i++) {
+			int layer = version == 1 ? 0 : buf.getInt();
+			int chunkRow = buf.getInt();
+			int chunkCol = buf.getInt();
+			long offset = buf.getLong();
+			if (layer >= 0 && layer < layerCount)
+				indexes.get(layer).put(ChunkedGrid.key(chunkRow, chunkCol), offset);
+		}
+		this.indexes = indexes;
+		fileEnd = end;
+	}
+
+	/** Builds the file's layers, each paging its own chunks in from the file as they're needed */
+	ArrayList<LevelLayer> createLayers() {
+		ArrayList<LevelLayer> layers = new ArrayList<LevelLayer>();
+		for (int i = 0; i < layerNames.length; i++) {
+			ChunkedGrid grid = new ChunkedGrid();
+			grid.setSource(new LayerSource(i), chunkKeys(i));
+			layers.add(new LevelLayer(layerNames[i], grid, layerVisible[i], layerOpacity[i]));
+		}
+		return layers;
+	}
+
+	/**
+	 * Saves a stack of layers to file.  If previous is what the layers were loaded from
+	 * (or last saved to) and it's the same file, only chunks changed since then are
+	 * written.  Returns the BinaryLevelFile describing what's now on disk.  progress may
+	 * be null.
+	 */
+	public static BinaryLevelFile save(List<LevelLayer> layers, int numRows, int numCols, File file, BinaryLevelFile previous, ProgressListener progress) throws IOException {
+		if (previous != null && previous.canSaveIncrementally(file))
+			return previous.saveChanges(layers, numRows, numCols, progress);
+
+		BinaryLevelFile level = write(layers, numRows, numCols, file, previous, progress);
+		for (LevelLayer layer : layers)
+			layer.getGrid().markSaved();
+		return level;
+	}
+
+	/** Writes every layer to a new file, replacing file only once it's complete.  If
+	 *  previous (which may be null) was opened from file it's switched over to the new
+	 *  file and returned.  Unlike save() the grids' record of what changed is left alone. */
+	static BinaryLevelFile write(List<LevelLayer> layers, int numRows, int numCols, File file, BinaryLevelFile previous, ProgressListener progress) throws IOException {
+		// Everything gets rewritten, so make sure nothing is left only in the old file
+		for (LevelLayer layer : layers)
+			layer.getGrid().loadAll();
+		BinaryLevelFile level = new BinaryLevelFile(file);
+		level.numRows = numRows;
+		level.numCols = numCols;
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			level.fileEnd = HEADER_SIZE;
+			ArrayList<HashMap<Long, Long>> newIndexes = new ArrayList<HashMap<Long, Long>>();
+			for (int i = 0; i < layers.size(); i++)
+				newIndexes.add(new HashMap<Long, Long>());
+			// Just the tiles in use, in an order that doesn't depend on what else the shared palette holds
+			TilePalette palette = TilePalette.getShared();
+			short[] fromPaletteIds = new short[palette.size()];
+			boolean[] used = new boolean[palette.size()];
+			for (LevelLayer layer : layers)
+				for (ChunkedGrid.Chunk chunk : layer.getGrid().chunks())
+					for (short id : chunk.ids)
+						used[id] = true;
+			ArrayList<String> names = new ArrayList<String>();
+			for (int i = 1; i < used.length; i++)
+				if (used[i])
+					names.add(palette.getFileName((short)i));
+			Collections.sort(names);
+			String[] paletteNames = new String[names.size() + 1];
+			short[] toPaletteIds = new short[names.size() + 1];
+			for (int i = 1; i < paletteNames.length; i++) {
+				paletteNames[i] = names.get(i - 1);
+				toPaletteIds[i] = palette.idOf(paletteNames[i]);
+				fromPaletteIds[toPaletteIds[i]] = (short)i;
+			}
+
+			level.writeChunks(channel, layers, false, fromPaletteIds, newIndexes, progress);
+			level.writeTail(channel, layers, paletteNames, toPaletteIds, newIndexes);
+			channel.force(true);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		if (previous != null && previous.isFile(file)) {
+			previous.replaceWith(temp, level);
+			return previous;
+		}
+		move(temp, file);
+		return level;
+	}
+
+	/** Whether this was opened from or saved to file */
+	private boolean isFile(File target) throws IOException {
+		return file.getCanonicalFile().equals(target.getCanonicalFile());
+	}
+
+	/** Moves the rewritten file temp over this one and takes on its contents from level.
+	 *  The file is closed while it's being replaced, and chunks wait to be paged in until
+	 *  it's open again. */
+	private synchronized void replaceWith(File temp, BinaryLevelFile level) throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+		try {
+			move(temp, file);
+		} finally {
+			// On failure this is the old file, still complete
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+		numRows = level.numRows;
+		numCols = level.numCols;
+		fileEnd = level.fileEnd;
+		paletteNames = level.paletteNames;
+		toPaletteIds = level.toPaletteIds;
+		indexes = level.indexes;
+	}
+
+	private static void move(File temp, File file) throws IOException {
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** Page in one of a layer's chunk records from the file */
+	synchronized ChunkedGrid.Chunk loadChunk(int layer, int chunkRow, int chunkCol) {
+		if (layer >= indexes.size())
+			return null;
+		Long offset = indexes.get(layer).get(ChunkedGrid.key(chunkRow, chunkCol));
+		if (offset == null || channel == null)
+			return null;
+		ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+		try {
+			readFully(channel, buf, offset);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buf.flip();
+		ChunkedGrid.Chunk chunk = new ChunkedGrid.Chunk(chunkRow, chunkCol);
+		buf.asShortBuffer().get(chunk.ids);
+		buf.position(buf.position() + ChunkedGrid.CHUNK_CELLS * 2);
+		buf.asLongBuffer().get(chunk.walkable);
+		for (int i = 0; i < chunk.ids.length; i++)
+			chunk.ids[i] = chunk.ids[i] > 0 && chunk.ids[i] < toPaletteIds.length ? toPaletteIds[chunk.ids[i]] : TilePalette.EMPTY;
+		chunk.recount();
+		return chunk;
+	}
+
+	/** Coordinates of every chunk of a layer stored in the file, as ChunkedGrid keys */
+	public Collection<Long> chunkKeys(int layer) {
+		ArrayList<HashMap<Long, Long>> indexes = this.indexes;
+		return layer < indexes.size() ? indexes.get(layer).keySet() : Collections.<Long>emptySet();
+	}
+
+	/** Number of layers in the file */
+	public int numLayers() {
+		return indexes.size();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Stops paging in chunks and closes the file.  Only once no layer will page in from it again. */
+	public synchronized void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	/** Only the changed chunks can be written if this is the same file and it isn't
+	 *  mostly stale records */
+	private boolean canSaveIncrementally(File target) throws IOException {
+		if (!target.exists() || !isFile(target))
+			return false;
+		long liveBytes = HEADER_SIZE;
+		for (HashMap<Long, Long> index : indexes)
+			liveBytes += (long)index.size() * (RECORD_SIZE + INDEX_ENTRY_SIZE);
+		return fileEnd <= 2 * liveBytes + (1 << 20);
+	}
+
+	/** Appends the changed chunks of every layer plus a new palette, layer table and index,
+	 *  then commits the new header */
+	private BinaryLevelFile saveChanges(List<LevelLayer> layers, int numRows, int numCols, ProgressListener progress) throws IOException {
+		ArrayList<HashMap<Long, Long>> newIndexes = new ArrayList<HashMap<Long, Long>>();
+		for (int i = 0; i < layers.size(); i++) {
+			ChunkedGrid grid = layers.get(i).getGrid();
+			HashMap<Long, Long> newIndex = i < indexes.size() ? new HashMap<Long, Long>(indexes.get(i)) : new HashMap<Long, Long>();
+			for (Long key : grid.removedChunkKeys())
+				if (!grid.hasChunk(key))
+					newIndex.remove(key);
+			newIndexes.add(newIndex);
+		}
+
+		// Records already in the file keep their IDs, so tiles new to it go on the end of its palette
+		TilePalette palette = TilePalette.getShared();
+		short[] fromPaletteIds = new short[palette.size()];
+		ArrayList<String> names = new ArrayList<String>(Arrays.asList(paletteNames));
+		ArrayList<Short> ids = new ArrayList<Short>();
+		for (short id : toPaletteIds)
+			ids.add(id);
+		for (int i = names.size() - 1; i > 0; i--)
+			if (toPaletteIds[i] < fromPaletteIds.length)
+				fromPaletteIds[toPaletteIds[i]] = (short)i;
+		for (LevelLayer layer : layers) {
+			for (ChunkedGrid.Chunk chunk : layer.getGrid().chunks()) {
+				if (!chunk.dirty)
+					continue;
+				for (short id : chunk.ids) {
+					if (id == TilePalette.EMPTY || fromPaletteIds[id] != 0)
+						continue;
+					if (names.size() > TilePalette.MAX_TILES)
+						throw new IOException("Too many tile types for " + file);
+					fromPaletteIds[id] = (short)names.size();
+					names.add(palette.getFileName(id));
+					ids.add(id);
+				}
+			}
+		}
+		String[] newNames = names.toArray(new String[names.size()]);
+		short[] newIds = new short[ids.size()];
+		for (int i = 0; i < newIds.length; i++)
+			newIds[i] = ids.get(i);
+
+		long oldEnd = fileEnd;
+		int oldRows = this.numRows;
+		int oldCols = this.numCols;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			writeChunks(channel, layers, true, fromPaletteIds, newIndexes, progress);
+			this.numRows = numRows;
+			this.numCols = numCols;
+			writeTail(channel, layers, newNames, newIds, newIndexes);
+			channel.force(true);
+		} catch (IOException e) {
+			// The header was never rewritten, so the old index is still the one on disk
+			fileEnd = oldEnd;
+			this.numRows = oldRows;
+			this.numCols = oldCols;
+			throw e;
+		}
+		for (LevelLayer layer : layers)
+			layer.getGrid().markSaved();
+		return this;
+	}
+
+	/** Writes chunk records starting at fileEnd, one layer after another, and records
+	 *  each layer's in its entry of newIndexes.  fromPaletteIds turns shared palette IDs
+	 *  into the file's. */
+	private void writeChunks(FileChannel channel, List<LevelLayer> layers, boolean onlyDirty, short[] fromPaletteIds, ArrayList<HashMap<Long, Long>> newIndexes, ProgressListener progress) throws IOException {
+		long total = 0;
+		for (LevelLayer layer : layers)
+			for (ChunkedGrid.Chunk chunk : layer.getGrid().chunks())
+				if (!onlyDirty || chunk.dirty)
+					total++;
+		long done = 0;
+		ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * 64);
+		long pos = fileEnd;
+		for (int i = 0; i < layers.size(); i++) {
+			HashMap<Long, Long> newIndex = newIndexes.get(i);
+			for (ChunkedGrid.Chunk chunk : layers.get(i).getGrid().chunks()) {
+				if (onlyDirty && !chunk.dirty)
+					continue;
+				if (buf.remaining() < RECORD_SIZE) {
+					pos += flush(channel, buf, pos);
+					if (progress != null)
+						progress.progressed(done, total);
+				}
+				done++;
+				newIndex.put(ChunkedGrid.key(chunk.getChunkRow(), chunk.getChunkCol()), pos + buf.position());
+				ShortBuffer ids = buf.asShortBuffer();
+				for (short id : chunk.ids)
+					ids.put(fromPaletteIds[id]);
+				buf.position(buf.position() + ChunkedGrid.CHUNK_CELLS * 2);
+				buf.asLongBuffer().put(chunk.walkable);
+				buf.position(buf.position() + ChunkedGrid.CHUNK_CELLS / 8);
+			}
+		}
+		fileEnd = pos + flush(channel, buf, pos);
+	}
+
+	/** Writes the palette (file tile ID -> name and shared palette ID), the layer table and
+	 *  newIndexes at fileEnd, then the header that points at them, and finally starts using them */
+	private void writeTail(FileChannel channel, List<LevelLayer> layers, String[] paletteNames, short[] toPaletteIds, ArrayList<HashMap<Long, Long>> newIndexes) throws IOException {
+		int paletteSize = paletteNames.length;
+
+		// Palette
+		long paletteOffset = fileEnd;
+		ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+		long pos = paletteOffset;
+		for (int i = 1; i < paletteSize; i++) {
+			byte[] name = paletteNames[i].getBytes(StandardCharsets.UTF_8);
+			if (buf.remaining() < name.length + 2)
+				pos += flush(channel, buf, pos);
+			buf.putShort((short)name.length);
+			buf.put(name);
+		}
+		pos += flush(channel, buf, pos);
+
+		// Layers
+		long layersOffset = pos;
+		for (LevelLayer layer : layers) {
+			byte[] name = layer.getName().getBytes(StandardCharsets.UTF_8);
+			if (buf.remaining() < name.length + 7)
+				pos += flush(channel, buf, pos);
+			buf.putShort((short)name.length);
+			buf.put(name);
+			buf.put((byte)(layer.isVisible() ? 1 : 0));
+			buf.putFloat(layer.getOpacity());
+		}
+		pos += flush(channel, buf, pos);
+
+		// Index
+		long indexOffset = pos;
+		int indexCount = 0;
+		for (int i = 0; i < newIndexes.size(); i++) {
+			for (Map.Entry<Long, Long> entry : newIndexes.get(i).entrySet()) {
+				if (buf.remaining() < INDEX_ENTRY_SIZE)
+					pos += flush(channel, buf, pos);
+				buf.putInt(i);
+				buf.putInt((int)(entry.getKey() >> 32));
+				buf.putInt((int)(long)entry.getKey());
+				buf.putLong(entry.getValue());
+				indexCount++;
+			}
+		}
+		pos += flush(channel, buf, pos);
+		fileEnd = pos;
+
+		// The header goes last so the file only switches to the new contents once they're all written
+		channel.force(false);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(numRows);
+		header.putInt(numCols);
+		header.putInt(ChunkedGrid.CHUNK_SIZE);
+		header.putInt(paletteSize);
+		header.putLong(paletteOffset);
+		header.putLong(indexOffset);
+		header.putInt(indexCount);
+		header.putInt(layers.size());
+		header.putLong(layersOffset);
+		header.position(0);
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+
+		// Chunks not yet paged in use the file's old IDs, which an incremental save only
+		// adds to.  A full rewrite makes a new BinaryLevelFile.
+		synchronized (this) {
+			this.toPaletteIds = toPaletteIds;
+			this.paletteNames = paletteNames;
+			indexes = newIndexes;
+		}
+	}
+
+	/** Fills buf from the file starting at pos */
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining())
+			if (channel.read(buf, pos + buf.position()) < 0)
+				throw new EOFException();
+	}
+
+	/** Writes buf at pos and empties it.  Returns the number of bytes written. */
+	private static int flush(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+		buf.flip();
+		int written = buf.remaining();
+		while (buf.hasRemaining())
+			channel.write(buf, pos + buf.position());
+		buf.clear();
+		return written;
+	}
+
+	/** Pages one layer's chunks in from the file */
+	private class LayerSource implements ChunkedGrid.ChunkSource {
+		private int layer;
+
+		LayerSource(int layer) {
+			this.layer = layer;
+		}
+
+		@Override
+		public ChunkedGrid.Chunk loadChunk(int chunkRow, int chunkCol) {
+			return BinaryLevelFile.this.loadChunk(layer, chunkRow, chunkCol);
+		}
+	}
+
+}
\ No newline at end of file
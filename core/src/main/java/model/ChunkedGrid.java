@@ -0,0 +1,596 @@
+package model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Sparse storage for a grid of tile IDs and walkable flags.  The grid is split into
+ * CHUNK_SIZE x CHUNK_SIZE chunks kept in a hash map keyed by chunk coordinate.  A chunk
+ * is only allocated when something is first painted into it and is released again
+ * once all of its cells are empty, so mostly-empty maps cost almost nothing.
+ *
+ * A grid can also be backed by a ChunkSource (e.g. a binary level file) in which
+ * case chunks are paged in the first time they're touched.  The grid remembers which
+ * chunks changed since markSaved() so saving can skip everything else.
+ *
+ * snapshot() makes a read-only copy in constant time per chunk by sharing the chunks
+ * themselves.  Shared chunks are copied the first time the original grid writes to them
+ * (copy on write), so the snapshot can be read on another thread while editing goes on.
+ *
+ * The grid itself has no size; callers are responsible for staying within the level.
+ */
+public class ChunkedGrid {
+
+	public static final int CHUNK_SHIFT = 5;
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;		// Cells along one side of a chunk
+	public static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private HashMap<Long, Chunk> chunks;
+	private Chunk lastChunk;			// Most recently used chunk, saves a map lookup while painting
+	private ChunkSource source;			// Where unloaded chunks are paged in from
+	private HashSet<Long> unloaded;		// Chunks that exist in source but haven't been paged in yet
+	private HashSet<Long> removed;		// Chunks emptied and released since the last save
+	private ArrayList<Chunk> held;		// In a snapshot, the chunks shared with the grid until release()
+
+	public ChunkedGrid() {
+		chunks = new HashMap<Long, Chunk>();
+		unloaded = new HashSet<Long>();
+		removed = new HashSet<Long>();
+	}
+
+	/** Supplies chunks to a grid on demand */
+	public interface ChunkSource {
+		/** Returns the stored chunk at chunk coordinates (chunkRow, chunkCol) or null */
+		Chunk loadChunk(int chunkRow, int chunkCol);
+	}
+
+	/** Empties the grid and makes it page in the given chunks from source as they're needed */
+	public void setSource(ChunkSource source, Collection<Long> chunkKeys) {
+		clear();
+		this.source = source;
+		unloaded.addAll(chunkKeys);
+	}
+
+	/** Pages in every chunk that hasn't been touched yet */
+	public void loadAll() {
+		for (Long key : new ArrayList<Long>(unloaded))
+			getChunk((int)(key >> 32), (int)(long)key);
+	}
+
+	/** Whether some chunks still live only in the source */
+	public boolean hasUnloadedChunks() {
+		return !unloaded.isEmpty();
+	}
+
+	/** Keys of chunks released since the last save.  A key may also belong to a chunk
+	 *  that has been allocated again since, so check hasChunk() before dropping it. */
+	public Collection<Long> removedChunkKeys() {
+		return removed;
+	}
+
+	/**
+	 * Returns a read-only copy of the grid that shares its chunks with this one.  Once
+	 * the snapshot has been saved, call savedSnapshot() to forget the removed chunks it
+	 * took care of, and release() it so its chunks can be written in place again.
+	 */
+	public ChunkedGrid snapshot() {
+		ChunkedGrid copy = new ChunkedGrid();
+		copy.held = new ArrayList<Chunk>(chunks.values());
+		for (Chunk chunk : copy.held)
+			Chunk.SHARES.incrementAndGet(chunk);
+		copy.chunks.putAll(chunks);
+		copy.source = source;
+		copy.unloaded.addAll(unloaded);
+		copy.removed.addAll(removed);
+		return copy;
+	}
+
+	/** Forgets the removed chunks a saved snapshot had no chunk for, since they're gone
+	 *  from the file now.  The rest may have come back and been removed again since. */
+	public void savedSnapshot(ChunkedGrid snapshot) {
+		for (Long key : snapshot.removed)
+			if (!snapshot.hasChunk(key))
+				removed.remove(key);
+	}
+
+	/** Called on a snapshot once nothing reads it any more.  The chunks it shared stop
+	 *  needing a copy before the next write unless another snapshot still holds them.
+	 *  Safe to call from any thread, and more than once. */
+	public void release() {
+		ArrayList<Chunk> held;
+		synchronized (this) {
+			held = this.held;
+			this.held = null;
+		}
+		if (held != null)
+			for (Chunk chunk : held)
+				Chunk.SHARES.decrementAndGet(chunk);
+	}
+
+	/** Whether there's a chunk at this key, paged in or not */
+	boolean hasChunk(Long key) {
+		return chunks.containsKey(key) || unloaded.contains(key);
+	}
+
+	/** Forgets which chunks changed, after they've all been written out */
+	public void markSaved() {
+		for (Chunk chunk : chunks.values())
+			chunk.dirty = false;
+		removed.clear();
+	}
+
+	/** Returns the tile ID at (r, c) or TilePalette.EMPTY */
+	public short get(int r, int c) {
+		Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+		return chunk == null ? TilePalette.EMPTY : chunk.ids[localIndex(r, c)];
+	}
+
+	public boolean isWalkable(int r, int c) {
+		Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+		return chunk != null && chunk.isWalkable(localIndex(r, c));
+	}
+
+	/** Stores a tile at (r, c).  Empty cells are never walkable. */
+	public void set(int r, int c, short id, boolean walkable) {
+		Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+		if (chunk == null) {
+			if (id == TilePalette.EMPTY)
+				return;
+			chunk = createChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+		}
+		else if (chunk.isShared())
+			chunk = unshare(chunk);
+		chunk.set(localIndex(r, c), id, walkable);
+		if (chunk.isEmpty())
+			removeChunk(chunk);
+	}
+
+	/** Changes the walkable flag of (r, c) if there's a tile there */
+	public void setWalkable(int r, int c, boolean walkable) {
+		Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+		if (chunk != null) {
+			if (chunk.isShared())
+				chunk = unshare(chunk);
+			int i = localIndex(r, c);
+			chunk.set(i, chunk.ids[i], walkable);
+		}
+	}
+
+	/** Returns the chunk at chunk coordinates (chunkRow, chunkCol) or null if it's empty */
+	public Chunk getChunk(int chunkRow, int chunkCol) {
+		Chunk chunk = lastChunk;
+		if (chunk != null && chunk.chunkRow == chunkRow && chunk.chunkCol == chunkCol)
+			return chunk;
+		Long key = key(chunkRow, chunkCol);
+		chunk = chunks.get(key);
+		if (chunk == null && !unloaded.isEmpty() && unloaded.remove(key)) {
+			chunk = source.loadChunk(chunkRow, chunkCol);
+			if (chunk != null && !chunk.isEmpty())
+				chunks.put(key, chunk);
+			else
+				chunk = null;
+		}
+		if (chunk != null)
+			lastChunk = chunk;
+		return chunk;
+	}
+
+	/** Returns the chunk at chunk coordinates (chunkRow, chunkCol), allocating it if needed */
+	public Chunk getOrCreateChunk(int chunkRow, int chunkCol) {
+		Chunk chunk = getChunk(chunkRow, chunkCol);
+		if (chunk == null)
+			return createChunk(chunkRow, chunkCol);
+		return chunk.isShared() ? unshare(chunk) : chunk;
+	}
+
+	/** All allocated chunks that have been paged in, in no particular order.
+	 *  Call loadAll() first to be sure every chunk is included. */
+	public Collection<Chunk> chunks() {
+		return chunks.values();
+	}
+
+	/** Number of allocated chunks */
+	public int numChunks() {
+		return chunks.size();
+	}
+
+	public void clear() {
+		for (Long key : chunks.keySet())
+			removed.add(key);
+		removed.addAll(unloaded);
+		chunks.clear();
+		unloaded.clear();
+		lastChunk = null;
+	}
+
+	/** Empties every cell at or beyond row numRows or column numCols.  Only chunks
+	 *  that lie on or past the new edge are touched. */
+	public void crop(int numRows, int numCols) {
+		int lastChunkRow = (numRows - 1) >> CHUNK_SHIFT;
+		int lastChunkCol = (numCols - 1) >> CHUNK_SHIFT;
+
+		// Unloaded chunks past the edge are simply forgotten, ones on the edge are paged in
+		for (Long key : new ArrayList<Long>(unloaded)) {
+			int chunkRow = (int)(key >> 32);
+			int chunkCol = (int)(long)key;
+			if (numRows <= 0 || numCols <= 0 || chunkRow > lastChunkRow || chunkCol > lastChunkCol) {
+				unloaded.remove(key);
+				removed.add(key);
+			}
+			else if (chunkRow == lastChunkRow || chunkCol == lastChunkCol)
+				getChunk(chunkRow, chunkCol);
+		}
+
+		Iterator<Map.Entry<Long, Chunk>> it = chunks.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Chunk> entry = it.next();
+			Chunk chunk = entry.getValue();
+			if (numRows <= 0 || numCols <= 0 || chunk.chunkRow > lastChunkRow || chunk.chunkCol > lastChunkCol) {
+				removed.add(key(chunk.chunkRow, chunk.chunkCol));
+				it.remove();
+				continue;
+			}
+			if (chunk.chunkRow < lastChunkRow && chunk.chunkCol < lastChunkCol)
+				continue;
+
+			// Chunk straddles the new edge so clear the part that fell off
+			if (chunk.isShared()) {
+				chunk = new Chunk(chunk);
+				entry.setValue(chunk);
+			}
+			for (int lr = 0; lr < CHUNK_SIZE; lr++) {
+				for (int lc = 0; lc < CHUNK_SIZE; lc++) {
+					if (chunk.firstRow() + lr >= numRows || chunk.firstCol() + lc >= numCols)
+						chunk.set(lr * CHUNK_SIZE + lc, TilePalette.EMPTY, false);
+				}
+			}
+			if (chunk.isEmpty()) {
+				removed.add(key(chunk.chunkRow, chunk.chunkCol));
+				it.remove();
+			}
+		}
+		lastChunk = null;
+	}
+
+	/** Copies the cells of rows [r1, r1 + dst.numRows()) and columns [c1, c1 + dst.numCols())
+	 *  into dst one chunk row segment at a time.  Empty chunks are skipped entirely. */
+	public void copyTo(int r1, int c1, TileRegion dst) {
+		int r2 = r1 + dst.numRows();
+		int c2 = c1 + dst.numCols();
+		short[] dstIds = dst.ids();
+		for (int cr = r1 >> CHUNK_SHIFT; cr <= (r2 - 1) >> CHUNK_SHIFT; cr++) {
+			for (int cc = c1 >> CHUNK_SHIFT; cc <= (c2 - 1) >> CHUNK_SHIFT; cc++) {
+				Chunk chunk = getChunk(cr, cc);
+				if (chunk == null)
+					continue;
+				int rowStart = Math.max(r1, chunk.firstRow());
+				int rowEnd = Math.min(r2, chunk.firstRow() + CHUNK_SIZE);
+				int colStart = Math.max(c1, chunk.firstCol());
+				int colEnd = Math.min(c2, chunk.firstCol() + CHUNK_SIZE);
+				for (int r = rowStart; r < rowEnd; r++) {
+					int src = localIndex(r, colStart);
+					int dstIndex = (r - r1) * dst.numCols() + colStart - c1;
+					System.arraycopy(chunk.ids, src, dstIds, dstIndex, colEnd - colStart);
+					for (int i = 0; i < colEnd - colStart; i++)
+						if (chunk.isWalkable(src + i))
+							dst.walkableBits().set(dstIndex + i);
+				}
+			}
+		}
+	}
+
+	/** Writes the non-empty cells of src with its upper left corner at (r1, c1),
+	 *  skipping anything outside [0, numRows) x [0, numCols). */
+	public void paste(TileRegion src, int r1, int c1, int numRows, int numCols) {
+		int rowStart = Math.max(r1, 0);
+		int rowEnd = Math.min(r1 + src.numRows(), numRows);
+		int colStart = Math.max(c1, 0);
+		int colEnd = Math.min(c1 + src.numCols(), numCols);
+		if (rowStart >= rowEnd || colStart >= colEnd)
+			return;
+		short[] srcIds = src.ids();
+		for (int cr = rowStart >> CHUNK_SHIFT; cr <= (rowEnd - 1) >> CHUNK_SHIFT; cr++) {
+			for (int cc = colStart >> CHUNK_SHIFT; cc <= (colEnd - 1) >> CHUNK_SHIFT; cc++) {
+				int chunkRowStart = Math.max(rowStart, cr << CHUNK_SHIFT);
+				int chunkRowEnd = Math.min(rowEnd, (cr + 1) << CHUNK_SHIFT);
+				int chunkColStart = Math.max(colStart, cc << CHUNK_SHIFT);
+				int chunkColEnd = Math.min(colEnd, (cc + 1) << CHUNK_SHIFT);
+				Chunk chunk = getChunk(cr, cc);
+				for (int r = chunkRowStart; r < chunkRowEnd; r++) {
+					int srcIndex = (r - r1) * src.numCols() + chunkColStart - c1;
+					for (int c = chunkColStart; c < chunkColEnd; c++, srcIndex++) {
+						short id = srcIds[srcIndex];
+						if (id == TilePalette.EMPTY)
+							continue;
+						if (chunk == null)
+							chunk = createChunk(cr, cc);
+						else if (chunk.isShared())
+							chunk = unshare(chunk);
+						chunk.set(localIndex(r, c), id, src.walkableBits().get(srcIndex));
+					}
+				}
+			}
+		}
+	}
+
+	/** Overwrites rows [r1, r1 + src.numRows()) and columns [c1, c1 + src.numCols()) with
+	 *  src, empty cells included, one chunk row segment at a time */
+	public void write(TileRegion src, int r1, int c1) {
+		int r2 = r1 + src.numRows();
+		int c2 = c1 + src.numCols();
+		if (r2 <= r1 || c2 <= c1)
+			return;
+		short[] srcIds = src.ids();
+		for (int cr = r1 >> CHUNK_SHIFT; cr <= (r2 - 1) >> CHUNK_SHIFT; cr++) {
+			for (int cc = c1 >> CHUNK_SHIFT; cc <= (c2 - 1) >> CHUNK_SHIFT; cc++) {
+				int rowStart = Math.max(r1, cr << CHUNK_SHIFT);
+				int rowEnd = Math.min(r2, (cr + 1) << CHUNK_SHIFT);
+				int colStart = Math.max(c1, cc << CHUNK_SHIFT);
+				int colEnd = Math.min(c2, (cc + 1) << CHUNK_SHIFT);
+				Chunk chunk = getChunk(cr, cc);
+				if (chunk == null) {
+					if (isEmpty(src, rowStart - r1, rowEnd - r1, colStart - c1, colEnd - c1))
+						continue;
+					chunk = createChunk(cr, cc);
+				}
+				else if (chunk.isShared())
+					chunk = unshare(chunk);
+				for (int r = rowStart; r < rowEnd; r++) {
+					int srcIndex = (r - r1) * src.numCols() + colStart - c1;
+					int dst = localIndex(r, colStart);
+					System.arraycopy(srcIds, srcIndex, chunk.ids, dst, colEnd - colStart);
+					for (int i = 0; i < colEnd - colStart; i++) {
+						if (src.walkableBits().get(srcIndex + i))
+							chunk.walkable[(dst + i) >> 6] |= 1L << (dst + i);
+						else
+							chunk.walkable[(dst + i) >> 6] &= ~(1L << (dst + i));
+					}
+				}
+				chunk.recount();
+				chunk.dirty = true;
+				if (chunk.isEmpty())
+					removeChunk(chunk);
+			}
+		}
+	}
+
+	/** First column in [c, limit) of row r whose tile is id (match true) or isn't id
+	 *  (match false), or limit if there's none.  Whole empty chunks are skipped at once. */
+	int findRight(int r, int c, int limit, short id, boolean match) {
+		while (c < limit) {
+			int segmentEnd = Math.min(limit, ((c >> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+			Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+			if (chunk == null) {
+				if ((id == TilePalette.EMPTY) == match)
+					return c;
+				c = segmentEnd;
+				continue;
+			}
+			for (int i = localIndex(r, c); c < segmentEnd; c++, i++)
+				if ((chunk.ids[i] == id) == match)
+					return c;
+		}
+		return limit;
+	}
+
+	/** Like findRight() going left: the last column in [limit, c] of row r whose tile is
+	 *  or isn't id, or limit - 1 if there's none */
+	int findLeft(int r, int c, int limit, short id, boolean match) {
+		while (c >= limit) {
+			int segmentStart = Math.max(limit, (c >> CHUNK_SHIFT) << CHUNK_SHIFT);
+			Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+			if (chunk == null) {
+				if ((id == TilePalette.EMPTY) == match)
+					return c;
+				c = segmentStart - 1;
+				continue;
+			}
+			for (int i = localIndex(r, c); c >= segmentStart; c--, i--)
+				if ((chunk.ids[i] == id) == match)
+					return c;
+		}
+		return limit - 1;
+	}
+
+	/** Stores the same tile in columns [c1, c2) of row r, one chunk segment at a time.
+	 *  Empty cells are never walkable. */
+	public void fillSpan(int r, int c1, int c2, short id, boolean walkable) {
+		boolean isWalkable = walkable && id != TilePalette.EMPTY;
+		for (int c = c1; c < c2; ) {
+			int segmentEnd = Math.min(c2, ((c >> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+			Chunk chunk = getChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+			if (chunk == null) {
+				if (id == TilePalette.EMPTY) {
+					c = segmentEnd;
+					continue;
+				}
+				chunk = createChunk(r >> CHUNK_SHIFT, c >> CHUNK_SHIFT);
+			}
+			else if (chunk.isShared())
+				chunk = unshare(chunk);
+			int start = localIndex(r, c);
+			int end = start + segmentEnd - c;
+			for (int i = start; i < end; i++) {
+				if (chunk.ids[i] != TilePalette.EMPTY)
+					chunk.numTiles--;
+				if (isWalkable)
+					chunk.walkable[i >> 6] |= 1L << i;
+				else
+					chunk.walkable[i >> 6] &= ~(1L << i);
+			}
+			Arrays.fill(chunk.ids, start, end, id);
+			if (id != TilePalette.EMPTY)
+				chunk.numTiles += end - start;
+			chunk.dirty = true;
+			if (chunk.isEmpty())
+				removeChunk(chunk);
+			c = segmentEnd;
+		}
+	}
+
+	/**
+	 * Returns the writable chunks overlapping rows [r1, r2) and columns [c1, c2) in a
+	 * chunk-row-major array, so other threads can work on them without going through
+	 * the chunk map.  Missing chunks are allocated if create is set, otherwise left null.
+	 * Call releaseChunks() with the array when done.
+	 */
+	Chunk[] acquireChunks(int r1, int c1, int r2, int c2, boolean create) {
+		int cr1 = r1 >> CHUNK_SHIFT;
+		int cc1 = c1 >> CHUNK_SHIFT;
+		int chunkCols = ((c2 - 1) >> CHUNK_SHIFT) - cc1 + 1;
+		Chunk[] acquired = new Chunk[(((r2 - 1) >> CHUNK_SHIFT) - cr1 + 1) * chunkCols];
+		for (int i = 0; i < acquired.length; i++) {
+			int cr = cr1 + i / chunkCols;
+			int cc = cc1 + i % chunkCols;
+			acquired[i] = create ? getOrCreateChunk(cr, cc) : getChunk(cr, cc);
+			if (acquired[i] != null && acquired[i].isShared())
+				acquired[i] = unshare(acquired[i]);
+		}
+		return acquired;
+	}
+
+	/** Marks chunks from acquireChunks() as changed and drops those left empty.  The
+	 *  chunks must have been recount()ed after their cells were written. */
+	void releaseChunks(Chunk[] acquired) {
+		for (Chunk chunk : acquired) {
+			if (chunk == null)
+				continue;
+			chunk.dirty = true;
+			if (chunk.isEmpty())
+				removeChunk(chunk);
+		}
+	}
+
+	/** Whether rows [rowStart, rowEnd) and columns [colStart, colEnd) of region are all empty */
+	private static boolean isEmpty(TileRegion region, int rowStart, int rowEnd, int colStart, int colEnd) {
+		for (int r = rowStart; r < rowEnd; r++)
+			for (int c = colStart; c < colEnd; c++)
+				if (region.getTileIdAt(r, c) != TilePalette.EMPTY)
+					return false;
+		return true;
+	}
+
+	private Chunk createChunk(int chunkRow, int chunkCol) {
+		Chunk chunk = new Chunk(chunkRow, chunkCol);
+		chunk.dirty = true;
+		chunks.put(key(chunkRow, chunkCol), chunk);
+		lastChunk = chunk;
+		return chunk;
+	}
+
+	/** Replaces a chunk shared with a snapshot by a private copy */
+	private Chunk unshare(Chunk chunk) {
+		Chunk copy = new Chunk(chunk);
+		chunks.put(key(chunk.chunkRow, chunk.chunkCol), copy);
+		lastChunk = copy;
+		return copy;
+	}
+
+	private void removeChunk(Chunk chunk) {
+		chunks.remove(key(chunk.chunkRow, chunk.chunkCol));
+		removed.add(key(chunk.chunkRow, chunk.chunkCol));
+		if (lastChunk == chunk)
+			lastChunk = null;
+	}
+
+	/** Index of (r, c) inside its chunk */
+	public static int localIndex(int r, int c) {
+		return ((r & CHUNK_MASK) << CHUNK_SHIFT) | (c & CHUNK_MASK);
+	}
+
+	/** Map key of a chunk coordinate: chunkRow in the high 32 bits, chunkCol in the low */
+	static Long key(int chunkRow, int chunkCol) {
+		return ((long)chunkRow << 32) | (chunkCol & 0xffffffffL);
+	}
+
+	/** One CHUNK_SIZE x CHUNK_SIZE block of cells stored row-major */
+	public static class Chunk {
+		private final int chunkRow;
+		private final int chunkCol;
+		final short[] ids;					// Tile IDs, row-major
+		final long[] walkable;				// One bit per cell
+		private int numTiles;				// Number of non-empty cells
+		boolean dirty;						// Changed since the grid was last saved
+		static final AtomicIntegerFieldUpdater<Chunk> SHARES = AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "shares");
+
+		private volatile int shares;		// Snapshots still holding this chunk, so it must be copied before writing
+
+		Chunk(int chunkRow, int chunkCol) {
+			this.chunkRow = chunkRow;
+			this.chunkCol = chunkCol;
+			ids = new short[CHUNK_CELLS];
+			walkable = new long[CHUNK_CELLS / 64];
+		}
+
+		/** A private, writable copy of another chunk */
+		Chunk(Chunk other) {
+			chunkRow = other.chunkRow;
+			chunkCol = other.chunkCol;
+			ids = other.ids.clone();
+			walkable = other.walkable.clone();
+			numTiles = other.numTiles;
+			dirty = other.dirty;
+		}
+
+		boolean isShared() {
+			return shares > 0;
+		}
+
+		/** Recounts the non-empty cells after ids was filled in directly */
+		void recount() {
+			numTiles = 0;
+			for (short id : ids)
+				if (id != TilePalette.EMPTY)
+					numTiles++;
+		}
+
+		void set(int i, short id, boolean isWalkable) {
+			if (ids[i] == TilePalette.EMPTY && id != TilePalette.EMPTY)
+				numTiles++;
+			else if (ids[i] != TilePalette.EMPTY && id == TilePalette.EMPTY)
+				numTiles--;
+			ids[i] = id;
+			dirty = true;
+			if (isWalkable && id != TilePalette.EMPTY)
+				walkable[i >> 6] |= 1L << i;
+			else
+				walkable[i >> 6] &= ~(1L << i);
+		}
+
+		public short getId(int i) {
+			return ids[i];
+		}
+
+		public boolean isWalkable(int i) {
+			return (walkable[i >> 6] & (1L << i)) != 0;
+		}
+
+		public boolean isEmpty() {
+			return numTiles == 0;
+		}
+
+		public int getChunkRow() {
+			return chunkRow;
+		}
+
+		public int getChunkCol() {
+			return chunkCol;
+		}
+
+		/** Level row of this chunk's first cell */
+		public int firstRow() {
+			return chunkRow << CHUNK_SHIFT;
+		}
+
+		/** Level column of this chunk's first cell */
+		public int firstCol() {
+			return chunkCol << CHUNK_SHIFT;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,362 @@
+package model;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Undo and redo for LevelEditorModel.  An action only keeps the cells it changed:
+ * single cell edits as a list of (row, col, tile ID, walkable) entries, rectangular
+ * edits such as pastes as a TileRegion that is put back with one region write, and
+ * flood fills as the row spans they covered, each holding one tile.  Every change
+ * remembers which layer's grid it was made to, so one action can span layers.
+ *
+ * Each entry holds the cell's contents from before the edit.  Undoing swaps them with
+ * what's in the level, so afterwards the same entries hold what's needed to redo.
+ *
+ * Everything between beginEdit() and endEdit() (e.g. one drag of the mouse) is a single
+ * action.  The history is limited by the memory its actions take rather than by their
+ * number; the budget in bytes can be set with the system property leveleditor.undoBytes.
+ * An action bigger than the whole budget can't be undone.
+ */
+public class EditHistory {
+
+	public static final long DEFAULT_BUDGET = 64L << 20;
+
+	private ArrayDeque<Action> undoable;		// Oldest first
+	private ArrayDeque<Action> redoable;		// Most recently undone last
+	private Action current;						// Action being recorded between begin() and end()
+	private long budget;
+	private long bytesUsed;
+
+	public EditHistory() {
+		undoable = new ArrayDeque<Action>();
+		redoable = new ArrayDeque<Action>();
+		budget = Long.getLong("leveleditor.undoBytes", DEFAULT_BUDGET);
+	}
+
+	/** Starts grouping edits into one action */
+	void begin() {
+		end();
+		current = new Action();
+	}
+
+	/** Ends the action started by begin(), if any */
+	void end() {
+		if (current == null)
+			return;
+		Action action = current;
+		current = null;
+		if (!action.isEmpty())
+			push(action);
+	}
+
+	/** Records the contents of (r, c) before it changes */
+	void cellChanging(ChunkedGrid grid, int r, int c) {
+		if (current != null) {
+			current.addCell(grid, r, c);
+			return;
+		}
+		Action action = new Action();
+		action.addCell(grid, r, c);
+		push(action);
+	}
+
+	/** Records the contents of a rectangle of cells before it changes */
+	void regionChanging(ChunkedGrid grid, int r1, int c1, int numRows, int numCols) {
+		if (current != null) {
+			current.addRegion(grid, r1, c1, numRows, numCols);
+			return;
+		}
+		Action action = new Action();
+		action.addRegion(grid, r1, c1, numRows, numCols);
+		push(action);
+	}
+
+	/** Records the contents of columns [c1, c2) of row r, which all hold the same tile,
+	 *  before they change */
+	void spanChanging(ChunkedGrid grid, int r, int c1, int c2) {
+		if (current != null) {
+			current.addSpan(grid, r, c1, c2);
+			return;
+		}
+		Action action = new Action();
+		action.addSpan(grid, r, c1, c2);
+		push(action);
+	}
+
+	/** Takes the most recent action off the undo list and hands it to redo, or returns null */
+	Action undo() {
+		end();
+		Action action = undoable.pollLast();
+		if (action != null)
+			redoable.addLast(action);
+		return action;
+	}
+
+	/** Takes the most recently undone action back onto the undo list, or returns null */
+	Action redo() {
+		end();
+		Action action = redoable.pollLast();
+		if (action != null)
+			undoable.addLast(action);
+		return action;
+	}
+
+	public boolean canUndo() {
+		return !undoable.isEmpty() || (current != null && !current.isEmpty());
+	}
+
+	public boolean canRedo() {
+		return !redoable.isEmpty();
+	}
+
+	/** Forgets everything, e.g. after a new level was loaded */
+	public void clear() {
+		undoable.clear();
+		redoable.clear();
+		current = null;
+		bytesUsed = 0;
+	}
+
+	/** Memory taken by finished actions */
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/** Adds a finished action.  A new edit can't be redone past, and the oldest actions
+	 *  go once the history is over budget. */
+	private void push(Action action) {
+		for (Action undone : redoable)
+			bytesUsed -= undone.bytes();
+		redoable.clear();
+		bytesUsed += action.bytes();
+		undoable.addLast(action);
+		while (bytesUsed > budget && !undoable.isEmpty())
+			bytesUsed -= undoable.pollFirst().bytes();
+	}
+
+	/** One undoable edit made of any number of cell and region changes */
+	static class Action {
+		private ArrayList<Change> changes;		// In the order they happened
+		private CellChanges cells;				// Last entry of changes if it's a CellChanges of the grid last edited
+		private SpanChanges spans;				// Last entry of changes if it's a SpanChanges of the grid last edited
+		private long bytes;
+
+		Action() {
+			changes = new ArrayList<Change>();
+		}
+
+		void addCell(ChunkedGrid grid, int r, int c) {
+			if (cells == null || cells.grid != grid) {
+				cells = new CellChanges(grid);
+				changes.add(cells);
+				spans = null;
+			}
+			bytes -= cells.bytes();
+			cells.add(r, c);
+			bytes += cells.bytes();
+		}
+
+		void addRegion(ChunkedGrid grid, int r1, int c1, int numRows, int numCols) {
+			RegionChange region = new RegionChange(grid, r1, c1, numRows, numCols);
+			changes.add(region);
+			cells = null;
+			spans = null;
+			bytes += region.bytes();
+		}
+
+		void addSpan(ChunkedGrid grid, int r, int c1, int c2) {
+			if (spans == null || spans.grid != grid) {
+				spans = new SpanChanges(grid);
+				changes.add(spans);
+				cells = null;
+			}
+			bytes -= spans.bytes();
+			spans.add(r, c1, c2);
+			bytes += spans.bytes();
+		}
+
+		/** Swaps the recorded cells with the level's, newest first to undo or oldest first
+		 *  to redo, and reports each change to model */
+		void swap(boolean undo, LevelEditorModel model) {
+			for (int i = 0; i < changes.size(); i++)
+				changes.get(undo ? changes.size() - 1 - i : i).swap(undo, model);
+		}
+
+		boolean isEmpty() {
+			return changes.isEmpty();
+		}
+
+		long bytes() {
+			return bytes;
+		}
+	}
+
+	/** Recorded cell contents that can be swapped with those of the grid they came from */
+	private static abstract class Change {
+		protected ChunkedGrid grid;
+
+		Change(ChunkedGrid grid) {
+			this.grid = grid;
+		}
+
+		abstract void swap(boolean undo, LevelEditorModel model);
+
+		abstract long bytes();
+	}
+
+	/** Changes to single cells, stored as parallel arrays */
+	private static class CellChanges extends Change {
+		private int[] rows = new int[16];
+		private int[] cols = new int[16];
+		private short[] ids = new short[16];
+		private BitSet walkable = new BitSet();
+		private int size;
+
+		CellChanges(ChunkedGrid grid) {
+			super(grid);
+		}
+
+		void add(int r, int c) {
+			// Dragging over the same cell again doesn't need another entry
+			if (size > 0 && rows[size - 1] == r && cols[size - 1] == c)
+				return;
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+				cols = Arrays.copyOf(cols, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			rows[size] = r;
+			cols[size] = c;
+			ids[size] = grid.get(r, c);
+			walkable.set(size, grid.isWalkable(r, c));
+			size++;
+		}
+
+		@Override
+		void swap(boolean undo, LevelEditorModel model) {
+			for (int j = 0; j < size; j++) {
+				int i = undo ? size - 1 - j : j;
+				short id = grid.get(rows[i], cols[i]);
+				boolean isWalkable = grid.isWalkable(rows[i], cols[i]);
+				grid.set(rows[i], cols[i], ids[i], walkable.get(i));
+				ids[i] = id;
+				walkable.set(i, isWalkable);
+				model.cellsEdited(grid, rows[i], cols[i], 1, 1);
+			}
+		}
+
+		@Override
+		long bytes() {
+			return rows.length * 10L + walkable.size() / 8;
+		}
+	}
+
+	/** Row spans that each held a single tile, as left behind by a flood fill.  Only the
+	 *  tile ID of each span is kept, plus a walkable flag per cell. */
+	private static class SpanChanges extends Change {
+		private int[] rows = new int[16];
+		private int[] starts = new int[16];		// First column of each span
+		private int[] ends = new int[16];		// One past the last column
+		private short[] ids = new short[16];
+		private BitSet walkable = new BitSet();	// Flags of every span's cells one after another
+		private int size;
+		private int numCells;
+		private int minRow = Integer.MAX_VALUE;	// Bounding box of the spans, reported as one change
+		private int maxRow = -1;
+		private int minCol = Integer.MAX_VALUE;
+		private int maxCol = -1;
+
+		SpanChanges(ChunkedGrid grid) {
+			super(grid);
+		}
+
+		void add(int r, int c1, int c2) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			rows[size] = r;
+			starts[size] = c1;
+			ends[size] = c2;
+			ids[size] = grid.get(r, c1);
+			readWalkable(grid, r, c1, c2, ids[size], walkable, numCells);
+			numCells += c2 - c1;
+			size++;
+			minRow = Math.min(minRow, r);
+			maxRow = Math.max(maxRow, r);
+			minCol = Math.min(minCol, c1);
+			maxCol = Math.max(maxCol, c2 - 1);
+		}
+
+		@Override
+		void swap(boolean undo, LevelEditorModel model) {
+			BitSet current = new BitSet(numCells);
+			int offset = 0;
+			for (int i = 0; i < size; i++) {
+				short id = grid.get(rows[i], starts[i]);
+				readWalkable(grid, rows[i], starts[i], ends[i], id, current, offset);
+				grid.fillSpan(rows[i], starts[i], ends[i], ids[i], false);
+				if (ids[i] != TilePalette.EMPTY)
+					for (int b = walkable.nextSetBit(offset); b >= 0 && b < offset + ends[i] - starts[i]; b = walkable.nextSetBit(b + 1))
+						grid.setWalkable(rows[i], starts[i] + b - offset, true);
+				ids[i] = id;
+				offset += ends[i] - starts[i];
+			}
+			walkable = current;
+			if (size > 0)
+				model.cellsEdited(grid, minRow, minCol, maxRow - minRow + 1, maxCol - minCol + 1);
+		}
+
+		/** Copies the walkable flags of columns [c1, c2) of row r into bits from offset on.
+		 *  Empty cells are never walkable so there's nothing to read. */
+		private static void readWalkable(ChunkedGrid grid, int r, int c1, int c2, short id, BitSet bits, int offset) {
+			if (id == TilePalette.EMPTY)
+				return;
+			for (int c = c1; c < c2; c++)
+				if (grid.isWalkable(r, c))
+					bits.set(offset + c - c1);
+		}
+
+		@Override
+		long bytes() {
+			return rows.length * 14L + walkable.size() / 8;
+		}
+	}
+
+	/** A change to a rectangle of cells, stored densely */
+	private static class RegionChange extends Change {
+		private int r1;
+		private int c1;
+		private TileRegion cells;
+
+		RegionChange(ChunkedGrid grid, int r1, int c1, int numRows, int numCols) {
+			super(grid);
+			this.r1 = r1;
+			this.c1 = c1;
+			cells = new TileRegion(numRows, numCols);
+			grid.copyTo(r1, c1, cells);
+		}
+
+		@Override
+		void swap(boolean undo, LevelEditorModel model) {
+			TileRegion current = new TileRegion(cells.numRows(), cells.numCols());
+			grid.copyTo(r1, c1, current);
+			grid.write(cells, r1, c1);
+			cells = current;
+			model.cellsEdited(grid, r1, c1, cells.numRows(), cells.numCols());
+		}
+
+		@Override
+		long bytes() {
+			return (long)cells.numRows() * cells.numCols() * 2 + (long)cells.numRows() * cells.numCols() / 8;
+		}
+	}
+}
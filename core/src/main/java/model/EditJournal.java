@@ -0,0 +1,579 @@
+package model;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash recovery for one editor window.  Every edit made through LevelEditorModel is
+ * appended to a journal file as a small binary record:
+ *
+ *   header | record | record | ...
+ *
+ * The header names the base level the records apply to (the file the level was loaded
+ * from, or none for a new level), the level size, and the tile names in use.  Records
+ * hold the new contents of a rectangle of one layer's cells, a new level size, or the
+ * name of a tile first used after the header was written.  Each record starts with its
+ * type and length so a record cut off by a crash is simply ignored.
+ *
+ * Records are collected in memory on the event thread and written and synced by a
+ * background thread every leveleditor.journalFlushMillis milliseconds.  Records for very
+ * large rectangles (big fills and pastes) are left to that thread too: the event thread
+ * only takes a snapshot of the layer and the writer reads the cells from it.  Once the journal
+ * grows past leveleditor.journalCompactBytes it is compacted: a snapshot of the level is
+ * written next to it and the journal starts over with the snapshot as its base.
+ *
+ * Records store absolute cell contents, so replaying a journal over a newer version of
+ * its base (e.g. the level was saved since) still gives the right result.  Journals are
+ * locked while their window is open; an unlocked journal left behind means the editor
+ * died and can be recovered.
+ */
+public class EditJournal {
+
+	public static final String EXTENSION = ".journal";
+	public static final long DEFAULT_FLUSH_MILLIS = 500;
+	public static final long DEFAULT_COMPACT_BYTES = 16L << 20;
+
+	private static final int MAGIC = 0x4C564A31;		// "LVJ1"
+	private static final int VERSION = 1;
+	private static final int TILE = 1;					// short id, name
+	private static final int CELLS = 2;					// row, col, numRows, numCols, IDs, walkable bits
+	private static final int RESIZE = 3;				// numRows, numCols
+	private static final int LAYER_CELLS = 4;			// layer, then a CELLS record's contents, for layers above the background
+	private static final int DEFERRED_CELLS = 1 << 16;	// Rectangles of at least this many cells are recorded by the writer
+
+	private static int sessions;						// Journals started by this process, keeps file names apart
+
+	private LevelEditorModel model;
+	private File file;
+	private long compactBytes;
+	private ScheduledExecutorService writer;			// The one thread that touches the file
+
+	// Guarded by this, shared between the event thread and the writer
+	private ByteArrayOutputStream pending;				// Records not written to the file yet
+	private DataOutputStream out;						// Writes into pending
+	private ArrayList<Object> queued;					// Records before pending: byte[] runs and LargeCells
+	private long queuedBytes;							// Length of the records in queued
+	private boolean truncate;							// The level was replaced, pending starts a new journal
+	private int namedTiles;								// Palette IDs below this have a name in the journal
+	private int generation;								// Bumped every time the journal starts over
+	private long committed;								// Bytes handed to the writer so far
+	private boolean compacting;
+	private boolean baseMissing;						// Recovered without the base level
+
+	// Only used by the writer thread
+	private FileChannel channel;
+	private FileLock lock;
+	private long fileSize;
+
+	private EditJournal(LevelEditorModel model, File file) {
+		this.model = model;
+		this.file = file;
+		compactBytes = Long.getLong("leveleditor.journalCompactBytes", DEFAULT_COMPACT_BYTES);
+		pending = new ByteArrayOutputStream();
+		out = new DataOutputStream(pending);
+		queued = new ArrayList<Object>();
+		writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Journal " + file.getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/** Folder the journals are kept in, set with the system property leveleditor.journalDir */
+	public static File getDirectory() {
+		String dir = System.getProperty("leveleditor.journalDir");
+		return dir != null ? new File(dir) : new File(System.getProperty("user.home"), ".leveleditor" + File.separator + "journal");
+	}
+
+	/** Starts a new journal for the model's current level and attaches it to the model */
+	public static EditJournal start(LevelEditorModel model) throws IOException {
+		File dir = getDirectory();
+		dir.mkdirs();
+		File file;
+		synchronized (EditJournal.class) {
+			file = new File(dir, "level-" + System.currentTimeMillis() + "-" + (sessions++) + EXTENSION);
+		}
+		EditJournal journal = new EditJournal(model, file);
+		journal.open(false);
+		journal.levelReplaced(null, model.numRows(), model.numCols());
+		journal.schedule();
+		model.setJournal(journal);
+		return journal;
+	}
+
+	/** Journals in the journal folder that no open editor is using */
+	public static File[] findAbandoned() {
+		ArrayList<File> abandoned = new ArrayList<File>();
+		File[] files = getDirectory().listFiles();
+		if (files == null)
+			return new File[0];
+		for (File f : files) {
+			if (!f.getName().endsWith(EXTENSION))
+				continue;
+			try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+				FileLock lock = channel.tryLock();
+				if (lock != null) {
+					lock.release();
+					abandoned.add(f);
+				}
+			} catch (OverlappingFileLockException e) {
+				// Open in another window of this editor
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return abandoned.toArray(new File[abandoned.size()]);
+	}
+
+	/**
+	 * Rebuilds the level an abandoned journal describes into model: loads its base level
+	 * and replays its records.  The journal then carries on recording the model's edits,
+	 * starting from a snapshot of the recovered level.
+	 */
+	public static EditJournal recover(LevelEditorModel model, File file) throws IOException {
+		EditJournal journal = new EditJournal(model, file);
+		journal.open(true);
+		ByteBuffer bytes = ByteBuffer.allocate((int)Math.min(Integer.MAX_VALUE, journal.channel.size()));
+		while (bytes.hasRemaining() && journal.channel.read(bytes, bytes.position()) > 0)
+			;
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.array(), 0, bytes.position()));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			throw new IOException(file + " is not a level journal");
+		String base = in.readUTF();
+		int numRows = in.readInt();
+		int numCols = in.readInt();
+		TilePalette palette = TilePalette.getShared();
+		ArrayList<Short> ids = new ArrayList<Short>();		// Journal tile ID -> palette ID
+		ids.add(TilePalette.EMPTY);
+		int paletteSize = in.readInt();
+		for (int i = 1; i < paletteSize; i++)
+			ids.add(palette.intern(null, in.readUTF()));
+
+		// Base level
+		File baseFile = base.isEmpty() ? null : new File(base);
+		if (baseFile != null && baseFile.exists()) {
+			if (baseFile.getName().endsWith(BinaryLevelFile.EXTENSION))
+				model.loadBinary(baseFile);
+			else
+				model.loadText(baseFile);
+		}
+		else {
+			model.clear();
+			journal.baseMissing = baseFile != null;
+		}
+		model.setGridSize(numRows, numCols);
+
+		// Records, up to the first one a crash cut off
+		try {
+			while (true) {
+				int type = in.readByte();
+				int length = in.readInt();
+				if (length < 0 || length > in.available())
+					break;
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+				if (type == TILE) {
+					short id = record.readShort();
+					byte[] name = new byte[record.readShort() & 0xffff];
+					record.readFully(name);
+					while (ids.size() <= id)
+						ids.add(TilePalette.EMPTY);
+					ids.set(id, palette.intern(null, new String(name, StandardCharsets.UTF_8)));
+				}
+				else if (type == CELLS || type == LAYER_CELLS) {
+					int layer = type == LAYER_CELLS ? record.readInt() : LevelEditorModel.BACKGROUND;
+					int row = record.readInt();
+					int col = record.readInt();
+					TileRegion cells = new TileRegion(record.readInt(), record.readInt());
+					int n = cells.numRows() * cells.numCols();
+					short[] cellIds = new short[n];
+					for (int i = 0; i < n; i++)
+						cellIds[i] = record.readShort();
+					byte[] walkable = new byte[(n + 7) / 8];
+					record.readFully(walkable);
+					for (int i = 0; i < n; i++) {
+						short id = cellIds[i] > 0 && cellIds[i] < ids.size() ? ids.get(cellIds[i]) : TilePalette.EMPTY;
+						cells.set(i / cells.numCols(), i % cells.numCols(), id, (walkable[i >> 3] & (1 << (i & 7))) != 0);
+					}
+					model.restoreCells(layer, row, col, cells);
+				}
+				else if (type == RESIZE)
+					model.setGridSize(record.readInt(), record.readInt());
+				else
+					break;		// Zeros at the end of a file that was being extended
+			}
+		} catch (EOFException e) {
+			// End of the journal, or a record cut off part way
+		}
+
+		// The records use the old process's tile IDs, so start over from a snapshot.  Until
+		// the new journal is written the old one still replays correctly over the snapshot.
+		LevelSnapshot snapshot = model.snapshot();
+		try {
+			snapshot.saveCopy(journal.snapshotFile());
+		} finally {
+			snapshot.release();
+		}
+		journal.levelReplaced(journal.snapshotFile(), model.numRows(), model.numCols());
+		journal.schedule();
+		model.setJournal(journal);
+		return journal;
+	}
+
+	/** Whether the journal's base level has disappeared, so only the edits recorded in
+	 *  the journal itself could be recovered */
+	public boolean baseWasMissing() {
+		return baseMissing;
+	}
+
+	/** Records that cells of a layer changed.  Their new contents are read from the model
+	 *  right away, or from a snapshot by the writer thread if there are a lot of them. */
+	public synchronized void cellsChanged(int layer, int row, int col, int numRows, int numCols) {
+		try {
+			nameNewTiles();
+			ChunkedGrid grid = model.getLayer(layer).getGrid();
+			if ((long)numRows * numCols >= DEFERRED_CELLS) {
+				LargeCells record = new LargeCells(layer, grid.snapshot(), row, col, numRows, numCols);
+				queued.add(pending.toByteArray());
+				queued.add(record);
+				queuedBytes += pending.size() + record.length();
+				pending.reset();
+			}
+			else
+				writeCells(out, layer, grid, row, col, numRows, numCols);
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+		}
+		recorded();
+	}
+
+	/** Writes a CELLS or LAYER_CELLS record holding a rectangle of grid */
+	private static void writeCells(DataOutputStream out, int layer, ChunkedGrid grid, int row, int col, int numRows, int numCols) throws IOException {
+		int n = numRows * numCols;
+		if (layer == LevelEditorModel.BACKGROUND) {
+			out.writeByte(CELLS);
+			out.writeInt(16 + n * 2 + (n + 7) / 8);
+		}
+		else {
+			out.writeByte(LAYER_CELLS);
+			out.writeInt(20 + n * 2 + (n + 7) / 8);
+			out.writeInt(layer);
+		}
+		out.writeInt(row);
+		out.writeInt(col);
+		out.writeInt(numRows);
+		out.writeInt(numCols);
+		byte[] walkable = new byte[(n + 7) / 8];
+		for (int r = 0, i = 0; r < numRows; r++) {
+			for (int c = 0; c < numCols; c++, i++) {
+				out.writeShort(grid.get(row + r, col + c));
+				if (grid.isWalkable(row + r, col + c))
+					walkable[i >> 3] |= 1 << (i & 7);
+			}
+		}
+		out.write(walkable);
+	}
+
+	/** A cells record the writer thread builds from a snapshot of the layer */
+	private static class LargeCells {
+		int layer;
+		ChunkedGrid snapshot;
+		int row, col, numRows, numCols;
+
+		LargeCells(int layer, ChunkedGrid snapshot, int row, int col, int numRows, int numCols) {
+			this.layer = layer;
+			this.snapshot = snapshot;
+			this.row = row;
+			this.col = col;
+			this.numRows = numRows;
+			this.numCols = numCols;
+		}
+
+		/** Bytes the record takes in the journal */
+		long length() {
+			long n = (long)numRows * numCols;
+			return 5 + (layer == LevelEditorModel.BACKGROUND ? 16 : 20) + n * 2 + (n + 7) / 8;
+		}
+
+		/** Writer thread: builds the record and releases the snapshot */
+		byte[] toByteArray() throws IOException {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)length());
+				writeCells(new DataOutputStream(bytes), layer, snapshot, row, col, numRows, numCols);
+				return bytes.toByteArray();
+			} finally {
+				snapshot.release();
+			}
+		}
+	}
+
+	/** Releases the snapshots held by queued records that won't be written after all */
+	private static void releaseAll(ArrayList<Object> records) {
+		for (Object record : records)
+			if (record instanceof LargeCells)
+				((LargeCells)record).snapshot.release();
+	}
+
+	/** Records a new level size */
+	public synchronized void resized(int numRows, int numCols) {
+		try {
+			out.writeByte(RESIZE);
+			out.writeInt(8);
+			out.writeInt(numRows);
+			out.writeInt(numCols);
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+		}
+		recorded();
+	}
+
+	/** Starts the journal over because a whole new level was loaded from base (or
+	 *  created, if base is null).  Earlier records no longer matter. */
+	public synchronized void levelReplaced(File base, int numRows, int numCols) {
+		pending.reset();
+		releaseAll(queued);
+		queued.clear();
+		queuedBytes = 0;
+		truncate = true;
+		generation++;
+		namedTiles = TilePalette.getShared().size();
+		writeHeader(out, base, numRows, numCols, namedTiles);
+	}
+
+	/** Stops recording and deletes the journal, e.g. when its window is closed normally.
+	 *  Waits for the writer to finish, so no journal is left behind if the editor exits right after. */
+	public void close() {
+		model.setJournal(null);
+		Future<?> closed = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				try {
+					lock.release();
+					channel.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				file.delete();
+				snapshotFile().delete();
+			}
+		});
+		writer.shutdown();
+		try {
+			closed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Deletes an abandoned journal the user didn't want recovered */
+	public static void discard(File journal) {
+		journal.delete();
+		new File(journal.getPath() + BinaryLevelFile.EXTENSION).delete();
+	}
+
+	/** Where compaction writes the snapshot the journal starts from */
+	private File snapshotFile() {
+		return new File(file.getPath() + BinaryLevelFile.EXTENSION);
+	}
+
+	private void open(boolean existing) throws IOException {
+		channel = existing
+				? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+		lock = channel.tryLock();
+		if (lock == null) {
+			channel.close();
+			throw new IOException(file + " is in use by another editor");
+		}
+	}
+
+	private void schedule() {
+		long millis = Long.getLong("leveleditor.journalFlushMillis", DEFAULT_FLUSH_MILLIS);
+		writer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Writes the names of tiles added to the palette since they were last written */
+	private void nameNewTiles() throws IOException {
+		TilePalette palette = TilePalette.getShared();
+		for (; namedTiles < palette.size(); namedTiles++) {
+			byte[] name = palette.getFileName((short)namedTiles).getBytes(StandardCharsets.UTF_8);
+			out.writeByte(TILE);
+			out.writeInt(4 + name.length);
+			out.writeShort(namedTiles);
+			out.writeShort(name.length);
+			out.write(name);
+		}
+	}
+
+	/** Starts a compaction once enough has been recorded */
+	private void recorded() {
+		long size = (truncate ? 0 : committed) + queuedBytes + pending.size();
+		if (compacting || size < compactBytes)
+			return;
+		compacting = true;
+		final LevelSnapshot snapshot = model.snapshot();
+		final long position = size;		// Records from here on aren't in the snapshot
+		final int paletteSize = TilePalette.getShared().size();
+		final int snapshotGeneration = generation;
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact(snapshot, position, paletteSize, snapshotGeneration);
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					snapshot.release();
+				}
+				synchronized (EditJournal.this) {
+					compacting = false;
+				}
+			}
+		});
+	}
+
+	/** Writer thread: appends the pending records and syncs them to disk */
+	private void flush() throws IOException {
+		ArrayList<Object> records;
+		boolean restart;
+		synchronized (this) {
+			if (pending.size() == 0 && queued.isEmpty())
+				return;
+			long length = queuedBytes + pending.size();
+			records = queued;
+			records.add(pending.toByteArray());
+			queued = new ArrayList<Object>();
+			queuedBytes = 0;
+			pending.reset();
+			restart = truncate;
+			truncate = false;
+			committed = restart ? length : committed + length;
+		}
+		try {
+			if (restart) {
+				channel.truncate(0);
+				fileSize = 0;
+			}
+			for (Object record : records) {
+				byte[] bytes = record instanceof LargeCells ? ((LargeCells)record).toByteArray() : (byte[])record;
+				ByteBuffer buf = ByteBuffer.wrap(bytes);
+				while (buf.hasRemaining())
+					fileSize += channel.write(buf, fileSize);
+			}
+		} finally {
+			releaseAll(records);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Writer thread: saves the snapshot taken at position, then replaces the journal with
+	 * one based on the snapshot holding just the records after position.  If anything
+	 * fails part way the old journal is still complete, and replaying it over the new
+	 * snapshot gives the same level.
+	 */
+	private void compact(LevelSnapshot snapshot, long position, int paletteSize, int snapshotGeneration) throws IOException {
+		flush();
+		synchronized (this) {
+			if (generation != snapshotGeneration)
+				return;		// A new level was loaded in the meantime
+		}
+		snapshot.saveCopy(snapshotFile());
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeHeader(new DataOutputStream(header), snapshotFile(), snapshot.numRows(), snapshot.numCols(), paletteSize);
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileChannel copy = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.wrap(header.toByteArray());
+			while (buf.hasRemaining())
+				copy.write(buf);
+			long from = position;
+			while (from < fileSize)
+				from += channel.transferTo(from, fileSize - from, copy);
+			copy.force(true);
+		}
+
+		// Switch over to the compacted journal
+		synchronized (this) {
+			if (generation != snapshotGeneration) {
+				temp.delete();
+				return;
+			}
+		}
+		FileLock oldLock = lock;
+		FileChannel oldChannel = channel;
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		lock = channel.tryLock();
+		oldLock.release();
+		oldChannel.close();
+		fileSize = channel.size();
+		synchronized (this) {
+			committed = fileSize;
+		}
+	}
+
+	/** Header naming the base level, its size and the first paletteSize tile names */
+	private static void writeHeader(DataOutputStream out, File base, int numRows, int numCols, int paletteSize) {
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(base == null ? "" : base.getAbsolutePath());
+			out.writeInt(numRows);
+			out.writeInt(numCols);
+			out.writeInt(paletteSize);
+			for (int i = 1; i < paletteSize; i++)
+				out.writeUTF(TilePalette.getShared().getFileName((short)i));
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+		}
+	}
+}
\ No newline at end of file
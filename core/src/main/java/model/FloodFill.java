@@ -0,0 +1,99 @@
+package model;
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill.  Starting from one cell, every cell connected to it up, down,
+ * left or right that holds the same tile (or is empty, if it was empty) gets the new
+ * tile, without leaving the rectangle [r1, r2) x [c1, c2).
+ *
+ * Cells are filled a whole horizontal span at a time: the span around a seed is found
+ * by scanning left and right, filled in one go, and the rows above and below it are
+ * scanned for runs of the old tile, each of which becomes a new seed.  Seeds go on an
+ * explicit stack rather than the call stack, so the size of the area doesn't matter.
+ * Every span is recorded in the edit history before it's written.
+ */
+class FloodFill {
+
+	private ChunkedGrid grid;
+	private EditHistory history;
+	private short target;			// Tile being replaced
+	private int r1, c1, r2, c2;		// Bounds the fill stays inside
+	private int[] stack;			// Seeds as (row, col) pairs
+	private int size;
+
+	// Bounding box of everything filled
+	private int minRow = Integer.MAX_VALUE;
+	private int maxRow = -1;
+	private int minCol = Integer.MAX_VALUE;
+	private int maxCol = -1;
+
+	private FloodFill(ChunkedGrid grid, EditHistory history, int r1, int c1, int r2, int c2) {
+		this.grid = grid;
+		this.history = history;
+		this.r1 = r1;
+		this.c1 = c1;
+		this.r2 = r2;
+		this.c2 = c2;
+		stack = new int[256];
+	}
+
+	/**
+	 * Fills the area around (r, c) with id, staying inside [r1, r2) x [c1, c2).  Filled
+	 * cells get the walkable flag given (empty cells are never walkable).  Returns the
+	 * bounding box of the filled cells as {row, col, numRows, numCols}, or null if
+	 * nothing changed.
+	 */
+	static int[] fill(ChunkedGrid grid, EditHistory history, int r, int c, short id, boolean walkable, int r1, int c1, int r2, int c2) {
+		if (r < r1 || r >= r2 || c < c1 || c >= c2)
+			return null;
+		FloodFill fill = new FloodFill(grid, history, r1, c1, r2, c2);
+		fill.target = grid.get(r, c);
+		if (fill.target == id)
+			return null;
+
+		fill.push(r, c);
+		while (fill.size > 0) {
+			fill.size -= 2;
+			fill.fillSpan(fill.stack[fill.size], fill.stack[fill.size + 1], id, walkable);
+		}
+		return new int[] {fill.minRow, fill.minCol, fill.maxRow - fill.minRow + 1, fill.maxCol - fill.minCol + 1};
+	}
+
+	/** Fills the span of target cells through (r, c) and queues the runs next to it */
+	private void fillSpan(int r, int c, short id, boolean walkable) {
+		// Another span may have already filled this seed
+		if (grid.get(r, c) != target)
+			return;
+		int left = grid.findLeft(r, c, c1, target, false) + 1;
+		int right = grid.findRight(r, c, c2, target, false);
+
+		history.spanChanging(grid, r, left, right);
+		grid.fillSpan(r, left, right, id, walkable);
+		minRow = Math.min(minRow, r);
+		maxRow = Math.max(maxRow, r);
+		minCol = Math.min(minCol, left);
+		maxCol = Math.max(maxCol, right - 1);
+
+		if (r > r1)
+			queueRuns(r - 1, left, right);
+		if (r + 1 < r2)
+			queueRuns(r + 1, left, right);
+	}
+
+	/** Pushes the first cell of each run of target cells in columns [left, right) of row r */
+	private void queueRuns(int r, int left, int right) {
+		int c = grid.findRight(r, left, right, target, true);
+		while (c < right) {
+			push(r, c);
+			int end = grid.findRight(r, c, right, target, false);
+			c = grid.findRight(r, end, right, target, true);
+		}
+	}
+
+	private void push(int r, int c) {
+		if (size + 2 > stack.length)
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		stack[size++] = r;
+		stack[size++] = c;
+	}
+}
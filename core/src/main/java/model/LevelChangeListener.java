@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * Notified by LevelEditorModel whenever cells in the level change so that whoever
+ * is drawing the level only has to redraw what actually changed.
+ */
+public interface LevelChangeListener {
+
+	/** Called after the background cells in rows [row, row + numRows) and columns [col, col + numCols) changed */
+	void cellsChanged(int row, int col, int numRows, int numCols);
+
+	/** Called after cells of a layer other than the background changed.  Listeners that
+	 *  only care about the background can leave this out. */
+	default void layerCellsChanged(int layer, int row, int col, int numRows, int numCols) {
+	}
+}
\ No newline at end of file
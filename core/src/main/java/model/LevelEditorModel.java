@@ -0,0 +1,749 @@
+package model;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class LevelEditorModel {
+
+	public static final int BACKGROUND = 0;			// Index of the background layer
+
+	// Layers bottom to top.  Each cell of a layer is a TilePalette ID plus one walkable
+	// bit, stored in sparse chunks; only the background's walkable bits are used.
+	private ArrayList<LevelLayer> layers;
+	private ChunkedGrid backgroundLayer;			// Cells of the background layer
+	private ChunkedGrid editLayer;					// Cells of the layer tiles are painted into
+	private int currentLayer;						// Index of that layer
+	private static TileRegion clipboardLayer;		// This process's copy of the shared clipboard
+	private static long clipboardSequence;			// SharedClipboard sequence clipboardLayer came from
+	private int numRows;
+	private int numCols;
+	private boolean clipboardVisible;
+	private boolean selectionVisible;
+	private TilePalette palette;
+	private ArrayList<LevelChangeListener> listeners;
+	private BinaryLevelFile levelFile;		// Binary file the level was last loaded from or saved to
+	private EditJournal journal;			// Records every edit for crash recovery, if set
+	private EditHistory history;
+	private WalkableRegions regions;		// Which walkable cells connect, kept up to date as cells change
+	private ReachabilityGraph paths;		// Coarse graph of the walkable cells for finding routes
+	private ArrayList<Point> keyLocations;	// Cells that must be reachable from each other, as (row, col)
+
+	public LevelEditorModel(int numRows, int numCols) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		setLayers(LevelLayer.createDefaults());
+		clipboardVisible = false;
+		selectionVisible = false;
+		palette = TilePalette.getShared();
+		listeners = new ArrayList<LevelChangeListener>();
+		history = new EditHistory();
+		regions = new WalkableRegions();
+		paths = new ReachabilityGraph();
+		keyLocations = new ArrayList<Point>();
+	}
+
+	public void addLevelChangeListener(LevelChangeListener l) {
+		listeners.add(l);
+	}
+
+	public void removeLevelChangeListener(LevelChangeListener l) {
+		listeners.remove(l);
+	}
+
+	/** Tells every listener that a rectangle of cells of a layer changed.  Only the
+	 *  background matters to the walkable regions and routes. */
+	private void fireCellsChanged(int layer, int row, int col, int numRows, int numCols) {
+		if (layer == BACKGROUND) {
+			regions.cellsChanged(row, col, numRows, numCols);
+			paths.cellsChanged(row, col, numRows, numCols);
+			for (LevelChangeListener l : listeners)
+				l.cellsChanged(row, col, numRows, numCols);
+		}
+		else {
+			for (LevelChangeListener l : listeners)
+				l.layerCellsChanged(layer, row, col, numRows, numCols);
+		}
+	}
+
+	/** Tells every listener that every cell of every layer changed */
+	private void fireLevelReplaced() {
+		for (int i = 0; i < layers.size(); i++)
+			fireCellsChanged(i, 0, 0, numRows, numCols);
+	}
+
+	/** Journals an edit to a rectangle of a layer's cells and tells the listeners */
+	void cellsEdited(ChunkedGrid grid, int row, int col, int numRows, int numCols) {
+		int layer = layerOf(grid);
+		if (layer < 0)
+			return;
+		if (journal != null)
+			journal.cellsChanged(layer, row, col, numRows, numCols);
+		fireCellsChanged(layer, row, col, numRows, numCols);
+	}
+
+	/** Index of the layer whose cells are grid, or -1 */
+	private int layerOf(ChunkedGrid grid) {
+		for (int i = 0; i < layers.size(); i++)
+			if (layers.get(i).getGrid() == grid)
+				return i;
+		return -1;
+	}
+
+	/** Swaps in a new stack of layers, keeping the current layer if it's still there */
+	private void setLayers(ArrayList<LevelLayer> layers) {
+		this.layers = layers;
+		backgroundLayer = layers.get(BACKGROUND).getGrid();
+		currentLayer = Math.min(currentLayer, layers.size() - 1);
+		editLayer = layers.get(currentLayer).getGrid();
+	}
+
+	public int numLayers() {
+		return layers.size();
+	}
+
+	/** Layer i, counting up from the background */
+	public LevelLayer getLayer(int i) {
+		return layers.get(i);
+	}
+
+	/** Index of the layer tiles are painted into */
+	public int getCurrentLayer() {
+		return currentLayer;
+	}
+
+	/** Makes tile edits (painting, fills, pastes and so on) go to layer i.  Walkability
+	 *  is always edited on the background. */
+	public void setCurrentLayer(int i) {
+		currentLayer = i;
+		editLayer = layers.get(i).getGrid();
+	}
+
+	/** Starts (or with null, stops) journaling edits */
+	void setJournal(EditJournal journal) {
+		this.journal = journal;
+	}
+
+	/** Groups the following edits into one undoable action until endEdit() */
+	public void beginEdit() {
+		history.begin();
+	}
+
+	public void endEdit() {
+		history.end();
+	}
+
+	/** Undoes the last action.  Returns false if there was nothing to undo. */
+	public boolean undo() {
+		EditHistory.Action action = history.undo();
+		if (action == null)
+			return false;
+		action.swap(true, this);
+		return true;
+	}
+
+	/** Redoes the last undone action.  Returns false if there was nothing to redo. */
+	public boolean redo() {
+		EditHistory.Action action = history.redo();
+		if (action == null)
+			return false;
+		action.swap(false, this);
+		return true;
+	}
+
+	public EditHistory getHistory() {
+		return history;
+	}
+
+	/** Records (r, c) of grid for undo unless it already holds id and walkable.  Returns
+	 *  whether it's going to change. */
+	private boolean cellChanging(ChunkedGrid grid, int r, int c, short id, boolean walkable) {
+		if (grid.get(r, c) == id && grid.isWalkable(r, c) == (walkable && id != TilePalette.EMPTY))
+			return false;
+		history.cellChanging(grid, r, c);
+		return true;
+	}
+
+	/** Paints a palette tile into (r, c) of the current layer.  Newly painted tiles are walkable. */
+	public void setTileAt(int r, int c, short id) {
+		cellChanging(editLayer, r, c, id, true);
+		editLayer.set(r, c, id, true);
+		cellsEdited(editLayer, r, c, 1, 1);
+	}
+
+	/** Paints a palette tile into a batch of cells of the current layer given as row and column pairs in
+	 *  cells[0 .. 2*numCells), e.g. the cells a brush stroke crossed since the last frame.
+	 *  Cells outside the level or that already hold the tile are skipped.  Painted tiles
+	 *  are walkable.  Returns how many cells changed. */
+	public int setTilesAt(int[] cells, int numCells, short id) {
+		long[] changed = new long[numCells];		// (row, col) of each changed cell
+		int n = 0;
+		for (int i = 0; i < numCells; i++) {
+			int r = cells[2*i];
+			int c = cells[2*i + 1];
+			if (r < 0 || c < 0 || r >= numRows || c >= numCols)
+				continue;
+			if (!cellChanging(editLayer, r, c, id, true))
+				continue;
+			editLayer.set(r, c, id, true);
+			changed[n++] = (long)r << 32 | c;
+		}
+
+		// Report runs of changed cells along each row rather than a rectangle around them
+		// all, so a long diagonal stroke costs the listeners and journal no more than its cells
+		Arrays.sort(changed, 0, n);
+		for (int i = 0; i < n; ) {
+			int j = i + 1;
+			while (j < n && changed[j] == changed[j - 1] + 1)
+				j++;
+			cellsEdited(editLayer, (int)(changed[i] >> 32), (int)changed[i], 1, j - i);
+			i = j;
+		}
+		return n;
+	}
+
+	/** Flood fills the current layer's cells connected to (r, c) that hold the same tile as it (or are
+	 *  empty, if it's empty) with a palette tile, staying inside rows [r1, r2) and
+	 *  columns [c1, c2).  Filled tiles are walkable.  The fill is one undoable action
+	 *  reported as one change.  Returns false if nothing changed. */
+	public boolean fillAt(int r, int c, short id, int r1, int c1, int r2, int c2) {
+		history.begin();
+		int[] filled = FloodFill.fill(editLayer, history, r, c, id, true,
+				Math.max(0, r1), Math.max(0, c1), Math.min(numRows, r2), Math.min(numCols, c2));
+		history.end();
+		if (filled == null)
+			return false;
+		cellsEdited(editLayer, filled[0], filled[1], filled[2], filled[3]);
+		return true;
+	}
+
+	/** Flood fills with no bounds but the level's edges */
+	public boolean fillAt(int r, int c, short id) {
+		return fillAt(r, c, id, 0, 0, numRows, numCols);
+	}
+
+	/** Returns the background's palette ID at (r, c) or TilePalette.EMPTY */
+	public short getTileIdAt(int r, int c) {
+		return backgroundLayer.get(r, c);
+	}
+
+	/** Returns the palette ID at (r, c) of a layer or TilePalette.EMPTY */
+	public short getTileIdAt(int layer, int r, int c) {
+		return layers.get(layer).getGrid().get(r, c);
+	}
+
+	public boolean isWalkableAt(int r, int c) {
+		return backgroundLayer.isWalkable(r, c);
+	}
+
+	/** Returns true if any background cell of the chunk at chunk coordinates (chunkRow, chunkCol) has a tile */
+	public boolean chunkHasTiles(int chunkRow, int chunkCol) {
+		return backgroundLayer.getChunk(chunkRow, chunkCol) != null;
+	}
+
+	/** Returns true if any cell of a layer's chunk at (chunkRow, chunkCol) has a tile */
+	public boolean chunkHasTiles(int layer, int chunkRow, int chunkCol) {
+		return layers.get(layer).getGrid().getChunk(chunkRow, chunkCol) != null;
+	}
+
+	/** Sets the walkable property of (r, c).  Empty cells are never walkable. */
+	public void setWalkableAt(int r, int c, boolean state) {
+		cellChanging(backgroundLayer, r, c, getTileIdAt(r, c), state);
+		backgroundLayer.setWalkable(r, c, state);
+		cellsEdited(backgroundLayer, r, c, 1, 1);
+	}
+
+	/** Sets the walkable property of every cell in rows [r1, r2) and columns [c1, c2)
+	 *  as one change.  Empty cells are never walkable. */
+	public void setWalkableInRegion(int r1, int c1, int r2, int c2, boolean state) {
+		r1 = Math.max(r1, 0);
+		c1 = Math.max(c1, 0);
+		r2 = Math.min(r2, numRows);
+		c2 = Math.min(c2, numCols);
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		history.regionChanging(backgroundLayer, r1, c1, r2 - r1, c2 - c1);
+		for (int r = r1; r < r2; r++)
+			for (int c = c1; c < c2; c++)
+				backgroundLayer.setWalkable(r, c, state);
+		cellsEdited(backgroundLayer, r1, c1, r2 - r1, c2 - c1);
+	}
+
+	/** Returns the ID of the walkable region (r, c) belongs to, or WalkableRegions.NONE
+	 *  if it isn't walkable.  Cells share an ID if they're connected by walkable cells
+	 *  going up, down, left or right.  The ID is the region's first cell in row-major
+	 *  order as (row << 32) | col, so it stays put while other regions change. */
+	public long getWalkableRegionAt(int r, int c) {
+		return regions.regionAt(backgroundLayer, r, c);
+	}
+
+	/** Number of separate walkable regions in the level */
+	public int numWalkableRegions() {
+		return regions.numRegions(backgroundLayer);
+	}
+
+	/** Finds a route over walkable cells from (r1, c1) to (r2, c2), or returns null if
+	 *  there isn't one.  The route's length may be a little longer than the shortest. */
+	public ReachabilityGraph.Route findRoute(int r1, int c1, int r2, int c2) {
+		// Cells in different regions can't reach each other, no need to search
+		long region = getWalkableRegionAt(r1, c1);
+		if (region == WalkableRegions.NONE || region != getWalkableRegionAt(r2, c2))
+			return null;
+		return paths.findRoute(backgroundLayer, r1, c1, r2, c2);
+	}
+
+	/** Marks (r, c) as a key location, or unmarks it */
+	public void setKeyLocation(int r, int c, boolean state) {
+		Point p = new Point(r, c);
+		if (!state)
+			keyLocations.remove(p);
+		else if (!keyLocations.contains(p))
+			keyLocations.add(p);
+	}
+
+	public boolean isKeyLocation(int r, int c) {
+		return keyLocations.contains(new Point(r, c));
+	}
+
+	/** Key locations as (row, col) in the order they were marked */
+	public ArrayList<Point> getKeyLocations() {
+		return keyLocations;
+	}
+
+	/** Finds a route from the first key location to each of the others.  Entry i is the
+	 *  route to key location i, or null if it can't be reached; entry 0 is always null.
+	 *  Every key location can reach every other one exactly when only entry 0 is null. */
+	public ReachabilityGraph.Route[] checkKeyLocations() {
+		ReachabilityGraph.Route[] routes = new ReachabilityGraph.Route[keyLocations.size()];
+		for (int i = 1; i < routes.length; i++) {
+			Point from = keyLocations.get(0);
+			Point to = keyLocations.get(i);
+			routes[i] = findRoute(from.x, from.y, to.x, to.y);
+		}
+		return routes;
+	}
+
+	/** Returns a BackgroundTile view of background cell (r, c) or null if the cell is empty.
+	 *  Changing the view's walkable property changes the cell. */
+	public BackgroundTile getTileAt(int r, int c) {
+		return getTileIdAt(r, c) == TilePalette.EMPTY ? null : new CellTile(r, c);
+	}
+
+	/** Puts a tile into (r, c) of the current layer, or empties it if img is null */
+	public void setObjectAt(int r, int c, BackgroundTile img) {
+		if (img == null) {
+			setTileAt(r, c, TilePalette.EMPTY);
+			return;
+		}
+		short id = palette.intern(img.getImage(), img.getFileName());
+		cellChanging(editLayer, r, c, id, img.getPropertyWalkable());
+		editLayer.set(r, c, id, img.getPropertyWalkable());
+		cellsEdited(editLayer, r, c, 1, 1);
+	}
+
+	/** Builds a BackgroundTile array of the whole background.  This allocates a view
+	 *  for every non-empty cell, so prefer getTileIdAt() and getTileAt(). */
+	public BackgroundTile[][] getBackgroundLayer() {
+		BackgroundTile[][] layer = new BackgroundTile[numRows][numCols];
+		for (int r = 0; r < numRows; r++)
+			for (int c = 0; c < numCols; c++)
+				layer[r][c] = getTileAt(r, c);
+		return layer;
+	}
+
+	/** Copies the current layer's cells between p1 and p2, given as (row, col), to the clipboard */
+	public void setClipboardLayer(Point p1, Point p2) {
+		int r1, c1, r2, c2;
+		if (p1 == null || p2 == null) return;
+		c1 = (int)Math.min(p1.getY(), p2.getY());
+		r1 = (int)Math.min(p1.getX(), p2.getX());
+		c2 = (int)Math.max(p1.getY(), p2.getY());
+		r2 = (int)Math.max(p1.getX(), p2.getX());
+
+		TileRegion region = new TileRegion(r2 - r1, c2 - c1);
+		if (r2 > r1 && c2 > c1)
+			editLayer.copyTo(r1, c1, region);
+		publishClipboard(region);
+	}
+
+	/** Makes region the clipboard here and in every other editor */
+	private static synchronized void publishClipboard(TileRegion region) {
+		clipboardLayer = region;
+		SharedClipboard shared = SharedClipboard.getShared();
+		if (shared == null)
+			return;
+		try {
+			clipboardSequence = shared.write(region);
+		} catch (IOException e) {
+			// Still works inside this process
+			e.printStackTrace();
+		}
+	}
+
+	/** Picks up a clipboard copied in another editor, if there is a newer one */
+	private static synchronized TileRegion syncClipboard() {
+		SharedClipboard shared = SharedClipboard.getShared();
+		if (shared == null || shared.sequence() == clipboardSequence)
+			return clipboardLayer;
+		try {
+			TileRegion region = shared.read();
+			clipboardSequence = shared.getReadSequence();
+			if (region != null)
+				clipboardLayer = region;
+		} catch (IOException e) {
+			e.printStackTrace();
+			clipboardSequence = shared.sequence();
+		}
+		return clipboardLayer;
+	}
+
+	/** Pastes the clipboard into the current layer with its upper left corner at (startRow, startCol) */
+	public void pasteClipboardLayer(int startRow, int startCol) {
+		TileRegion clipboardLayer = syncClipboard();
+		if (clipboardLayer == null)
+			return;
+		// Only the part of the clipboard footprint inside the level changes
+		int r1 = Math.max(startRow, 0);
+		int c1 = Math.max(startCol, 0);
+		int r2 = Math.min(startRow + clipboardLayer.numRows(), numRows);
+		int c2 = Math.min(startCol + clipboardLayer.numCols(), numCols);
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		history.regionChanging(editLayer, r1, c1, r2 - r1, c2 - c1);
+		editLayer.paste(clipboardLayer, startRow, startCol, numRows, numCols);
+		cellsEdited(editLayer, r1, c1, r2 - r1, c2 - c1);
+	}
+
+	/** Puts a palette tile in every current layer cell of rows [r1, r2) and columns [c1, c2).  Filled
+	 *  tiles are walkable. */
+	public void fillRegion(int r1, int c1, int r2, int c2, short id) {
+		r1 = Math.max(r1, 0);
+		c1 = Math.max(c1, 0);
+		r2 = Math.min(r2, numRows);
+		c2 = Math.min(c2, numCols);
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		history.regionChanging(editLayer, r1, c1, r2 - r1, c2 - c1);
+		RegionOperations.fill(editLayer, r1, c1, r2, c2, id, true);
+		cellsEdited(editLayer, r1, c1, r2 - r1, c2 - c1);
+	}
+
+	/** Replaces one palette tile with another in the current layer's rows [r1, r2) and columns [c1, c2).
+	 *  Replaced cells keep their walkable property; empty cells that get a tile are walkable. */
+	public void replaceInRegion(int r1, int c1, int r2, int c2, short from, short to) {
+		r1 = Math.max(r1, 0);
+		c1 = Math.max(c1, 0);
+		r2 = Math.min(r2, numRows);
+		c2 = Math.min(c2, numCols);
+		if (r1 >= r2 || c1 >= c2 || from == to)
+			return;
+		history.regionChanging(editLayer, r1, c1, r2 - r1, c2 - c1);
+		RegionOperations.replace(editLayer, r1, c1, r2, c2, from, to);
+		cellsEdited(editLayer, r1, c1, r2 - r1, c2 - c1);
+	}
+
+	/** Turns the current layer's rows [r1, r2) and columns [c1, c2) 90 degrees clockwise, keeping the upper
+	 *  left corner where it is, so a region that isn't square changes shape.  Whatever
+	 *  ends up past the level's edge is dropped. */
+	public void rotateRegion(int r1, int c1, int r2, int c2) {
+		r1 = Math.max(r1, 0);
+		c1 = Math.max(c1, 0);
+		r2 = Math.min(r2, numRows);
+		c2 = Math.min(c2, numCols);
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		TileRegion region = new TileRegion(r2 - r1, c2 - c1);
+		editLayer.copyTo(r1, c1, region);
+		TileRegion rotated = RegionOperations.rotate(region);
+
+		// Both the old and the new footprint change
+		int numChangedRows = Math.min(Math.max(region.numRows(), rotated.numRows()), numRows - r1);
+		int numChangedCols = Math.min(Math.max(region.numCols(), rotated.numCols()), numCols - c1);
+		history.regionChanging(editLayer, r1, c1, numChangedRows, numChangedCols);
+		RegionOperations.fill(editLayer, r1, c1, r2, c2, TilePalette.EMPTY, false);
+		editLayer.paste(rotated, r1, c1, numRows, numCols);
+		cellsEdited(editLayer, r1, c1, numChangedRows, numChangedCols);
+	}
+
+	/** Mirrors the current layer's rows [r1, r2) and columns [c1, c2) left to right if horizontal is set,
+	 *  otherwise top to bottom */
+	public void flipRegion(int r1, int c1, int r2, int c2, boolean horizontal) {
+		r1 = Math.max(r1, 0);
+		c1 = Math.max(c1, 0);
+		r2 = Math.min(r2, numRows);
+		c2 = Math.min(c2, numCols);
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		TileRegion region = new TileRegion(r2 - r1, c2 - c1);
+		editLayer.copyTo(r1, c1, region);
+		history.regionChanging(editLayer, r1, c1, r2 - r1, c2 - c1);
+		editLayer.write(RegionOperations.flip(region, horizontal), r1, c1);
+		cellsEdited(editLayer, r1, c1, r2 - r1, c2 - c1);
+	}
+
+	/** Turns the clipboard 90 degrees clockwise */
+	public void rotateClipboard() {
+		TileRegion clipboardLayer = syncClipboard();
+		if (clipboardLayer != null)
+			publishClipboard(RegionOperations.rotate(clipboardLayer));
+	}
+
+	/** Mirrors the clipboard left to right if horizontal is set, otherwise top to bottom */
+	public void flipClipboard(boolean horizontal) {
+		TileRegion clipboardLayer = syncClipboard();
+		if (clipboardLayer != null)
+			publishClipboard(RegionOperations.flip(clipboardLayer, horizontal));
+	}
+
+	public boolean clipboardLayerVisible() {
+		return clipboardVisible;
+	}
+
+	public void setClipboardLayerVisible(boolean state) {
+		clipboardVisible = state;
+	}
+
+	public boolean selectionVisible() {
+		return selectionVisible;
+	}
+
+	public void setSelectionVisible(boolean state) {
+		selectionVisible = state;
+	}
+
+	// Returned as width, height
+	public Dimension getClipboardLayerDimensions() {
+		TileRegion clipboardLayer = syncClipboard();
+		return clipboardLayer == null || clipboardLayer.numRows() == 0 ? new Dimension(0, 0) : new Dimension(clipboardLayer.numCols(), clipboardLayer.numRows());
+	}
+
+	/** Returns the clipboard contents or null if the clipboard is empty */
+	public TileRegion getClipboardRegion() {
+		return syncClipboard();
+	}
+
+	/** Builds a BackgroundTile array copy of the clipboard, or null if it's empty */
+	public BackgroundTile[][] getClipboardLayer() {
+		TileRegion clipboardLayer = syncClipboard();
+		if (clipboardLayer == null)
+			return null;
+		BackgroundTile[][] layer = new BackgroundTile[clipboardLayer.numRows()][clipboardLayer.numCols()];
+		for (int r = 0; r < clipboardLayer.numRows(); r++) {
+			for (int c = 0; c < clipboardLayer.numCols(); c++) {
+				Tile tile = palette.getTile(clipboardLayer.getTileIdAt(r, c));
+				if (tile != null) {
+					layer[r][c] = new BackgroundTile(tile.getImage(), tile.getFileName());
+					layer[r][c].setProertyWalkable(clipboardLayer.isWalkableAt(r, c));
+				}
+			}
+		}
+		return layer;
+	}
+
+	/** Empties this editor's clipboard until something newer is copied in any editor */
+	public void clearClipboard() {
+		synchronized (LevelEditorModel.class) {
+			clipboardLayer = null;
+			SharedClipboard shared = SharedClipboard.getShared();
+			if (shared != null)
+				clipboardSequence = shared.sequence();
+		}
+	}
+
+	public void setGridSize(int numRows, int numCols) {
+
+		// Only chunks hanging over the new edge need work.  Growing costs nothing
+		// because new chunks are allocated when they're first painted.
+		// Cropping isn't undoable, and older edits may lie outside the new edge
+		if (numRows < this.numRows || numCols < this.numCols) {
+			for (LevelLayer layer : layers)
+				layer.getGrid().crop(numRows, numCols);
+			history.clear();
+		}
+
+		// Report the strips that were cropped away so nothing stale is drawn if the level grows back
+		int oldNumRows = this.numRows;
+		int oldNumCols = this.numCols;
+
+		// Set new attributes
+		this.numRows = numRows;
+		this.numCols = numCols;
+		if (journal != null)
+			journal.resized(numRows, numCols);
+		for (int i = keyLocations.size() - 1; i >= 0; i--)
+			if (keyLocations.get(i).x >= numRows || keyLocations.get(i).y >= numCols)
+				keyLocations.remove(i);
+
+		for (int i = 0; i < layers.size(); i++) {
+			if (numRows < oldNumRows)
+				fireCellsChanged(i, numRows, 0, oldNumRows - numRows, oldNumCols);
+			if (numCols < oldNumCols)
+				fireCellsChanged(i, 0, numCols, Math.min(numRows, oldNumRows), oldNumCols - numCols);
+		}
+	}
+
+	/** Replaces the level with the one in a binary level file.  The file is kept open
+	 *  and each layer's chunks are only read once something touches them. */
+	public void loadBinary(File file) throws IOException {
+		LevelFileEvent event = LevelFileEvent.start("load", file);
+		BinaryLevelFile level = BinaryLevelFile.open(file);
+		ArrayList<LevelLayer> loaded = level.createLayers();
+		LevelLayer.addMissingDefaults(loaded);
+		setLayers(loaded);
+		regions.invalidate();
+		paths.invalidate();
+		keyLocations.clear();
+		for (LevelLayer layer : layers)
+			layer.getGrid().markSaved();
+		levelFile = level;
+		history.clear();
+		numRows = level.numRows();
+		numCols = level.numCols();
+		if (journal != null)
+			journal.levelReplaced(file, numRows, numCols);
+		fireLevelReplaced();
+		event.finish(file, numRows, numCols);
+	}
+
+	/** Saves the level in the binary format.  Saving back to the file the level came from
+	 *  only writes the chunks that changed since it was loaded or last saved. */
+	public void saveBinary(File file) throws IOException {
+		LevelSnapshot snapshot = snapshot();
+		try {
+			snapshot.saveBinary(file, null);
+		} finally {
+			finishSave(snapshot);
+		}
+	}
+
+	/** Closes the binary file the level was loaded from once the level is done with, rather
+	 *  than leaving it open until the model is garbage collected.  Chunks that were never
+	 *  paged in read as empty afterwards. */
+	public void closeLevelFile() throws IOException {
+		if (levelFile != null)
+			levelFile.close();
+	}
+
+	/** Counts what's in every layer of the level.  Pages in every chunk of a binary level. */
+	public LevelStats computeStats() {
+		for (LevelLayer layer : layers)
+			layer.getGrid().loadAll();
+		return new LevelStats(layers, numRows, numCols, numWalkableRegions());
+	}
+
+	/** Takes a consistent copy of the level that can be saved on another thread */
+	public LevelSnapshot snapshot() {
+		return new LevelSnapshot(layers, numRows, numCols, levelFile);
+	}
+
+	/** Called once a snapshot is done saving, successfully or not */
+	public void finishSave(LevelSnapshot snapshot) {
+		snapshot.release();
+
+		// Only a binary save records what was written.  Unless another level was
+		// loaded in the meantime, that's now the file to save changes to.
+		if (snapshot.getSavedFile() == null)
+			return;
+		for (int i = 0; i < snapshot.numLayers(); i++)
+			snapshot.getOriginal(i).savedSnapshot(snapshot.getLayer(i).getGrid());
+		if (snapshot.getOriginal(BACKGROUND) == backgroundLayer)
+			levelFile = snapshot.getSavedFile();
+	}
+
+	/** Replaces the level with one read from the text format.  Returns how many cells
+	 *  use a tile that isn't in the images folder. */
+	public int loadText(File file) throws IOException {
+		LevelFileEvent event = LevelFileEvent.start("load", file);
+		TextLevelFile level;
+		try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			level = TextLevelFile.read(in);
+		}
+		ArrayList<LevelLayer> loaded = level.getLayers();
+		LevelLayer.addMissingDefaults(loaded);
+		setLayers(loaded);
+		regions.invalidate();
+		paths.invalidate();
+		keyLocations.clear();
+		levelFile = null;
+		history.clear();
+		numRows = Math.max(1, level.numRows());
+		numCols = Math.max(1, level.numCols());
+		if (journal != null)
+			journal.levelReplaced(file, numRows, numCols);
+		fireLevelReplaced();
+		event.finish(file, numRows, numCols);
+		return level.unknownTiles();
+	}
+
+	/** Empties every cell and goes back to the default layers, keeping the level size */
+	void clear() {
+		setLayers(LevelLayer.createDefaults());
+		regions.invalidate();
+		paths.invalidate();
+		keyLocations.clear();
+		levelFile = null;
+		history.clear();
+		fireLevelReplaced();
+	}
+
+	/** Writes every cell of a region into a layer, empty ones included, with its upper
+	 *  left corner at (r1, c1).  Used to replay a journal. */
+	void restoreCells(int layer, int r1, int c1, TileRegion cells) {
+		if (layer >= layers.size())
+			return;
+		ChunkedGrid grid = layers.get(layer).getGrid();
+		grid.write(cells, r1, c1);
+		cellsEdited(grid, r1, c1, cells.numRows(), cells.numCols());
+	}
+
+	/** Saves the level in the text format */
+	public void saveText(File file) throws IOException {
+		LevelSnapshot snapshot = snapshot();
+		try {
+			snapshot.saveText(file, null);
+		} finally {
+			finishSave(snapshot);
+		}
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	/** A BackgroundTile that reads and writes one cell of this model */
+	private class CellTile extends BackgroundTile {
+		private int r;
+		private int c;
+		private short id;		// Tile this view was made for
+
+		CellTile(int r, int c) {
+			super(palette.getTile(getTileIdAt(r, c)).getImage(), palette.getFileName(getTileIdAt(r, c)));
+			this.r = r;
+			this.c = c;
+			this.id = getTileIdAt(r, c);
+		}
+
+		@Override
+		public boolean getPropertyWalkable() {
+			return isWalkableAt(r, c);
+		}
+
+		@Override
+		public void setProertyWalkable(boolean newValue) {
+			// Ignore stale views of a cell that has since been repainted
+			if (getTileIdAt(r, c) == id)
+				setWalkableAt(r, c, newValue);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package model;
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for loading or saving a level file.  Only reads and writes that
+ * succeed are recorded.  A binary load only maps the file, so it doesn't include reading
+ * the chunks.
+ */
+@Name("leveleditor.LevelFile")
+@Label("Level File")
+@Category({"Level Editor", "I/O"})
+@Description("Loading or saving a level")
+class LevelFileEvent extends Event {
+
+	@Label("Operation")
+	String operation;			// "load" or "save"
+
+	@Label("Format")
+	String format;				// "binary" or "text"
+
+	@Label("Path")
+	String path;
+
+	@Label("Rows")
+	int numRows;
+
+	@Label("Columns")
+	int numCols;
+
+	@Label("File Size")
+	@DataAmount
+	long bytes;
+
+	/** Starts timing an operation on file */
+	static LevelFileEvent start(String operation, File file) {
+		LevelFileEvent event = new LevelFileEvent();
+		event.operation = operation;
+		event.format = file.getName().endsWith(BinaryLevelFile.EXTENSION) ? "binary" : "text";
+		event.path = file.getPath();
+		event.begin();
+		return event;
+	}
+
+	/** Records the operation as done, for a level of the given size */
+	void finish(File file, int numRows, int numCols) {
+		end();
+		if (!shouldCommit())
+			return;
+		this.numRows = numRows;
+		this.numCols = numCols;
+		bytes = file.length();
+		commit();
+	}
+}
@@ -0,0 +1,78 @@
+package model;
+import java.util.ArrayList;
+
+/**
+ * One layer of a level: a name, its cells, and whether and how strongly it's drawn.
+ * LevelEditorModel stacks layers bottom to top, with the background as layer 0.  Every
+ * layer keeps its own sparse ChunkedGrid, so an empty layer costs next to nothing.
+ * Only the background's walkable bits mean anything.
+ */
+public class LevelLayer {
+
+	public static final String[] DEFAULT_NAMES = {"background", "decoration", "objects", "collision"};
+
+	private String name;
+	private ChunkedGrid grid;
+	private boolean visible;
+	private float opacity;			// 0 (invisible) to 1 (opaque)
+
+	LevelLayer(String name, ChunkedGrid grid, boolean visible, float opacity) {
+		this.name = name;
+		this.grid = grid;
+		this.visible = visible;
+		this.opacity = opacity;
+	}
+
+	LevelLayer(String name, ChunkedGrid grid) {
+		this(name, grid, true, 1f);
+	}
+
+	/** A new, empty stack of the default layers */
+	static ArrayList<LevelLayer> createDefaults() {
+		ArrayList<LevelLayer> layers = new ArrayList<LevelLayer>();
+		for (String name : DEFAULT_NAMES)
+			layers.add(new LevelLayer(name, new ChunkedGrid()));
+		return layers;
+	}
+
+	/** Adds empty default layers to the top of layers until it has all of them */
+	static void addMissingDefaults(ArrayList<LevelLayer> layers) {
+		for (int i = layers.size(); i < DEFAULT_NAMES.length; i++)
+			layers.add(new LevelLayer(DEFAULT_NAMES[i], new ChunkedGrid()));
+	}
+
+	/** A copy of this layer holding a snapshot of its cells, see ChunkedGrid.snapshot() */
+	LevelLayer snapshot() {
+		return new LevelLayer(name, grid.snapshot(), visible, opacity);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	public float getOpacity() {
+		return opacity;
+	}
+
+	/** Sets how opaque the layer is drawn, clamped to 0 to 1 */
+	public void setOpacity(float opacity) {
+		this.opacity = Math.max(0f, Math.min(1f, opacity));
+	}
+
+	/** Returns true if the layer has no tiles at all */
+	public boolean isEmpty() {
+		return grid.numChunks() == 0 && !grid.hasUnloadedChunks();
+	}
+
+	ChunkedGrid getGrid() {
+		return grid;
+	}
+}
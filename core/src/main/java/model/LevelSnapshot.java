@@ -0,0 +1,104 @@
+package model;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * A frozen copy of a level taken by LevelEditorModel.snapshot().  Taking one only
+ * copies each layer's chunk table (the chunks themselves are copied on write), so it's cheap
+ * enough to do on the event thread, and it can then be saved on a background thread
+ * while the level keeps being edited.
+ *
+ * Hand the snapshot back to LevelEditorModel.finishSave() on the event thread once
+ * saving is over, whether it worked or not.
+ */
+public class LevelSnapshot {
+
+	private ArrayList<LevelLayer> layers;
+	private ArrayList<ChunkedGrid> originals;	// Grid each layer's snapshot was taken from
+	private int numRows;
+	private int numCols;
+	private BinaryLevelFile levelFile;		// Binary file the original was loaded from or saved to
+	private BinaryLevelFile savedFile;		// Set once a binary save succeeds
+
+	LevelSnapshot(ArrayList<LevelLayer> originalLayers, int numRows, int numCols, BinaryLevelFile levelFile) {
+		layers = new ArrayList<LevelLayer>();
+		originals = new ArrayList<ChunkedGrid>();
+		for (LevelLayer layer : originalLayers) {
+			layers.add(layer.snapshot());
+			originals.add(layer.getGrid());
+		}
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.levelFile = levelFile;
+	}
+
+	/** Saves in the binary format.  Safe to call off the event thread; progress may be null. */
+	public void saveBinary(File file, ProgressListener progress) throws IOException {
+		LevelFileEvent event = LevelFileEvent.start("save", file);
+		savedFile = BinaryLevelFile.save(layers, numRows, numCols, file, levelFile, progress);
+		event.finish(file, numRows, numCols);
+	}
+
+	/** Saves in the text format.  The file is only replaced once it's completely written.
+	 *  Safe to call off the event thread; progress may be null. */
+	public void saveText(File file, ProgressListener progress) throws IOException {
+		LevelFileEvent event = LevelFileEvent.start("save", file);
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+			TextLevelFile.write(layers, numRows, numCols, out, progress);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		event.finish(file, numRows, numCols);
+	}
+
+	/** Writes a complete binary copy without affecting what the level's own file needs saved */
+	void saveCopy(File file) throws IOException {
+		BinaryLevelFile.write(layers, numRows, numCols, file, levelFile, null);
+	}
+
+	/** Lets the level write the chunks this snapshot shared in place again.  Called
+	 *  once the snapshot won't be read any more. */
+	void release() {
+		for (LevelLayer layer : layers)
+			layer.getGrid().release();
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	int numLayers() {
+		return layers.size();
+	}
+
+	LevelLayer getLayer(int i) {
+		return layers.get(i);
+	}
+
+	ChunkedGrid getOriginal(int i) {
+		return originals.get(i);
+	}
+
+	BinaryLevelFile getSavedFile() {
+		return savedFile;
+	}
+}
\ No newline at end of file
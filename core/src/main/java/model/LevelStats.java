@@ -0,0 +1,100 @@
+package model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What's in a level, counted by LevelEditorModel.computeStats(): how many cells of all
+ * the layers hold a tile, how many background cells are walkable and in how many separate
+ * regions, and which tiles are used.
+ */
+public class LevelStats {
+
+	private int numRows;
+	private int numCols;
+	private int numLayers;
+	private long numTiles;					// Non-empty cells, over all layers
+	private long numWalkable;
+	private int numRegions;					// Separate walkable regions
+	private int numChunks;					// Over all layers
+	private ArrayList<String> tileNames;	// File name of every tile used, in palette order
+	private ArrayList<Long> tileCounts;		// Cells using each of them
+
+	LevelStats(List<LevelLayer> layers, int numRows, int numCols, int numRegions) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.numRegions = numRegions;
+		numLayers = layers.size();
+		TilePalette palette = TilePalette.getShared();
+		long[] counts = new long[palette.size()];
+		for (int layer = 0; layer < layers.size(); layer++) {
+			for (ChunkedGrid.Chunk chunk : layers.get(layer).getGrid().chunks()) {
+				numChunks++;
+				for (int i = 0; i < ChunkedGrid.CHUNK_CELLS; i++) {
+					short id = chunk.ids[i];
+					if (id == TilePalette.EMPTY)
+						continue;
+					// Tiles can be registered by other threads while counting
+					if (id >= counts.length)
+						counts = Arrays.copyOf(counts, palette.size());
+					counts[id]++;
+				}
+				if (layer == LevelEditorModel.BACKGROUND)
+					for (long word : chunk.walkable)
+						numWalkable += Long.bitCount(word);
+			}
+		}
+
+		tileNames = new ArrayList<String>();
+		tileCounts = new ArrayList<Long>();
+		for (short id = 1; id < counts.length; id++) {
+			if (counts[id] == 0)
+				continue;
+			numTiles += counts[id];
+			tileNames.add(palette.getFileName(id));
+			tileCounts.add(counts[id]);
+		}
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	public int numLayers() {
+		return numLayers;
+	}
+
+	/** Number of cells that hold a tile, over all layers */
+	public long numTiles() {
+		return numTiles;
+	}
+
+	/** Number of walkable background cells */
+	public long numWalkable() {
+		return numWalkable;
+	}
+
+	/** Number of separate walkable regions, see WalkableRegions */
+	public int numRegions() {
+		return numRegions;
+	}
+
+	/** Number of chunks that hold tiles, over all layers */
+	public int numChunks() {
+		return numChunks;
+	}
+
+	/** File names of the tiles used, each once */
+	public ArrayList<String> getTileNames() {
+		return tileNames;
+	}
+
+	/** Number of cells using each tile in getTileNames() */
+	public ArrayList<Long> getTileCounts() {
+		return tileCounts;
+	}
+}
@@ -0,0 +1,11 @@
+package model;
+import java.io.IOException;
+
+/**
+ * Told how far along a long-running save is.  Throwing from progressed() (e.g. an
+ * InterruptedIOException when the user cancels) aborts the save.
+ */
+public interface ProgressListener {
+	/** done out of total units of work are finished */
+	void progressed(long done, long total) throws IOException;
+}
\ No newline at end of file
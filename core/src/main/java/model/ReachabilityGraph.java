@@ -0,0 +1,431 @@
+package model;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A coarse graph of the walkable cells for answering path questions quickly on big
+ * levels (hierarchical pathfinding, HPA*).  Wherever two neighbouring chunks both have
+ * a run of walkable cells along their shared edge, the middle of the run becomes a node
+ * on each side, joined by an edge of length 1.  Inside a chunk every pair of nodes is
+ * joined by the length of the shortest walk between them that stays in the chunk.
+ *
+ * A route is found by walking from the start to the nodes of its chunk, searching the
+ * node graph with A*, and walking from the nodes of the goal's chunk to the goal, so a
+ * search looks at a few nodes per chunk rather than every cell.  The length found is
+ * never shorter than the true shortest path and usually equal or close to it.  Whether
+ * a route exists at all is exact.
+ *
+ * When cells change only the nodes of their chunks and of the chunks next to them are
+ * rebuilt, the first time a route is asked for after the change.
+ */
+public class ReachabilityGraph implements LevelChangeListener {
+
+	private static final int N = ChunkedGrid.CHUNK_SIZE;
+	private static final int REBUILD_ALL_CHUNKS = 4096;		// Changes covering more chunks than this rebuild everything
+	private static final int NOT_FOUND = Integer.MAX_VALUE;
+
+	// Row and column steps to the chunk above, below, to the left and to the right
+	private static final int[] DR = {-1, 1, 0, 0};
+	private static final int[] DC = {0, 0, -1, 1};
+
+	private HashMap<Long, ChunkNodes> chunks;
+	private HashSet<Long> dirty;			// Chunks changed since their nodes were built
+	private boolean allDirty;				// Everything changed, e.g. a level was loaded
+	private boolean numberingStale;			// Node numbers need handing out again
+
+	// Every node in every chunk, numbered from ChunkNodes.base
+	private ChunkNodes[] nodeChunk;
+	private int[] nodeIndex;
+	private int numNodes;
+
+	// Search state, indexed by node number.  A node's entries only count if its stamp
+	// matches the current search.
+	private int[] cost;
+	private int[] parent;
+	private int[] stamp;
+	private boolean[] closed;
+	private int searchStamp;
+	private long[] heap;					// (estimated length << 32) | node
+	private int heapSize;
+
+	ReachabilityGraph() {
+		chunks = new HashMap<Long, ChunkNodes>();
+		dirty = new HashSet<Long>();
+		allDirty = true;
+		nodeChunk = new ChunkNodes[0];
+		nodeIndex = new int[0];
+		cost = new int[0];
+		parent = new int[0];
+		stamp = new int[0];
+		closed = new boolean[0];
+		heap = new long[64];
+	}
+
+	/** A route between two cells */
+	public static class Route {
+		private int length;
+		private int[] waypoints;
+
+		Route(int length, int[] waypoints) {
+			this.length = length;
+			this.waypoints = waypoints;
+		}
+
+		/** Number of steps from one cell to the next */
+		public int getLength() {
+			return length;
+		}
+
+		/** The cells the route passes through on its way between chunks as row, column
+		 *  pairs, starting with the start and ending with the goal.  Consecutive waypoints
+		 *  are in the same chunk or next to each other. */
+		public int[] getWaypoints() {
+			return waypoints;
+		}
+	}
+
+	/** Nodes of one chunk and the lengths of the walks between them */
+	private static class ChunkNodes {
+		final int chunkRow;
+		final int chunkCol;
+		short[] cells;			// Local index of each node's cell
+		int count;
+		int[] dist;				// dist[i * count + j], -1 if j can't be reached from i inside the chunk
+		int base;				// Number of node 0
+
+		ChunkNodes(int chunkRow, int chunkCol) {
+			this.chunkRow = chunkRow;
+			this.chunkCol = chunkCol;
+		}
+
+		/** The node at a local cell index, or -1 */
+		int nodeAt(int cell) {
+			for (int i = 0; i < count; i++)
+				if (cells[i] == cell)
+					return i;
+			return -1;
+		}
+	}
+
+	@Override
+	public void cellsChanged(int row, int col, int numRows, int numCols) {
+		if (allDirty || numRows <= 0 || numCols <= 0)
+			return;
+		int cr1 = row >> ChunkedGrid.CHUNK_SHIFT;
+		int cc1 = col >> ChunkedGrid.CHUNK_SHIFT;
+		int cr2 = (row + numRows - 1) >> ChunkedGrid.CHUNK_SHIFT;
+		int cc2 = (col + numCols - 1) >> ChunkedGrid.CHUNK_SHIFT;
+		if ((long)(cr2 - cr1 + 1) * (cc2 - cc1 + 1) > REBUILD_ALL_CHUNKS) {
+			invalidate();
+			return;
+		}
+		for (int cr = cr1; cr <= cr2; cr++)
+			for (int cc = cc1; cc <= cc2; cc++)
+				dirty.add(ChunkedGrid.key(cr, cc));
+	}
+
+	/** Forgets everything, e.g. when the model starts using another grid */
+	void invalidate() {
+		allDirty = true;
+		dirty.clear();
+	}
+
+	/** Finds a route from (r1, c1) to (r2, c2) over walkable cells, or returns null if
+	 *  there isn't one */
+	Route findRoute(ChunkedGrid grid, int r1, int c1, int r2, int c2) {
+		if (!grid.isWalkable(r1, c1) || !grid.isWalkable(r2, c2))
+			return null;
+		update(grid);
+
+		ChunkedGrid.Chunk startChunk = grid.getChunk(r1 >> ChunkedGrid.CHUNK_SHIFT, c1 >> ChunkedGrid.CHUNK_SHIFT);
+		ChunkedGrid.Chunk goalChunk = grid.getChunk(r2 >> ChunkedGrid.CHUNK_SHIFT, c2 >> ChunkedGrid.CHUNK_SHIFT);
+		int[] queue = new int[ChunkedGrid.CHUNK_CELLS];
+		int[] startDist = new int[ChunkedGrid.CHUNK_CELLS];
+		int[] goalDist = new int[ChunkedGrid.CHUNK_CELLS];
+		walk(startChunk, ChunkedGrid.localIndex(r1, c1), startDist, queue);
+		walk(goalChunk, ChunkedGrid.localIndex(r2, c2), goalDist, queue);
+
+		// Staying inside one chunk is a route too, though leaving it may be shorter
+		int best = NOT_FOUND;
+		int bestNode = -1;
+		if (startChunk == goalChunk && startDist[ChunkedGrid.localIndex(r2, c2)] >= 0)
+			best = startDist[ChunkedGrid.localIndex(r2, c2)];
+
+		ChunkNodes start = chunks.get(ChunkedGrid.key(startChunk.getChunkRow(), startChunk.getChunkCol()));
+		ChunkNodes goal = chunks.get(ChunkedGrid.key(goalChunk.getChunkRow(), goalChunk.getChunkCol()));
+		if (++searchStamp == 0) {
+			Arrays.fill(stamp, 0);
+			searchStamp = 1;
+		}
+		heapSize = 0;
+		if (start != null) {
+			for (int i = 0; i < start.count; i++) {
+				int d = startDist[start.cells[i]];
+				if (d >= 0)
+					relax(start.base + i, d, -1, r2, c2);
+			}
+		}
+
+		while (heapSize > 0) {
+			long top = pop();
+			int u = (int)top;
+			if (closed[u] && stamp[u] == searchStamp)
+				continue;
+			if ((int)(top >>> 32) >= best)
+				break;
+			closed[u] = true;
+			ChunkNodes chunk = nodeChunk[u];
+			int i = nodeIndex[u];
+
+			if (chunk == goal) {
+				int d = goalDist[chunk.cells[i]];
+				if (d >= 0 && cost[u] + d < best) {
+					best = cost[u] + d;
+					bestNode = u;
+				}
+			}
+			for (int j = 0; j < chunk.count; j++) {
+				int d = chunk.dist[i * chunk.count + j];
+				if (d > 0)
+					relax(chunk.base + j, cost[u] + d, u, r2, c2);
+			}
+
+			// Step across the chunk edge to a node on the other side
+			int r = chunk.cells[i] >> ChunkedGrid.CHUNK_SHIFT;
+			int c = chunk.cells[i] & (N - 1);
+			for (int dir = 0; dir < 4; dir++) {
+				if (!onEdge(r, c, dir))
+					continue;
+				ChunkNodes next = chunks.get(ChunkedGrid.key(chunk.chunkRow + DR[dir], chunk.chunkCol + DC[dir]));
+				if (next == null)
+					continue;
+				int j = next.nodeAt(((r + DR[dir]) & (N - 1)) * N + ((c + DC[dir]) & (N - 1)));
+				if (j >= 0)
+					relax(next.base + j, cost[u] + 1, u, r2, c2);
+			}
+		}
+		if (best == NOT_FOUND)
+			return null;
+
+		int steps = 0;
+		for (int u = bestNode; u >= 0; u = parent[u])
+			steps++;
+		int[] waypoints = new int[2 * (steps + 2)];
+		waypoints[0] = r1;
+		waypoints[1] = c1;
+		int k = 2 * steps;
+		for (int u = bestNode; u >= 0; u = parent[u], k -= 2) {
+			ChunkNodes chunk = nodeChunk[u];
+			int cell = chunk.cells[nodeIndex[u]];
+			waypoints[k] = (chunk.chunkRow << ChunkedGrid.CHUNK_SHIFT) + (cell >> ChunkedGrid.CHUNK_SHIFT);
+			waypoints[k + 1] = (chunk.chunkCol << ChunkedGrid.CHUNK_SHIFT) + (cell & (N - 1));
+		}
+		waypoints[waypoints.length - 2] = r2;
+		waypoints[waypoints.length - 1] = c2;
+		return new Route(best, waypoints);
+	}
+
+	/** Number of nodes in the graph */
+	int numNodes(ChunkedGrid grid) {
+		update(grid);
+		return numNodes;
+	}
+
+	private void relax(int node, int newCost, int from, int goalRow, int goalCol) {
+		if (stamp[node] == searchStamp && (closed[node] || cost[node] <= newCost))
+			return;
+		if (stamp[node] != searchStamp) {
+			stamp[node] = searchStamp;
+			closed[node] = false;
+		}
+		cost[node] = newCost;
+		parent[node] = from;
+
+		// Estimate what's left with the distance ignoring walls
+		ChunkNodes chunk = nodeChunk[node];
+		int cell = chunk.cells[nodeIndex[node]];
+		int r = (chunk.chunkRow << ChunkedGrid.CHUNK_SHIFT) + (cell >> ChunkedGrid.CHUNK_SHIFT);
+		int c = (chunk.chunkCol << ChunkedGrid.CHUNK_SHIFT) + (cell & (N - 1));
+		long estimate = (long)newCost + Math.abs(r - goalRow) + Math.abs(c - goalCol);
+		push((Math.min(estimate, Integer.MAX_VALUE) << 32) | node);
+	}
+
+	/** Rebuilds the nodes of changed chunks and their neighbours */
+	private void update(ChunkedGrid grid) {
+		if (allDirty) {
+			grid.loadAll();
+			chunks.clear();
+			for (ChunkedGrid.Chunk chunk : grid.chunks())
+				build(grid, chunk.getChunkRow(), chunk.getChunkCol());
+			allDirty = false;
+			dirty.clear();
+			numberingStale = true;
+		}
+		else if (!dirty.isEmpty()) {
+			// Nodes sit on chunk edges, so a change also moves the nodes next door
+			HashSet<Long> rebuild = new HashSet<Long>();
+			for (Long key : dirty) {
+				int cr = (int)(key >> 32);
+				int cc = (int)(long)key;
+				rebuild.add(key);
+				for (int dir = 0; dir < 4; dir++)
+					rebuild.add(ChunkedGrid.key(cr + DR[dir], cc + DC[dir]));
+			}
+			for (Long key : rebuild)
+				build(grid, (int)(key >> 32), (int)(long)key);
+			dirty.clear();
+			numberingStale = true;
+		}
+		if (numberingStale) {
+			number();
+			numberingStale = false;
+		}
+	}
+
+	/** Finds the nodes of one chunk and the walks between them */
+	private void build(ChunkedGrid grid, int chunkRow, int chunkCol) {
+		Long key = ChunkedGrid.key(chunkRow, chunkCol);
+		ChunkedGrid.Chunk chunk = grid.getChunk(chunkRow, chunkCol);
+		if (chunk == null) {
+			chunks.remove(key);
+			return;
+		}
+		ChunkNodes nodes = new ChunkNodes(chunkRow, chunkCol);
+		nodes.cells = new short[4 * N];
+
+		// The middle of every run of cells that are walkable on both sides of an edge
+		for (int dir = 0; dir < 4; dir++) {
+			ChunkedGrid.Chunk next = grid.getChunk(chunkRow + DR[dir], chunkCol + DC[dir]);
+			if (next == null)
+				continue;
+			int runStart = -1;
+			for (int i = 0; i <= N; i++) {
+				boolean open = i < N && chunk.isWalkable(edgeCell(dir, i)) && next.isWalkable(edgeCell(opposite(dir), i));
+				if (open && runStart < 0)
+					runStart = i;
+				else if (!open && runStart >= 0) {
+					short cell = (short)edgeCell(dir, (runStart + i - 1) / 2);
+					if (nodes.nodeAt(cell) < 0)
+						nodes.cells[nodes.count++] = cell;
+					runStart = -1;
+				}
+			}
+		}
+		if (nodes.count == 0) {
+			chunks.remove(key);
+			return;
+		}
+
+		nodes.dist = new int[nodes.count * nodes.count];
+		int[] dist = new int[ChunkedGrid.CHUNK_CELLS];
+		int[] queue = new int[ChunkedGrid.CHUNK_CELLS];
+		for (int i = 0; i < nodes.count; i++) {
+			walk(chunk, nodes.cells[i], dist, queue);
+			for (int j = 0; j < nodes.count; j++)
+				nodes.dist[i * nodes.count + j] = dist[nodes.cells[j]];
+		}
+		chunks.put(key, nodes);
+	}
+
+	/** Hands out node numbers and sizes the search arrays */
+	private void number() {
+		numNodes = 0;
+		for (ChunkNodes chunk : chunks.values()) {
+			chunk.base = numNodes;
+			numNodes += chunk.count;
+		}
+		if (nodeChunk.length < numNodes) {
+			int size = Math.max(numNodes, nodeChunk.length * 2);
+			nodeChunk = new ChunkNodes[size];
+			nodeIndex = new int[size];
+			cost = new int[size];
+			parent = new int[size];
+			stamp = new int[size];
+			closed = new boolean[size];
+			searchStamp = 0;
+		}
+		for (ChunkNodes chunk : chunks.values()) {
+			for (int i = 0; i < chunk.count; i++) {
+				nodeChunk[chunk.base + i] = chunk;
+				nodeIndex[chunk.base + i] = i;
+			}
+		}
+	}
+
+	/** Fills dist with the number of steps from the start cell to every cell of the
+	 *  chunk without leaving it, -1 for cells that can't be reached */
+	private static void walk(ChunkedGrid.Chunk chunk, int start, int[] dist, int[] queue) {
+		Arrays.fill(dist, -1);
+		dist[start] = 0;
+		queue[0] = start;
+		int head = 0;
+		int tail = 1;
+		while (head < tail) {
+			int i = queue[head++];
+			int r = i >> ChunkedGrid.CHUNK_SHIFT;
+			int c = i & (N - 1);
+			for (int dir = 0; dir < 4; dir++) {
+				if (onEdge(r, c, dir))
+					continue;
+				int j = i + DR[dir] * N + DC[dir];
+				if (dist[j] < 0 && chunk.isWalkable(j)) {
+					dist[j] = dist[i] + 1;
+					queue[tail++] = j;
+				}
+			}
+		}
+	}
+
+	/** Whether a step in direction dir from local cell (r, c) leaves the chunk */
+	private static boolean onEdge(int r, int c, int dir) {
+		switch (dir) {
+		case 0: return r == 0;
+		case 1: return r == N - 1;
+		case 2: return c == 0;
+		default: return c == N - 1;
+		}
+	}
+
+	/** Local index of the i'th cell along the chunk edge facing direction dir */
+	private static int edgeCell(int dir, int i) {
+		switch (dir) {
+		case 0: return i;
+		case 1: return (N - 1) * N + i;
+		case 2: return i * N;
+		default: return i * N + N - 1;
+		}
+	}
+
+	private static int opposite(int dir) {
+		return dir ^ 1;
+	}
+
+	private void push(long entry) {
+		if (heapSize == heap.length)
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) >> 1] > entry) {
+			heap[i] = heap[(i - 1) >> 1];
+			i = (i - 1) >> 1;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop() {
+		long top = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heap[child + 1] < heap[child])
+				child++;
+			if (heap[child] >= last)
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+}
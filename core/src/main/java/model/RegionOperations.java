@@ -0,0 +1,259 @@
+package model;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk operations on rectangles of cells, split into bands of rows that run in parallel
+ * on the common fork-join pool once a rectangle is big enough to be worth it.
+ *
+ * Fill and replace work right on the level's chunks: the chunks under the rectangle are
+ * handed out by ChunkedGrid.acquireChunks() and each band owns whole chunk rows, so no
+ * two threads ever write the same chunk.  Rotating and flipping build a new TileRegion;
+ * there each band owns a run of destination rows lined up with the 64-bit words of the
+ * walkable flags, and rotation copies cells in BLOCK x BLOCK tiles so both the rows read
+ * and the rows written stay in cache.
+ */
+class RegionOperations {
+
+	public static final int PARALLEL_CELLS = 1 << 16;		// Smaller jobs run on the calling thread
+	public static final int BLOCK = 32;					// Side of the tiles rotation copies
+
+	private static final int FILL = 0;
+	private static final int REPLACE = 1;
+	private static final int ROTATE = 2;
+	private static final int FLIP_HORIZONTAL = 3;
+	private static final int FLIP_VERTICAL = 4;
+
+	private RegionOperations() {
+	}
+
+	/** Puts id in every cell of rows [r1, r2) and columns [c1, c2) */
+	static void fill(ChunkedGrid grid, int r1, int c1, int r2, int c2, short id, boolean walkable) {
+		runOnChunks(grid, r1, c1, r2, c2, FILL, TilePalette.EMPTY, id, walkable);
+	}
+
+	/** Replaces from with to in rows [r1, r2) and columns [c1, c2).  Replaced cells keep
+	 *  their walkable flag, except that cells that were empty become walkable. */
+	static void replace(ChunkedGrid grid, int r1, int c1, int r2, int c2, short from, short to) {
+		if (from != to)
+			runOnChunks(grid, r1, c1, r2, c2, REPLACE, from, to, true);
+	}
+
+	/** Returns src turned 90 degrees clockwise */
+	static TileRegion rotate(TileRegion src) {
+		return transform(src, ROTATE, src.numCols(), src.numRows());
+	}
+
+	/** Returns src mirrored left to right if horizontal is set, otherwise top to bottom */
+	static TileRegion flip(TileRegion src, boolean horizontal) {
+		return transform(src, horizontal ? FLIP_HORIZONTAL : FLIP_VERTICAL, src.numRows(), src.numCols());
+	}
+
+	private static void runOnChunks(ChunkedGrid grid, int r1, int c1, int r2, int c2, int op, short from, short to, boolean walkable) {
+		if (r1 >= r2 || c1 >= c2)
+			return;
+		// Empty cells only turn into tiles if empty cells are being filled or replaced
+		boolean create = to != TilePalette.EMPTY && (op == FILL || from == TilePalette.EMPTY);
+		ChunkedGrid.Chunk[] chunks = grid.acquireChunks(r1, c1, r2, c2, create);
+		ChunkTask task = new ChunkTask(chunks, r1, c1, r2, c2, op, from, to, walkable);
+		if ((long)(r2 - r1) * (c2 - c1) < PARALLEL_CELLS)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+		grid.releaseChunks(chunks);
+	}
+
+	private static TileRegion transform(TileRegion src, int op, int numRows, int numCols) {
+		short[] ids = new short[numRows * numCols];
+		long[] walkable = new long[(ids.length + 63) >> 6];
+		long[] srcWalkable = src.walkableBits().toLongArray();
+		RegionTask task = new RegionTask(src, srcWalkable, ids, walkable, numRows, numCols, op, 0, numRows);
+		if (ids.length < PARALLEL_CELLS)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+		return new TileRegion(numRows, numCols, ids, BitSet.valueOf(walkable));
+	}
+
+	/** Fills or replaces cells in a band of chunk rows */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 2473810385125873504L;
+
+		private ChunkedGrid.Chunk[] chunks;		// From acquireChunks(), chunk-row-major
+		private int r1, c1, r2, c2;				// Rectangle being changed
+		private int op;
+		private short from;
+		private short to;
+		private boolean walkable;
+		private int bandStart;					// Chunk rows of this band, counted from r1's chunk row
+		private int bandEnd;
+
+		ChunkTask(ChunkedGrid.Chunk[] chunks, int r1, int c1, int r2, int c2, int op, short from, short to, boolean walkable) {
+			this(chunks, r1, c1, r2, c2, op, from, to, walkable, 0, ((r2 - 1) >> ChunkedGrid.CHUNK_SHIFT) - (r1 >> ChunkedGrid.CHUNK_SHIFT) + 1);
+		}
+
+		private ChunkTask(ChunkedGrid.Chunk[] chunks, int r1, int c1, int r2, int c2, int op, short from, short to, boolean walkable, int bandStart, int bandEnd) {
+			this.chunks = chunks;
+			this.r1 = r1;
+			this.c1 = c1;
+			this.r2 = r2;
+			this.c2 = c2;
+			this.op = op;
+			this.from = from;
+			this.to = to;
+			this.walkable = walkable;
+			this.bandStart = bandStart;
+			this.bandEnd = bandEnd;
+		}
+
+		@Override
+		protected void compute() {
+			int chunkCols = chunks.length / (((r2 - 1) >> ChunkedGrid.CHUNK_SHIFT) - (r1 >> ChunkedGrid.CHUNK_SHIFT) + 1);
+			if (bandEnd - bandStart > 1 && (long)(bandEnd - bandStart) * chunkCols * ChunkedGrid.CHUNK_CELLS > PARALLEL_CELLS) {
+				int mid = (bandStart + bandEnd) >>> 1;
+				invokeAll(new ChunkTask(chunks, r1, c1, r2, c2, op, from, to, walkable, bandStart, mid),
+						new ChunkTask(chunks, r1, c1, r2, c2, op, from, to, walkable, mid, bandEnd));
+				return;
+			}
+			for (int i = bandStart * chunkCols; i < bandEnd * chunkCols; i++) {
+				ChunkedGrid.Chunk chunk = chunks[i];
+				if (chunk == null)
+					continue;
+				int rowStart = Math.max(r1, chunk.firstRow());
+				int rowEnd = Math.min(r2, chunk.firstRow() + ChunkedGrid.CHUNK_SIZE);
+				int colStart = Math.max(c1, chunk.firstCol());
+				int colEnd = Math.min(c2, chunk.firstCol() + ChunkedGrid.CHUNK_SIZE);
+				for (int r = rowStart; r < rowEnd; r++) {
+					int start = ChunkedGrid.localIndex(r, colStart);
+					int end = start + colEnd - colStart;
+					if (op == FILL)
+						fillRow(chunk, start, end);
+					else
+						replaceRow(chunk, start, end);
+				}
+				chunk.recount();
+			}
+		}
+
+		private void fillRow(ChunkedGrid.Chunk chunk, int start, int end) {
+			boolean isWalkable = walkable && to != TilePalette.EMPTY;
+			for (int i = start; i < end; i++) {
+				chunk.ids[i] = to;
+				if (isWalkable)
+					chunk.walkable[i >> 6] |= 1L << i;
+				else
+					chunk.walkable[i >> 6] &= ~(1L << i);
+			}
+		}
+
+		private void replaceRow(ChunkedGrid.Chunk chunk, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (chunk.ids[i] != from)
+					continue;
+				chunk.ids[i] = to;
+				if (to == TilePalette.EMPTY)
+					chunk.walkable[i >> 6] &= ~(1L << i);
+				else if (from == TilePalette.EMPTY)
+					chunk.walkable[i >> 6] |= 1L << i;
+			}
+		}
+	}
+
+	/** Rotates or flips into a band of destination rows */
+	private static class RegionTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -6082290757003318711L;
+
+		private TileRegion src;
+		private long[] srcWalkable;
+		private short[] ids;			// Destination, numRows x numCols
+		private long[] walkable;
+		private int numRows;
+		private int numCols;
+		private int op;
+		private int rowStart;			// Destination rows of this band
+		private int rowEnd;
+
+		RegionTask(TileRegion src, long[] srcWalkable, short[] ids, long[] walkable, int numRows, int numCols, int op, int rowStart, int rowEnd) {
+			this.src = src;
+			this.srcWalkable = srcWalkable;
+			this.ids = ids;
+			this.walkable = walkable;
+			this.numRows = numRows;
+			this.numCols = numCols;
+			this.op = op;
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+		}
+
+		@Override
+		protected void compute() {
+			// Bands split on rows that start a new 64-bit word of walkable flags
+			int align = 64 / gcd(numCols, 64);
+			if ((long)(rowEnd - rowStart) * numCols > PARALLEL_CELLS && rowEnd - rowStart > 2 * align) {
+				int mid = (rowStart + (rowEnd - rowStart) / 2) / align * align;
+				invokeAll(new RegionTask(src, srcWalkable, ids, walkable, numRows, numCols, op, rowStart, mid),
+						new RegionTask(src, srcWalkable, ids, walkable, numRows, numCols, op, mid, rowEnd));
+				return;
+			}
+			if (op == ROTATE)
+				rotate();
+			else
+				flip();
+		}
+
+		/** dst(r, c) = src(srcRows - 1 - c, r), a block at a time */
+		private void rotate() {
+			short[] srcIds = src.ids();
+			int srcCols = src.numCols();
+			int srcRows = src.numRows();
+			for (int r0 = rowStart; r0 < rowEnd; r0 += BLOCK) {
+				for (int c0 = 0; c0 < numCols; c0 += BLOCK) {
+					int rEnd = Math.min(rowEnd, r0 + BLOCK);
+					int cEnd = Math.min(numCols, c0 + BLOCK);
+					for (int r = r0; r < rEnd; r++) {
+						int dst = r * numCols + c0;
+						for (int c = c0; c < cEnd; c++, dst++) {
+							int from = (srcRows - 1 - c) * srcCols + r;
+							ids[dst] = srcIds[from];
+							if (isSet(srcWalkable, from))
+								walkable[dst >> 6] |= 1L << dst;
+						}
+					}
+				}
+			}
+		}
+
+		private void flip() {
+			short[] srcIds = src.ids();
+			for (int r = rowStart; r < rowEnd; r++) {
+				int dst = r * numCols;
+				if (op == FLIP_VERTICAL) {
+					int from = (numRows - 1 - r) * numCols;
+					System.arraycopy(srcIds, from, ids, dst, numCols);
+					for (int c = 0; c < numCols; c++)
+						if (isSet(srcWalkable, from + c))
+							walkable[(dst + c) >> 6] |= 1L << (dst + c);
+				}
+				else {
+					int from = dst + numCols - 1;
+					for (int c = 0; c < numCols; c++, from--) {
+						ids[dst + c] = srcIds[from];
+						if (isSet(srcWalkable, from))
+							walkable[(dst + c) >> 6] |= 1L << (dst + c);
+					}
+				}
+			}
+		}
+
+		private static boolean isSet(long[] words, int i) {
+			return (i >> 6) < words.length && (words[i >> 6] & (1L << i)) != 0;
+		}
+
+		private static int gcd(int a, int b) {
+			return b == 0 ? a : gcd(b, a % b);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package model;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A clipboard shared by every editor process on the machine, kept in a memory-mapped
+ * file.  The file holds the last region copied in any editor:
+ *
+ *   int magic, int version, long sequence, int body length, then the body:
+ *   int numRows, int numCols, int number of tile names,
+ *   each name as a short length and UTF-8 bytes,
+ *   numRows * numCols shorts, 0 for an empty cell or 1 + the index of the cell's name,
+ *   the walkable bits as longs
+ *
+ * The sequence number goes up by one with every copy and is written last, after the
+ * body, so it marks a complete clipboard.  Editors only read the body again when the
+ * sequence number has changed, and reading it is a few bulk copies out of the mapping
+ * plus one pass to turn name indices into palette IDs, however big the region is.
+ * Writers and readers take an exclusive or shared lock on the file.
+ *
+ * The file can be set with the system property leveleditor.clipboardFile.
+ */
+public class SharedClipboard {
+
+	private static final int MAGIC = 0x4C564331;		// "LVC1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 20;
+	private static final int SEQUENCE_OFFSET = 8;
+	private static final int LENGTH_OFFSET = 16;
+
+	private static SharedClipboard shared;
+	private static boolean unavailable;					// Opening the file failed, don't keep trying
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer header;					// Mapped once, so checking the sequence is a memory read
+	private long readSequence;							// Sequence of the clipboard read()/write() last saw
+
+	private SharedClipboard(File path) throws IOException {
+		path.getAbsoluteFile().getParentFile().mkdirs();
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		FileLock lock = channel.lock();
+		try {
+			if (channel.size() < HEADER_SIZE || readHeaderInt(0) != MAGIC || readHeaderInt(4) != VERSION) {
+				ByteBuffer empty = ByteBuffer.allocate(HEADER_SIZE);
+				empty.putInt(MAGIC).putInt(VERSION).putLong(0).putInt(0).flip();
+				channel.write(empty, 0);
+			}
+		} finally {
+			lock.release();
+		}
+		header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+	}
+
+	/** The clipboard file every editor uses, or null if it can't be opened */
+	public static synchronized SharedClipboard getShared() {
+		if (shared == null && !unavailable) {
+			try {
+				shared = new SharedClipboard(getFile());
+			} catch (IOException e) {
+				e.printStackTrace();
+				unavailable = true;
+			}
+		}
+		return shared;
+	}
+
+	public static File getFile() {
+		String path = System.getProperty("leveleditor.clipboardFile");
+		return path != null ? new File(path) : new File(System.getProperty("user.home"), ".leveleditor" + File.separator + "clipboard.bin");
+	}
+
+	/** Sequence number of the newest clipboard, 0 if nothing was ever copied */
+	public long sequence() {
+		return header.getLong(SEQUENCE_OFFSET);
+	}
+
+	/** Sequence number of the clipboard last read or written by this process */
+	public synchronized long getReadSequence() {
+		return readSequence;
+	}
+
+	/** Publishes region as the newest clipboard and returns its sequence number */
+	public synchronized long write(TileRegion region) throws IOException {
+		// Name every tile in the region once
+		TilePalette palette = TilePalette.getShared();
+		short[] ids = region.ids();
+		short[] localIds = new short[palette.size()];
+		short[] fileIds = new short[ids.length];
+		byte[][] names = new byte[16][];
+		int numNames = 0;
+		int namesSize = 0;
+		for (int i = 0; i < ids.length; i++) {
+			short id = ids[i];
+			if (id == TilePalette.EMPTY)
+				continue;
+			if (id >= localIds.length)
+				localIds = Arrays.copyOf(localIds, palette.size());
+			if (localIds[id] == 0) {
+				if (numNames == names.length)
+					names = Arrays.copyOf(names, numNames * 2);
+				names[numNames] = palette.getFileName(id).getBytes(StandardCharsets.UTF_8);
+				namesSize += 2 + names[numNames].length;
+				localIds[id] = (short)++numNames;
+			}
+			fileIds[i] = localIds[id];
+		}
+		long[] walkable = Arrays.copyOf(region.walkableBits().toLongArray(), (ids.length + 63) >> 6);
+		long bodySize = 12L + namesSize + 2L * ids.length + 8L * walkable.length;
+		if (HEADER_SIZE + bodySize > Integer.MAX_VALUE)
+			throw new IOException("Selection too big for the shared clipboard");
+
+		FileLock lock = channel.lock();
+		try {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bodySize);
+			map.position(HEADER_SIZE);
+			map.putInt(region.numRows()).putInt(region.numCols()).putInt(numNames);
+			for (int i = 0; i < numNames; i++)
+				map.putShort((short)names[i].length).put(names[i]);
+			map.asShortBuffer().put(fileIds);
+			map.position(map.position() + 2 * fileIds.length);
+			map.asLongBuffer().put(walkable);
+			map.putInt(LENGTH_OFFSET, (int)bodySize);
+			readSequence = map.getLong(SEQUENCE_OFFSET) + 1;
+			map.putLong(SEQUENCE_OFFSET, readSequence);
+			if (channel.size() > HEADER_SIZE + bodySize)
+				channel.truncate(HEADER_SIZE + bodySize);
+			return readSequence;
+		} finally {
+			lock.release();
+		}
+	}
+
+	/** Reads the newest clipboard, or returns null if nothing was ever copied */
+	public synchronized TileRegion read() throws IOException {
+		FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+		try {
+			readSequence = header.getLong(SEQUENCE_OFFSET);
+			int bodySize = header.getInt(LENGTH_OFFSET);
+			if (readSequence == 0 || bodySize == 0)
+				return null;
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, bodySize);
+			int numRows = map.getInt();
+			int numCols = map.getInt();
+			int numNames = map.getInt();
+
+			// File IDs -> palette IDs, tiles that aren't loaded here are still named
+			TilePalette palette = TilePalette.getShared();
+			short[] toPaletteIds = new short[numNames + 1];
+			for (int i = 1; i <= numNames; i++) {
+				byte[] name = new byte[map.getShort() & 0xffff];
+				map.get(name);
+				toPaletteIds[i] = palette.intern(null, new String(name, StandardCharsets.UTF_8));
+			}
+
+			short[] ids = new short[numRows * numCols];
+			map.asShortBuffer().get(ids);
+			map.position(map.position() + 2 * ids.length);
+			long[] walkable = new long[(ids.length + 63) >> 6];
+			map.asLongBuffer().get(walkable);
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = toPaletteIds[ids[i]];
+			return new TileRegion(numRows, numCols, ids, BitSet.valueOf(walkable));
+		} finally {
+			lock.release();
+		}
+	}
+
+	private int readHeaderInt(long position) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		channel.read(buf, position);
+		return buf.getInt(0);
+	}
+}
@@ -0,0 +1,258 @@
+package model;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads and writes levels in the original text format: one line per row, each cell
+ * written as "[fileName walkable]" or "null" and separated by spaces, e.g.
+ *
+ *   [ground.png true] [rock.png false] null
+ *
+ * The rows are the background.  If any other layer has tiles, every layer above the
+ * background follows as a "#layer name" line and then its rows, which are left out for
+ * an empty layer.  Visibility and opacity aren't kept; use the binary format for those.
+ *
+ * Both directions stream, so even very large levels are handled with a fixed amount of
+ * memory on top of the level itself.
+ */
+public class TextLevelFile {
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final char[] NULL_CELL = "null ".toCharArray();
+	private static final char[] TRUE_CELL = " true] ".toCharArray();
+	private static final char[] FALSE_CELL = " false] ".toCharArray();
+	private static final char[] LINE_END = "\r\n".toCharArray();
+	private static final String LAYER_HEADER = "#layer";
+
+	private int numRows;
+	private int numCols;
+	private int unknownTiles;		// Cells whose tile name wasn't in the images folder
+
+	// Writer state while writing
+	private char[][] names;					// Tile names as chars, looked up once per tile
+	private char[] buf;
+	private int len;
+
+	// Parser state while reading
+	private ArrayList<LevelLayer> layers;
+	private ChunkedGrid grid;				// Grid of the layer being read
+	private int row;						// Row of that layer being read
+	private StringBuilder layerName;		// Set between a "#layer" token and the end of its line
+	private HashMap<String, Short> ids;		// Tile names seen so far
+	private StringBuilder name;				// Name of the cell being read, may span tokens
+	private boolean inTile;					// Between a "[name" token and its "walkable]" token
+	private String lastName;				// Previous cell's tile, to skip most lookups
+	private short lastId;
+	private int col;
+
+	private TextLevelFile() {
+	}
+
+	/** Writes a stack of layers, each in row-major order, through a large buffer without
+	 *  building a String per cell.  progress is told after each row and may be null. */
+	public static void write(List<LevelLayer> layers, int numRows, int numCols, Writer out, ProgressListener progress) throws IOException {
+		TextLevelFile level = new TextLevelFile();
+		level.names = new char[TilePalette.getShared().size()][];
+		level.buf = new char[BUFFER_SIZE];
+
+		// Levels that only use the background stay readable by older editors
+		boolean onlyBackground = true;
+		int numSections = 1;
+		for (int i = 1; i < layers.size(); i++) {
+			if (!layers.get(i).isEmpty()) {
+				onlyBackground = false;
+				numSections++;
+			}
+		}
+
+		long total = (long)numRows * numSections;
+		level.writeRows(layers.get(0).getGrid(), numRows, numCols, out, progress, 0, total);
+		for (int i = 1, section = 1; i < layers.size() && !onlyBackground; i++) {
+			level.writeLine(out, (LAYER_HEADER + " " + layers.get(i).getName()).toCharArray());
+			if (layers.get(i).isEmpty())
+				continue;
+			level.writeRows(layers.get(i).getGrid(), numRows, numCols, out, progress, (long)numRows * section++, total);
+		}
+		out.write(level.buf, 0, level.len);
+		out.flush();
+	}
+
+	/** Writes one line per row of grid.  done rows out of total were written before these. */
+	private void writeRows(ChunkedGrid grid, int numRows, int numCols, Writer out, ProgressListener progress, long done, long total) throws IOException {
+		TilePalette palette = TilePalette.getShared();
+		for (int r = 0; r < numRows; r++) {
+			for (int c = 0; c < numCols; c++) {
+				short id = grid.get(r, c);
+				char[] name = null;
+				if (id != TilePalette.EMPTY) {
+					if (id >= names.length)
+						names = Arrays.copyOf(names, palette.size());
+					if (names[id] == null)
+						names[id] = palette.getFileName(id).toCharArray();
+					name = names[id];
+				}
+				if (len + (name == null ? NULL_CELL.length : name.length + FALSE_CELL.length + 1) > buf.length) {
+					out.write(buf, 0, len);
+					len = 0;
+				}
+				if (name == null)
+					len = append(buf, len, NULL_CELL);
+				else {
+					buf[len++] = '[';
+					len = append(buf, len, name);
+					len = append(buf, len, grid.isWalkable(r, c) ? TRUE_CELL : FALSE_CELL);
+				}
+			}
+			if (len + LINE_END.length > buf.length) {
+				out.write(buf, 0, len);
+				len = 0;
+			}
+			len = append(buf, len, LINE_END);
+			if (progress != null)
+				progress.progressed(done + r + 1, total);
+		}
+	}
+
+	/** Writes chars and a line break */
+	private void writeLine(Writer out, char[] chars) throws IOException {
+		if (len + chars.length + LINE_END.length > buf.length) {
+			out.write(buf, 0, len);
+			len = 0;
+		}
+		len = append(buf, len, chars);
+		len = append(buf, len, LINE_END);
+	}
+
+	/**
+	 * Reads a level one character at a time.  The number of rows is the number of
+	 * non-blank lines in the longest layer and the number of columns is the longest row.
+	 * Tile names are resolved against the shared palette; names that aren't loaded are
+	 * still kept so the level saves back the same way.
+	 */
+	public static TextLevelFile read(Reader in) throws IOException {
+		TextLevelFile level = new TextLevelFile();
+		level.layers = new ArrayList<LevelLayer>();
+		level.grid = new ChunkedGrid();
+		level.layers.add(new LevelLayer(LevelLayer.DEFAULT_NAMES[0], level.grid));
+		level.ids = new HashMap<String, Short>();
+		level.name = new StringBuilder();
+		char[] buf = new char[BUFFER_SIZE];
+		char[] token = new char[256];
+		int tokenLen = 0;
+
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			for (int i = 0; i < n; i++) {
+				char ch = buf[i];
+				if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+					if (tokenLen == token.length)
+						token = Arrays.copyOf(token, token.length * 2);
+					token[tokenLen++] = ch;
+					continue;
+				}
+				if (tokenLen > 0) {
+					level.readToken(token, tokenLen);
+					tokenLen = 0;
+				}
+				if ((ch == '\n' || ch == '\r') && level.col > 0)
+					level.endRow();
+				else if ((ch == '\n' || ch == '\r') && level.layerName != null)
+					level.startLayer();
+			}
+		}
+
+		// The last line may not end with a line break
+		if (tokenLen > 0)
+			level.readToken(token, tokenLen);
+		if (level.col > 0)
+			level.endRow();
+		else if (level.layerName != null)
+			level.startLayer();
+		return level;
+	}
+
+	/** Handles one space-separated token: "null", part of a "[fileName walkable]" cell,
+	 *  or part of a "#layer name" line */
+	private void readToken(char[] token, int len) {
+		if (layerName != null) {
+			if (layerName.length() > 0)
+				layerName.append(' ');
+			layerName.append(token, 0, len);
+		}
+		else if (!inTile && col == 0 && token[0] == '#' && LAYER_HEADER.contentEquals(new String(token, 0, len)))
+			layerName = new StringBuilder();
+		else if (!inTile && token[0] == '[') {
+			inTile = true;
+			name.setLength(0);
+			name.append(token, 1, len - 1);
+		}
+		else if (inTile && token[len - 1] == ']') {
+			// The last token of a cell is its walkable flag.  Neighbouring cells
+			// usually hold the same tile so the previous lookup is reused.
+			if (lastName == null || !lastName.contentEquals(name)) {
+				lastName = name.toString();
+				Short id = ids.get(lastName);
+				if (id == null) {
+					TilePalette palette = TilePalette.getShared();
+					id = palette.idOf(lastName);
+					if (id == TilePalette.EMPTY)
+						id = palette.intern(null, lastName);
+					ids.put(lastName, id);
+				}
+				lastId = id;
+			}
+			if (TilePalette.getShared().getImage(lastId) == null)
+				unknownTiles++;
+			grid.set(row, col++, lastId, len == 5 && token[0] == 't');
+			inTile = false;
+		}
+		else if (inTile)
+			name.append(' ').append(token, 0, len);		// File name with a space in it
+		else
+			col++;										// "null"
+	}
+
+	private void endRow() {
+		numCols = Math.max(numCols, col);
+		row++;
+		numRows = Math.max(numRows, row);
+		col = 0;
+	}
+
+	/** Starts reading the layer named by the "#layer" line just read */
+	private void startLayer() {
+		grid = new ChunkedGrid();
+		layers.add(new LevelLayer(layerName.toString(), grid));
+		layerName = null;
+		row = 0;
+	}
+
+	/** The layers read, background first */
+	public ArrayList<LevelLayer> getLayers() {
+		return layers;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+
+	/** Number of cells whose tile isn't in the images folder */
+	public int unknownTiles() {
+		return unknownTiles;
+	}
+
+	private static int append(char[] buf, int len, char[] chars) {
+		System.arraycopy(chars, 0, buf, len, chars.length);
+		return len + chars.length;
+	}
+}
\ No newline at end of file
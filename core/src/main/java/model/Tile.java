@@ -1,28 +1,22 @@
 package model;
 import java.awt.Image;
 
-import javax.swing.ImageIcon;
-
 /**
  * This class represents a graphical Tile in the game.
  * If you use it, you should EXTEND it or ADD MORE PROPERTIES
  */
 public class Tile  {
 
-	private ImageIcon icon;		// Graphical representation of this tile
-	private String fileName;	// Filename should match the ImageIcon used
+	private Image image;		// Graphical representation of this tile, null if it hasn't been loaded
+	private String fileName;	// Filename should match the Image used
 	
-	public Tile(ImageIcon icon, String fileName) {
-		this.icon = icon;
+	public Tile(Image image, String fileName) {
+		this.image = image;
 		this.fileName = fileName;
 	}
-	
-	public ImageIcon getImageIcon() {
-		return icon;
-	}
 
 	public Image getImage() {
-		return icon.getImage();
+		return image;
 	}
 	
 	public String getFileName() {
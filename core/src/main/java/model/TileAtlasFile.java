@@ -0,0 +1,140 @@
+package model;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Exports a set of tile images as a texture atlas for the game: the images packed at
+ * their own size into a few large PNG pages, plus a text manifest saying where each
+ * tile ended up.  For an atlas named "level" the files are
+ *
+ *   level.atlas		the manifest
+ *   level.atlas0.png	the first page, level.atlas1.png the second and so on
+ *
+ * The manifest has one line per page and one per tile:
+ *
+ *   page 0 2048 512 level.atlas0.png
+ *   tile 0 1 1 64 64 ground.png
+ *
+ * i.e. page number, size and file name, then the page number, x, y, width and height of
+ * a tile followed by its file name.  File names come last since they may hold spaces.
+ */
+public class TileAtlasFile {
+
+	public static final String EXTENSION = ".atlas";
+	public static final int PAGE_SIZE = 2048;
+	public static final int PADDING = 1;		// Empty pixels between tiles
+
+	private int numPages;
+	private int numTiles;
+	private ArrayList<File> skipped;		// Images that couldn't be read or don't fit on a page
+
+	private TileAtlasFile() {
+		skipped = new ArrayList<File>();
+	}
+
+	/** The manifest file for an atlas exported next to level, e.g. level.lvl -> level.atlas */
+	public static File manifestFor(File level) {
+		String name = level.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(level.getAbsoluteFile().getParentFile(), name + EXTENSION);
+	}
+
+	/** Packs the images and writes the manifest, with its pages next to it named as
+	 *  described above.  progress is told after each image is read and each page is
+	 *  written, and may be null. */
+	public static TileAtlasFile export(File[] imageFiles, File manifest, ProgressListener progress) throws IOException {
+		TileAtlasFile atlas = new TileAtlasFile();
+		long total = imageFiles.length * 2L;
+		long done = 0;
+
+		// Every image has to be read to know its size
+		ArrayList<File> files = new ArrayList<File>();
+		ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+		for (File file : imageFiles) {
+			BufferedImage img = null;
+			try {
+				img = ImageIO.read(file);
+			} catch (IOException e) {
+				img = null;
+			}
+			if (img == null)
+				atlas.skipped.add(file);
+			else {
+				files.add(file);
+				images.add(img);
+			}
+			if (progress != null)
+				progress.progressed(++done, total);
+		}
+
+		int[] widths = new int[images.size()];
+		int[] heights = new int[images.size()];
+		for (int i = 0; i < images.size(); i++) {
+			widths[i] = images.get(i).getWidth();
+			heights[i] = images.get(i).getHeight();
+		}
+		AtlasPacker packer = new AtlasPacker(PAGE_SIZE, PAGE_SIZE, PADDING);
+		int[][] places = packer.pack(widths, heights);
+		atlas.numPages = packer.numPages();
+
+		File dir = manifest.getAbsoluteFile().getParentFile();
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifest), StandardCharsets.UTF_8))) {
+			for (int p = 0; p < atlas.numPages; p++) {
+				// Only the last page can be partly empty
+				int pageWidth = packer.usedWidth();
+				int pageHeight = p == atlas.numPages - 1 ? packer.lastPageHeight() : PAGE_SIZE;
+				BufferedImage page = new BufferedImage(pageWidth, pageHeight, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g2 = page.createGraphics();
+				for (int i = 0; i < places.length; i++)
+					if (places[i] != null && places[i][0] == p)
+						g2.drawImage(images.get(i), places[i][1], places[i][2], null);
+				g2.dispose();
+
+				String pageName = manifest.getName() + p + ".png";
+				ImageIO.write(page, "png", new File(dir, pageName));
+				out.write("page " + p + " " + pageWidth + " " + pageHeight + " " + pageName + "\r\n");
+				done += images.size() / Math.max(1, atlas.numPages);
+				if (progress != null)
+					progress.progressed(done, total);
+			}
+			for (int i = 0; i < places.length; i++) {
+				if (places[i] == null) {
+					atlas.skipped.add(files.get(i));
+					continue;
+				}
+				out.write("tile " + places[i][0] + " " + places[i][1] + " " + places[i][2] + " " + widths[i] + " " + heights[i]
+						+ " " + files.get(i).getName() + "\r\n");
+				atlas.numTiles++;
+			}
+		}
+		if (progress != null)
+			progress.progressed(total, total);
+		return atlas;
+	}
+
+	public int numPages() {
+		return numPages;
+	}
+
+	/** Number of tiles in the atlas */
+	public int numTiles() {
+		return numTiles;
+	}
+
+	/** Images left out because they couldn't be read or are bigger than a page */
+	public ArrayList<File> getSkipped() {
+		return skipped;
+	}
+}
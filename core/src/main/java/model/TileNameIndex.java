@@ -0,0 +1,137 @@
+package model;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * Finds tile names containing a piece of text, ignoring case, without scanning every
+ * name.  The names are lower-cased and joined into one string and every position in it
+ * is kept in a suffix array sorted by the text that follows it, so all the names
+ * containing a query sit in one range of the array that two binary searches find.
+ * A lookup costs O(|query| log n) plus the number of matches.  The suffix array is only
+ * built on the first search.
+ */
+public class TileNameIndex {
+
+	private static final char SEPARATOR = '\n';		// Between names in text, sorts before any name character
+
+	private String[] names;
+	private char[] text;				// Lower-cased names, each followed by SEPARATOR
+	private int[] starts;				// Name index -> where it starts in text
+	private int[] suffixes;				// Positions in text sorted by the text from there on, null until needed
+
+	public TileNameIndex(String[] names) {
+		this.names = names;
+	}
+
+	/** Joins the names into text and sorts its suffixes */
+	private void build() {
+		starts = new int[names.length];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			starts[i] = sb.length();
+			sb.append(names[i].toLowerCase(Locale.ROOT)).append(SEPARATOR);
+		}
+		text = sb.toString().toCharArray();
+
+		// Only positions inside names start a suffix worth searching
+		Integer[] order = new Integer[text.length - names.length];
+		int n = 0;
+		for (int p = 0; p < text.length; p++)
+			if (text[p] != SEPARATOR)
+				order[n++] = p;
+		Arrays.sort(order, (a, b) -> compare(a, b));
+		suffixes = new int[n];
+		for (int i = 0; i < n; i++)
+			suffixes[i] = order[i];
+	}
+
+	/**
+	 * Returns the indices of the names containing query (ignoring case), names starting
+	 * with it first and otherwise in their original order.  An empty query matches every
+	 * name.
+	 */
+	public int[] find(String query) {
+		if (query.isEmpty()) {
+			int[] all = new int[names.length];
+			for (int i = 0; i < all.length; i++)
+				all[i] = i;
+			return all;
+		}
+		if (suffixes == null)
+			build();
+		char[] q = query.toLowerCase(Locale.ROOT).toCharArray();
+		int from = lowerBound(q, false);
+		int to = lowerBound(q, true);
+
+		// A name can contain the query more than once, so sort and drop the repeats.
+		// Prefix matches are sorted ahead of the rest by giving them negative keys.
+		long[] found = new long[to - from];
+		for (int i = from; i < to; i++) {
+			int name = nameAt(suffixes[i]);
+			found[i - from] = suffixes[i] == starts[name] ? name - (long)names.length : name;
+		}
+		Arrays.sort(found);
+		int[] matches = new int[found.length];
+		BitSet seen = new BitSet();
+		int n = 0;
+		for (long key : found) {
+			int name = (int)(key < 0 ? key + names.length : key);
+			if (!seen.get(name)) {
+				seen.set(name);
+				matches[n++] = name;
+			}
+		}
+		return Arrays.copyOf(matches, n);
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/** First suffix that doesn't sort before q, or with after set, the first one that
+	 *  doesn't start with q either */
+	private int lowerBound(char[] q, boolean after) {
+		int lo = 0;
+		int hi = suffixes.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = comparePrefix(suffixes[mid], q);
+			if (cmp < 0 || (after && cmp == 0))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** Compares the text at p with q, looking at no more than q's length */
+	private int comparePrefix(int p, char[] q) {
+		for (int i = 0; i < q.length; i++) {
+			if (p + i >= text.length)
+				return -1;
+			if (text[p + i] != q[i])
+				return text[p + i] < q[i] ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/** Compares the suffixes at a and b up to the end of their names */
+	private int compare(int a, int b) {
+		while (text[a] == text[b] && text[a] != SEPARATOR) {
+			a++;
+			b++;
+		}
+		return text[a] - text[b];
+	}
+
+	/** Index of the name that text position p falls in */
+	private int nameAt(int p) {
+		int i = Arrays.binarySearch(starts, p);
+		return i >= 0 ? i : -i - 2;
+	}
+}
@@ -0,0 +1,82 @@
+package model;
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Interns every kind of tile exactly once and hands out a compact short ID for it.
+ * The level grids only store these IDs, so painting a cell never allocates a new
+ * Tile.  ID 0 is reserved for an empty cell.
+ *
+ * There is one palette shared by every editor window so that tile IDs mean the same
+ * thing everywhere (the clipboard is shared between windows too).
+ */
+public class TilePalette {
+
+	public static final short EMPTY = 0;			// ID of an empty (null) cell
+	public static final int MAX_TILES = Short.MAX_VALUE;
+
+	private static final TilePalette shared = new TilePalette();
+
+	private ArrayList<Tile> tiles;					// Flyweight Tile for each ID
+	private HashMap<String, Short> idsByName;		// File name -> ID
+
+	private TilePalette() {
+		tiles = new ArrayList<Tile>();
+		tiles.add(null);
+		idsByName = new HashMap<String, Short>();
+	}
+
+	/** The palette shared by all editor windows */
+	public static TilePalette getShared() {
+		return shared;
+	}
+
+	/** Returns the ID for the tile with this file name, registering it if it's new.
+	 *  The first Image registered under a file name is the one that is kept. */
+	public synchronized short intern(Image image, String fileName) {
+		Short id = idsByName.get(fileName);
+		if (id != null)
+			return id;
+		if (tiles.size() > MAX_TILES)
+			throw new IllegalStateException("Too many tile types (max " + MAX_TILES + ")");
+		short newId = (short)tiles.size();
+		tiles.add(new Tile(image, fileName));
+		idsByName.put(fileName, newId);
+		return newId;
+	}
+
+	/** Gives a tile its image, e.g. once it has been decoded or if it was registered
+	 *  without one by a level file */
+	public synchronized void setImage(short id, Image image) {
+		tiles.set(id, new Tile(image, tiles.get(id).getFileName()));
+	}
+
+	/** Returns the ID registered for this file name or EMPTY if there isn't one */
+	public synchronized short idOf(String fileName) {
+		Short id = idsByName.get(fileName);
+		return id == null ? EMPTY : id;
+	}
+
+	/** Returns the shared Tile for an ID or null for EMPTY */
+	public synchronized Tile getTile(short id) {
+		return tiles.get(id);
+	}
+
+	/** Returns the file name of the tile for an ID or null for EMPTY */
+	public String getFileName(short id) {
+		Tile tile = getTile(id);
+		return tile == null ? null : tile.getFileName();
+	}
+
+	/** Returns the image of the tile for an ID or null for EMPTY */
+	public Image getImage(short id) {
+		Tile tile = getTile(id);
+		return tile == null ? null : tile.getImage();
+	}
+
+	/** Number of IDs handed out so far, including EMPTY */
+	public synchronized int size() {
+		return tiles.size();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package model;
+import java.util.BitSet;
+
+/**
+ * A dense rectangular block of tile IDs and walkable flags stored in row-major order.
+ * Used for the clipboard and anywhere else a copy of part of the level is needed.
+ */
+public class TileRegion {
+
+	private int numRows;
+	private int numCols;
+	private short[] tileIds;		// TilePalette IDs, row-major
+	private BitSet walkable;		// One bit per cell, same indexing as tileIds
+
+	public TileRegion(int numRows, int numCols) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		tileIds = new short[numRows * numCols];
+		walkable = new BitSet(numRows * numCols);
+	}
+
+	/** A region around existing arrays, e.g. ones filled in by RegionOperations */
+	TileRegion(int numRows, int numCols, short[] tileIds, BitSet walkable) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.tileIds = tileIds;
+		this.walkable = walkable;
+	}
+
+	public short getTileIdAt(int r, int c) {
+		return tileIds[r * numCols + c];
+	}
+
+	public boolean isWalkableAt(int r, int c) {
+		return walkable.get(r * numCols + c);
+	}
+
+	public void set(int r, int c, short id, boolean isWalkable) {
+		int i = r * numCols + c;
+		tileIds[i] = id;
+		walkable.set(i, isWalkable && id != TilePalette.EMPTY);
+	}
+
+	/** Backing array of tile IDs, row-major */
+	short[] ids() {
+		return tileIds;
+	}
+
+	/** Backing walkable flags, same indexing as ids() */
+	BitSet walkableBits() {
+		return walkable;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numCols() {
+		return numCols;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,331 @@
+package model;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Splits the walkable cells of a level into regions: cells are in the same region if
+ * you can walk from one to the other going up, down, left and right over walkable cells.
+ *
+ * Each chunk is labeled on its own, one pass over its walkable bits joining each cell to
+ * the cell to its left and the one above, so a chunk ends up with a few local regions.
+ * The local regions of neighbouring chunks are then joined with a union-find along the
+ * chunk edges.  When cells change only their chunks are labeled again, and the
+ * union-find is rebuilt from the stored labels, which only looks at the edge cells.
+ * Both happen the first time the regions are asked for after a change.
+ *
+ * A region's ID is the position of its first cell in row-major order, (row << 32) | col,
+ * so a region keeps its ID while cells elsewhere change.  When two regions join, the
+ * result has the smaller of the two IDs.
+ */
+public class WalkableRegions implements LevelChangeListener {
+
+	public static final long NONE = -1;		// Region ID of a cell that isn't walkable
+
+	private static final int REBUILD_ALL_CHUNKS = 4096;		// Changes covering more chunks than this relabel everything
+
+	private HashMap<Long, ChunkLabels> labels;
+	private ChunkLabels lastLabels;			// Most recently looked up, saves a map lookup per cell
+	private HashSet<Long> dirty;			// Chunks changed since they were labeled
+	private boolean allDirty;				// Everything changed, e.g. a level was loaded
+	private boolean linksStale;				// The union-find needs rebuilding
+
+	// Union-find over every chunk's local regions, indexed by ChunkLabels.base + label - 1
+	private int[] parent;
+	private long[] firstCell;				// Region ID of each root
+	private int numRegions;
+
+	WalkableRegions() {
+		labels = new HashMap<Long, ChunkLabels>();
+		dirty = new HashSet<Long>();
+		allDirty = true;
+		parent = new int[0];
+		firstCell = new long[0];
+	}
+
+	/** Local region labels of one chunk */
+	private static class ChunkLabels {
+		final int chunkRow;
+		final int chunkCol;
+		final short[] cells;		// 0 if not walkable, else 1 + local region
+		int count;					// Number of local regions
+		short[] first;				// Index of each local region's first cell
+		int base;					// Union-find index of local region 1
+		ChunkLabels right;			// Labels of the neighbouring chunks, if they have any
+		ChunkLabels below;
+
+		ChunkLabels(int chunkRow, int chunkCol) {
+			this.chunkRow = chunkRow;
+			this.chunkCol = chunkCol;
+			cells = new short[ChunkedGrid.CHUNK_CELLS];
+		}
+
+		int firstRow() {
+			return chunkRow << ChunkedGrid.CHUNK_SHIFT;
+		}
+
+		int firstCol() {
+			return chunkCol << ChunkedGrid.CHUNK_SHIFT;
+		}
+	}
+
+	@Override
+	public void cellsChanged(int row, int col, int numRows, int numCols) {
+		if (allDirty || numRows <= 0 || numCols <= 0)
+			return;
+		int cr1 = row >> ChunkedGrid.CHUNK_SHIFT;
+		int cc1 = col >> ChunkedGrid.CHUNK_SHIFT;
+		int cr2 = (row + numRows - 1) >> ChunkedGrid.CHUNK_SHIFT;
+		int cc2 = (col + numCols - 1) >> ChunkedGrid.CHUNK_SHIFT;
+		if ((long)(cr2 - cr1 + 1) * (cc2 - cc1 + 1) > REBUILD_ALL_CHUNKS) {
+			allDirty = true;
+			dirty.clear();
+			return;
+		}
+		for (int cr = cr1; cr <= cr2; cr++)
+			for (int cc = cc1; cc <= cc2; cc++)
+				dirty.add(ChunkedGrid.key(cr, cc));
+	}
+
+	/** Forgets everything, e.g. when the model starts using another grid */
+	void invalidate() {
+		allDirty = true;
+		dirty.clear();
+	}
+
+	/** Returns the ID of the region (r, c) is in, or NONE if it isn't walkable */
+	long regionAt(ChunkedGrid grid, int r, int c) {
+		update(grid);
+		ChunkLabels chunk = lastLabels;
+		if (chunk == null || chunk.chunkRow != r >> ChunkedGrid.CHUNK_SHIFT || chunk.chunkCol != c >> ChunkedGrid.CHUNK_SHIFT) {
+			chunk = labels.get(ChunkedGrid.key(r >> ChunkedGrid.CHUNK_SHIFT, c >> ChunkedGrid.CHUNK_SHIFT));
+			if (chunk == null)
+				return NONE;
+			lastLabels = chunk;
+		}
+		int label = chunk.cells[ChunkedGrid.localIndex(r, c)];
+		return label == 0 ? NONE : firstCell[find(chunk.base + label - 1)];
+	}
+
+	/** Number of separate walkable regions */
+	int numRegions(ChunkedGrid grid) {
+		update(grid);
+		return numRegions;
+	}
+
+	/** Labels changed chunks again and rejoins the chunks if anything changed */
+	private void update(ChunkedGrid grid) {
+		if (allDirty || !dirty.isEmpty())
+			lastLabels = null;
+		if (allDirty) {
+			grid.loadAll();
+			labels.clear();
+			for (ChunkedGrid.Chunk chunk : grid.chunks())
+				relabel(chunk);
+			allDirty = false;
+			dirty.clear();
+			linksStale = true;
+		}
+		else if (!dirty.isEmpty()) {
+			for (Long key : dirty) {
+				ChunkedGrid.Chunk chunk = grid.getChunk((int)(key >> 32), (int)(long)key);
+				if (chunk == null)
+					remove(key);
+				else
+					relabel(chunk);
+			}
+			dirty.clear();
+			linksStale = true;
+		}
+		if (linksStale) {
+			link();
+			linksStale = false;
+		}
+	}
+
+	/** Labels the walkable cells of one chunk, joining each to its left and upper neighbour */
+	private void relabel(ChunkedGrid.Chunk chunk) {
+		Long key = ChunkedGrid.key(chunk.getChunkRow(), chunk.getChunkCol());
+		ChunkLabels chunkLabels = labels.get(key);
+		if (chunkLabels == null)
+			chunkLabels = add(chunk.getChunkRow(), chunk.getChunkCol());
+		short[] cells = chunkLabels.cells;
+
+		// Fully walkable chunks are common and are one region
+		if (isAllSet(chunk.walkable)) {
+			Arrays.fill(cells, (short)1);
+			chunkLabels.count = 1;
+			chunkLabels.first = new short[1];
+			return;
+		}
+		Arrays.fill(cells, (short)0);
+
+		// First pass: provisional labels, with equivalences in a small union-find
+		int[] local = new int[ChunkedGrid.CHUNK_CELLS / 2 + 2];
+		int next = 1;
+		for (int r = 0; r < ChunkedGrid.CHUNK_SIZE; r++) {
+			int bits = rowBits(chunk.walkable, r);
+			if (bits == 0)
+				continue;
+			int i = r << ChunkedGrid.CHUNK_SHIFT;
+			for (int c = 0; c < ChunkedGrid.CHUNK_SIZE; c++, i++) {
+				if ((bits & (1 << c)) == 0)
+					continue;
+				int left = c > 0 ? cells[i - 1] : 0;
+				int up = r > 0 ? cells[i - ChunkedGrid.CHUNK_SIZE] : 0;
+				if (left == 0 && up == 0) {
+					local[next] = next;
+					cells[i] = (short)next++;
+				}
+				else if (left == 0 || up == 0 || left == up)
+					cells[i] = (short)Math.max(left, up);
+				else {
+					int a = findLocal(local, left);
+					int b = findLocal(local, up);
+					local[Math.max(a, b)] = Math.min(a, b);
+					cells[i] = (short)left;
+				}
+			}
+		}
+
+		// Second pass: number the roots 1, 2, ... in order of their first cell
+		int[] compact = new int[next];
+		short[] first = new short[next];
+		int count = 0;
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] == 0)
+				continue;
+			int root = findLocal(local, cells[i]);
+			if (compact[root] == 0) {
+				first[count] = (short)i;
+				compact[root] = ++count;
+			}
+			cells[i] = (short)compact[root];
+		}
+		chunkLabels.count = count;
+		chunkLabels.first = first;
+	}
+
+	/** Starts labels for a chunk and links it up with its neighbours */
+	private ChunkLabels add(int chunkRow, int chunkCol) {
+		ChunkLabels chunk = new ChunkLabels(chunkRow, chunkCol);
+		labels.put(ChunkedGrid.key(chunkRow, chunkCol), chunk);
+		chunk.right = labels.get(ChunkedGrid.key(chunkRow, chunkCol + 1));
+		chunk.below = labels.get(ChunkedGrid.key(chunkRow + 1, chunkCol));
+		ChunkLabels left = labels.get(ChunkedGrid.key(chunkRow, chunkCol - 1));
+		if (left != null)
+			left.right = chunk;
+		ChunkLabels above = labels.get(ChunkedGrid.key(chunkRow - 1, chunkCol));
+		if (above != null)
+			above.below = chunk;
+		return chunk;
+	}
+
+	/** Drops the labels of a chunk that was released */
+	private void remove(Long key) {
+		ChunkLabels chunk = labels.remove(key);
+		if (chunk == null)
+			return;
+		ChunkLabels left = labels.get(ChunkedGrid.key(chunk.chunkRow, chunk.chunkCol - 1));
+		if (left != null)
+			left.right = null;
+		ChunkLabels above = labels.get(ChunkedGrid.key(chunk.chunkRow - 1, chunk.chunkCol));
+		if (above != null)
+			above.below = null;
+	}
+
+	/** Rebuilds the union-find over all chunks from their labels and the chunk edges */
+	private void link() {
+		int total = 0;
+		for (ChunkLabels chunk : labels.values()) {
+			chunk.base = total;
+			total += chunk.count;
+		}
+		if (parent.length < total) {
+			parent = new int[Math.max(total, parent.length * 2)];
+			firstCell = new long[parent.length];
+		}
+		for (int i = 0; i < total; i++)
+			parent[i] = i;
+
+		for (ChunkLabels chunk : labels.values()) {
+			for (int i = 0; i < chunk.count; i++) {
+				int r = chunk.first[i] >> ChunkedGrid.CHUNK_SHIFT;
+				int c = chunk.first[i] & (ChunkedGrid.CHUNK_SIZE - 1);
+				firstCell[chunk.base + i] = ((long)(chunk.firstRow() + r) << 32) | (chunk.firstCol() + c);
+			}
+		}
+
+		numRegions = total;
+		for (ChunkLabels chunk : labels.values()) {
+			if (chunk.count == 0)
+				continue;
+			if (chunk.right != null)
+				linkEdge(chunk, chunk.right, ChunkedGrid.CHUNK_SIZE - 1, 0, ChunkedGrid.CHUNK_SIZE);
+			if (chunk.below != null)
+				linkEdge(chunk, chunk.below, ChunkedGrid.CHUNK_CELLS - ChunkedGrid.CHUNK_SIZE, 0, 1);
+		}
+	}
+
+	/** Joins the regions on either side of the edge between two chunks.  The edge cells
+	 *  are a's cells from aStart and b's from bStart, step apart. */
+	private void linkEdge(ChunkLabels a, ChunkLabels b, int aStart, int bStart, int step) {
+		int lastA = 0;
+		int lastB = 0;
+		for (int i = 0; i < ChunkedGrid.CHUNK_SIZE; i++) {
+			int labelA = a.cells[aStart + i * step];
+			int labelB = b.cells[bStart + i * step];
+			// Runs along the edge usually pair up the same two regions
+			if (labelA == 0 || labelB == 0 || (labelA == lastA && labelB == lastB))
+				continue;
+			union(a.base + labelA - 1, b.base + labelB - 1);
+			lastA = labelA;
+			lastB = labelB;
+		}
+	}
+
+	private void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a == b)
+			return;
+		// The root with the earlier first cell stays the root, so it names the region
+		if (firstCell[b] < firstCell[a]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		parent[b] = a;
+		numRegions--;
+	}
+
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static boolean isAllSet(long[] words) {
+		for (long word : words)
+			if (word != -1L)
+				return false;
+		return true;
+	}
+
+	private static int findLocal(int[] local, int i) {
+		while (local[i] != i) {
+			local[i] = local[local[i]];
+			i = local[i];
+		}
+		return i;
+	}
+
+	/** Walkable bits of one row of a chunk, bit c for column c.  A row is 32 cells, so two
+	 *  rows share each long. */
+	private static int rowBits(long[] walkable, int r) {
+		int bit = r << ChunkedGrid.CHUNK_SHIFT;
+		return (int)(walkable[bit >> 6] >>> (bit & 63));
+	}
+}
@@ -0,0 +1,104 @@
+package model;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the scanline flood fill against a plain breadth-first fill.
+ */
+class FloodFillTest {
+
+	private static final int SIZE = 300;
+
+	@Test
+	void matchesBreadthFirstFill() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(16);
+		for (int level = 0; level < 10; level++) {
+			LevelEditorModel model = TestLevels.random(random, SIZE, SIZE, tiles, 0.5);
+			for (int fill = 0; fill < 5; fill++) {
+				int r = random.nextInt(SIZE);
+				int c = random.nextInt(SIZE);
+				short id = tiles[random.nextInt(tiles.length)];
+				int[] before = TestLevels.cells(model);
+				int[] expected = reference(before, SIZE, SIZE, r, c, id, 0, 0, SIZE, SIZE);
+
+				boolean changed = !Arrays.equals(before, expected);
+				assertEquals(changed, model.fillAt(r, c, id));
+				assertArrayEquals(expected, TestLevels.cells(model));
+				if (changed) {
+					assertTrue(model.undo());
+					assertArrayEquals(before, TestLevels.cells(model));
+					assertTrue(model.redo());
+					assertArrayEquals(expected, TestLevels.cells(model));
+				}
+			}
+		}
+	}
+
+	@Test
+	void staysInsideBounds() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(1600);
+		for (int i = 0; i < 20; i++) {
+			LevelEditorModel model = TestLevels.random(random, SIZE, SIZE, tiles, 0.5);
+			int r1 = random.nextInt(SIZE / 2);
+			int c1 = random.nextInt(SIZE / 2);
+			int r2 = r1 + 1 + random.nextInt(SIZE / 2);
+			int c2 = c1 + 1 + random.nextInt(SIZE / 2);
+			int r = r1 + random.nextInt(r2 - r1);
+			int c = c1 + random.nextInt(c2 - c1);
+			short id = tiles[random.nextInt(tiles.length)];
+			int[] expected = reference(TestLevels.cells(model), SIZE, SIZE, r, c, id, r1, c1, r2, c2);
+			model.fillAt(r, c, id, r1, c1, r2, c2);
+			assertArrayEquals(expected, TestLevels.cells(model));
+		}
+	}
+
+	@Test
+	void fillsAMillionCells() {
+		short[] tiles = TestLevels.tiles(1);
+		LevelEditorModel model = new LevelEditorModel(1000, 1000);
+		assertTrue(model.fillAt(500, 500, tiles[0]));
+		assertEquals(1, model.numWalkableRegions());
+		assertFalse(model.fillAt(0, 0, tiles[0]));
+		assertTrue(model.undo());
+		assertEquals(TilePalette.EMPTY, model.getTileIdAt(999, 999));
+	}
+
+	/** Cells after filling from (r, c) one cell at a time, in the form TestLevels.cells() gives */
+	private static int[] reference(int[] cells, int numRows, int numCols, int r, int c, short id, int r1, int c1, int r2, int c2) {
+		int[] result = cells.clone();
+		int target = cells[r * numCols + c] >> 1;
+		if (target == id)
+			return result;
+		boolean[] seen = new boolean[cells.length];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		queue.add(r * numCols + c);
+		seen[r * numCols + c] = true;
+		while (!queue.isEmpty()) {
+			int i = queue.poll();
+			result[i] = id * 2 + 1;
+			int row = i / numCols;
+			int col = i % numCols;
+			int[][] next = {{row - 1, col}, {row + 1, col}, {row, col - 1}, {row, col + 1}};
+			for (int[] n : next) {
+				if (n[0] < r1 || n[0] >= r2 || n[1] < c1 || n[1] >= c2)
+					continue;
+				int j = n[0] * numCols + n[1];
+				if (!seen[j] && cells[j] >> 1 == target) {
+					seen[j] = true;
+					queue.add(j);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,209 @@
+package model;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saves and loads levels with several layers in both formats and checks nothing changes,
+ * including incremental binary saves and version 1 binary files.
+ */
+class LevelFileTest {
+
+	private static final int NUM_ROWS = 200;
+	private static final int NUM_COLS = 150;
+
+	@TempDir
+	File dir;
+
+	@Test
+	void binaryRoundTrip() throws IOException {
+		LevelEditorModel model = layered(new Random(25));
+		File file = new File(dir, "level.lvl");
+		model.saveBinary(file);
+
+		LevelEditorModel loaded = new LevelEditorModel(1, 1);
+		loaded.loadBinary(file);
+		assertSameLevel(model, loaded, true);
+		loaded.closeLevelFile();
+	}
+
+	@Test
+	void incrementalBinarySave() throws IOException {
+		short[] tiles = TestLevels.tiles(3);
+		LevelEditorModel model = layered(new Random(250));
+		File file = new File(dir, "level.lvl");
+		model.saveBinary(file);
+		long fullLength = file.length();
+
+		// Only the chunks changed here are written again, the rest stay where they are
+		LevelEditorModel edited = new LevelEditorModel(1, 1);
+		edited.loadBinary(file);
+		edited.setTileAt(3, 3, TilePalette.getShared().intern(null, "new tile.png"));
+		edited.setCurrentLayer(2);
+		edited.fillRegion(40, 40, 60, 70, tiles[2]);
+		edited.setCurrentLayer(1);
+		edited.fillRegion(100, 0, 101, NUM_COLS, TilePalette.EMPTY);
+		edited.saveBinary(file);
+		assertTrue(file.length() > fullLength && file.length() < 2 * fullLength);
+
+		LevelEditorModel loaded = new LevelEditorModel(1, 1);
+		loaded.loadBinary(file);
+		assertSameLevel(edited, loaded, true);
+		loaded.closeLevelFile();
+		edited.closeLevelFile();
+	}
+
+	@Test
+	void version1Binary() throws IOException {
+		LevelEditorModel model = TestLevels.random(new Random(2500), NUM_ROWS, NUM_COLS, TestLevels.tiles(3), 0.5);
+		File file = new File(dir, "old.lvl");
+		writeVersion1(model, file);
+
+		LevelEditorModel loaded = new LevelEditorModel(1, 1);
+		loaded.loadBinary(file);
+		assertArrayEquals(TestLevels.cells(model), TestLevels.cells(loaded));
+		assertEquals(LevelLayer.DEFAULT_NAMES.length, loaded.numLayers());
+		for (int i = 1; i < loaded.numLayers(); i++)
+			assertTrue(loaded.getLayer(i).isEmpty());
+
+		// Saving it again upgrades it to the current version
+		loaded.setCurrentLayer(1);
+		loaded.fillRegion(0, 0, 10, 10, TestLevels.tiles(1)[0]);
+		loaded.saveBinary(file);
+		LevelEditorModel upgraded = new LevelEditorModel(1, 1);
+		upgraded.loadBinary(file);
+		assertSameLevel(loaded, upgraded, true);
+		upgraded.closeLevelFile();
+		loaded.closeLevelFile();
+	}
+
+	@Test
+	void textRoundTrip() throws IOException {
+		LevelEditorModel model = layered(new Random(25000));
+		File file = new File(dir, "level.txt");
+		model.saveText(file);
+		assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains("#layer"));
+
+		LevelEditorModel loaded = new LevelEditorModel(1, 1);
+		loaded.loadText(file);
+		assertSameLevel(model, loaded, false);
+	}
+
+	@Test
+	void backgroundOnlyTextHasNoLayers() throws IOException {
+		LevelEditorModel model = TestLevels.random(new Random(250000), NUM_ROWS, NUM_COLS, TestLevels.tiles(3), 0.5);
+		File file = new File(dir, "level.txt");
+		model.saveText(file);
+		assertFalse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains("#layer"));
+
+		LevelEditorModel loaded = new LevelEditorModel(1, 1);
+		loaded.loadText(file);
+		assertSameLevel(model, loaded, false);
+	}
+
+	/** A random background with tiles on two of the layers above it, one of them hidden and faded */
+	private static LevelEditorModel layered(Random random) {
+		short[] tiles = TestLevels.tiles(3);
+		LevelEditorModel model = TestLevels.random(random, NUM_ROWS, NUM_COLS, tiles, 0.5);
+		model.setCurrentLayer(1);
+		model.fillRegion(10, 10, 120, 90, tiles[1]);
+		model.replaceInRegion(50, 0, 70, NUM_COLS, tiles[1], tiles[0]);
+		model.setCurrentLayer(3);
+		for (int i = 0; i < 500; i++)
+			model.setTileAt(random.nextInt(NUM_ROWS), random.nextInt(NUM_COLS), tiles[random.nextInt(tiles.length)]);
+		model.getLayer(3).setVisible(false);
+		model.getLayer(3).setOpacity(0.5f);
+		model.setCurrentLayer(LevelEditorModel.BACKGROUND);
+		return model;
+	}
+
+	/** Checks the size and every layer's cells, and its name, visibility and opacity if the format keeps them */
+	private static void assertSameLevel(LevelEditorModel expected, LevelEditorModel actual, boolean layerSettings) {
+		assertEquals(expected.numRows(), actual.numRows());
+		assertEquals(expected.numCols(), actual.numCols());
+		assertEquals(expected.numLayers(), actual.numLayers());
+		for (int i = 0; i < expected.numLayers(); i++) {
+			assertEquals(expected.getLayer(i).getName(), actual.getLayer(i).getName());
+			assertArrayEquals(TestLevels.cells(expected, i), TestLevels.cells(actual, i));
+			if (layerSettings) {
+				assertEquals(expected.getLayer(i).isVisible(), actual.getLayer(i).isVisible());
+				assertEquals(expected.getLayer(i).getOpacity(), actual.getLayer(i).getOpacity());
+			}
+		}
+	}
+
+	/** Writes the background in the version 1 format, which has no layer table */
+	private static void writeVersion1(LevelEditorModel model, File file) throws IOException {
+		ChunkedGrid grid = model.getLayer(LevelEditorModel.BACKGROUND).getGrid();
+		ArrayList<String> names = new ArrayList<String>();
+		short[] fileIds = new short[TilePalette.getShared().size()];
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(records);
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		DataOutputStream indexOut = new DataOutputStream(index);
+		int indexCount = 0;
+		for (int cr = 0; cr << ChunkedGrid.CHUNK_SHIFT < model.numRows(); cr++) {
+			for (int cc = 0; cc << ChunkedGrid.CHUNK_SHIFT < model.numCols(); cc++) {
+				if (!model.chunkHasTiles(cr, cc))
+					continue;
+				indexOut.writeInt(cr);
+				indexOut.writeInt(cc);
+				indexOut.writeLong(64 + records.size());
+				indexCount++;
+				long[] walkable = new long[ChunkedGrid.CHUNK_CELLS / 64];
+				for (int i = 0; i < ChunkedGrid.CHUNK_CELLS; i++) {
+					int r = (cr << ChunkedGrid.CHUNK_SHIFT) + i / ChunkedGrid.CHUNK_SIZE;
+					int c = (cc << ChunkedGrid.CHUNK_SHIFT) + i % ChunkedGrid.CHUNK_SIZE;
+					short id = grid.get(r, c);
+					if (id != TilePalette.EMPTY && fileIds[id] == 0) {
+						names.add(TilePalette.getShared().getFileName(id));
+						fileIds[id] = (short)names.size();
+					}
+					out.writeShort(fileIds[id]);
+					if (grid.isWalkable(r, c))
+						walkable[i >> 6] |= 1L << i;
+				}
+				for (long word : walkable)
+					out.writeLong(word);
+			}
+		}
+		long paletteOffset = 64 + records.size();
+		ByteArrayOutputStream palette = new ByteArrayOutputStream();
+		DataOutputStream paletteOut = new DataOutputStream(palette);
+		for (String name : names) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			paletteOut.writeShort(bytes.length);
+			paletteOut.write(bytes);
+		}
+
+		ByteArrayOutputStream level = new ByteArrayOutputStream();
+		DataOutputStream levelOut = new DataOutputStream(level);
+		levelOut.writeInt(0x4C564C31);
+		levelOut.writeInt(1);
+		levelOut.writeInt(model.numRows());
+		levelOut.writeInt(model.numCols());
+		levelOut.writeInt(ChunkedGrid.CHUNK_SIZE);
+		levelOut.writeInt(names.size() + 1);
+		levelOut.writeLong(paletteOffset);
+		levelOut.writeLong(paletteOffset + palette.size());
+		levelOut.writeInt(indexCount);
+		levelOut.write(new byte[64 - level.size()]);
+		records.writeTo(level);
+		palette.writeTo(level);
+		index.writeTo(level);
+		Files.write(file.toPath(), level.toByteArray());
+	}
+}
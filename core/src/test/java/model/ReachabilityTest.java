@@ -0,0 +1,167 @@
+package model;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the walkable regions and the routes found over the chunk graph against a
+ * breadth-first search of the cells, before and after edits, undo and redo.
+ */
+class ReachabilityTest {
+
+	private static final int SIZE = 300;
+
+	@Test
+	void matchesBreadthFirstSearch() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(20);
+		for (int level = 0; level < 5; level++) {
+			LevelEditorModel model = TestLevels.random(random, SIZE, SIZE, tiles, 0.8);
+			check(model, random);
+		}
+	}
+
+	@Test
+	void followsEdits() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(2000);
+		LevelEditorModel model = TestLevels.random(random, SIZE, SIZE, tiles, 0.8);
+		check(model, random);
+		for (int i = 0; i < 12; i++) {
+			int r1 = random.nextInt(SIZE);
+			int c1 = random.nextInt(SIZE);
+			int r2 = Math.min(SIZE, r1 + 1 + random.nextInt(80));
+			int c2 = Math.min(SIZE, c1 + 1 + random.nextInt(80));
+			switch (i % 4) {
+			case 0:
+				model.setWalkableInRegion(r1, c1, r2, c2, random.nextBoolean());
+				break;
+			case 1:
+				model.fillRegion(r1, c1, r2, c2, random.nextBoolean() ? TilePalette.EMPTY : tiles[0]);
+				break;
+			case 2:
+				model.fillAt(r1, c1, tiles[random.nextInt(tiles.length)]);
+				break;
+			default:
+				model.setTileAt(r1, c1, TilePalette.EMPTY);
+				break;
+			}
+			check(model, random);
+			if (i % 3 == 2) {
+				model.undo();
+				check(model, random);
+				model.redo();
+				check(model, random);
+			}
+		}
+	}
+
+	/** Compares every cell's region and some random routes with the reference */
+	private static void check(LevelEditorModel model, Random random) {
+		int[] component = components(model);
+		int numComponents = 0;
+		long[] firstCell = new long[component.length];
+		Arrays.fill(firstCell, WalkableRegions.NONE);
+		for (int i = 0; i < component.length; i++) {
+			if (component[i] >= 0 && firstCell[component[i]] == WalkableRegions.NONE) {
+				firstCell[component[i]] = (long)(i / SIZE) << 32 | i % SIZE;
+				numComponents++;
+			}
+		}
+		assertEquals(numComponents, model.numWalkableRegions());
+		for (int r = 0, i = 0; r < SIZE; r++)
+			for (int c = 0; c < SIZE; c++, i++)
+				assertEquals(component[i] < 0 ? WalkableRegions.NONE : firstCell[component[i]], model.getWalkableRegionAt(r, c));
+
+		for (int i = 0; i < 20; i++) {
+			int from = randomWalkable(model, random);
+			int to = randomWalkable(model, random);
+			if (from < 0 || to < 0)
+				return;
+			ReachabilityGraph.Route route = model.findRoute(from / SIZE, from % SIZE, to / SIZE, to % SIZE);
+			if (component[from] != component[to]) {
+				assertNull(route);
+				continue;
+			}
+			assertNotNull(route);
+			assertTrue(route.getLength() >= distance(model, from, to));
+			int[] waypoints = route.getWaypoints();
+			assertEquals(from / SIZE, waypoints[0]);
+			assertEquals(from % SIZE, waypoints[1]);
+			assertEquals(to / SIZE, waypoints[waypoints.length - 2]);
+			assertEquals(to % SIZE, waypoints[waypoints.length - 1]);
+		}
+	}
+
+	/** Component number of each walkable cell, -1 for the rest */
+	private static int[] components(LevelEditorModel model) {
+		int[] component = new int[SIZE * SIZE];
+		Arrays.fill(component, -1);
+		int[] queue = new int[SIZE * SIZE];
+		int next = 0;
+		for (int start = 0; start < component.length; start++) {
+			if (component[start] >= 0 || !model.isWalkableAt(start / SIZE, start % SIZE))
+				continue;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = start;
+			component[start] = next;
+			while (head < tail) {
+				int i = queue[head++];
+				for (int j : neighbours(i)) {
+					if (j >= 0 && component[j] < 0 && model.isWalkableAt(j / SIZE, j % SIZE)) {
+						component[j] = next;
+						queue[tail++] = j;
+					}
+				}
+			}
+			next++;
+		}
+		return component;
+	}
+
+	/** Fewest steps from one walkable cell to another */
+	private static int distance(LevelEditorModel model, int from, int to) {
+		int[] dist = new int[SIZE * SIZE];
+		Arrays.fill(dist, -1);
+		int[] queue = new int[SIZE * SIZE];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+		dist[from] = 0;
+		while (head < tail) {
+			int i = queue[head++];
+			if (i == to)
+				return dist[i];
+			for (int j : neighbours(i)) {
+				if (j >= 0 && dist[j] < 0 && model.isWalkableAt(j / SIZE, j % SIZE)) {
+					dist[j] = dist[i] + 1;
+					queue[tail++] = j;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** Cells up, down, left and right of i, -1 past the edge */
+	private static int[] neighbours(int i) {
+		int r = i / SIZE;
+		int c = i % SIZE;
+		return new int[] {r > 0 ? i - SIZE : -1, r + 1 < SIZE ? i + SIZE : -1, c > 0 ? i - 1 : -1, c + 1 < SIZE ? i + 1 : -1};
+	}
+
+	private static int randomWalkable(LevelEditorModel model, Random random) {
+		for (int tries = 0; tries < 1000; tries++) {
+			int i = random.nextInt(SIZE * SIZE);
+			if (model.isWalkableAt(i / SIZE, i % SIZE))
+				return i;
+		}
+		return -1;
+	}
+}
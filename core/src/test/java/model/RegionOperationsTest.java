@@ -0,0 +1,153 @@
+package model;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the parallel fill, replace, rotate and flip against doing them one cell at a
+ * time.  The sizes are big enough to split into bands, and include shapes whose rows
+ * don't line up with the 64-bit words of the walkable flags.
+ */
+class RegionOperationsTest {
+
+	private static final int[][] SHAPES = {{1, 1}, {1, 70}, {70, 1}, {5, 3}, {33, 65}, {317, 293}, {293, 317}, {256, 320}, {129, 1000}};
+
+	@Test
+	void fillAndReplaceMatchCellByCell() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(17);
+		int numRows = 1500;
+		int numCols = 1300;
+		LevelEditorModel model = TestLevels.random(random, numRows, numCols, tiles, 0.5);
+		for (int i = 0; i < 6; i++) {
+			int r1 = random.nextInt(numRows);
+			int c1 = random.nextInt(numCols);
+			int r2 = i < 2 ? numRows : r1 + 1 + random.nextInt(numRows - r1);
+			int c2 = i < 2 ? numCols : c1 + 1 + random.nextInt(numCols - c1);
+			int[] before = TestLevels.cells(model);
+			int[] expected = before.clone();
+			short to = i % 3 == 2 ? TilePalette.EMPTY : tiles[random.nextInt(tiles.length)];
+			if (i % 2 == 0) {
+				for (int r = r1; r < r2; r++)
+					for (int c = c1; c < c2; c++)
+						expected[r * numCols + c] = to * 2 + (to != TilePalette.EMPTY ? 1 : 0);
+				model.fillRegion(r1, c1, r2, c2, to);
+			}
+			else {
+				short from = i == 1 ? TilePalette.EMPTY : to == tiles[0] ? tiles[1] : tiles[0];
+				for (int r = r1; r < r2; r++) {
+					for (int c = c1; c < c2; c++) {
+						int cell = expected[r * numCols + c];
+						if (cell >> 1 != from)
+							continue;
+						boolean walkable = to != TilePalette.EMPTY && (from == TilePalette.EMPTY || (cell & 1) != 0);
+						expected[r * numCols + c] = to * 2 + (walkable ? 1 : 0);
+					}
+				}
+				model.replaceInRegion(r1, c1, r2, c2, from, to);
+			}
+			assertArrayEquals(expected, TestLevels.cells(model));
+			assertTrue(model.undo());
+			assertArrayEquals(before, TestLevels.cells(model));
+			assertTrue(model.redo());
+			assertArrayEquals(expected, TestLevels.cells(model));
+		}
+	}
+
+	@Test
+	void rotateMatchesCellByCell() {
+		Random random = new Random(170);
+		for (int[] shape : SHAPES) {
+			TileRegion src = randomRegion(random, shape[0], shape[1]);
+			TileRegion rotated = RegionOperations.rotate(src);
+			assertEquals(src.numCols(), rotated.numRows());
+			assertEquals(src.numRows(), rotated.numCols());
+			for (int r = 0; r < rotated.numRows(); r++) {
+				for (int c = 0; c < rotated.numCols(); c++) {
+					int srcRow = src.numRows() - 1 - c;
+					assertEquals(src.getTileIdAt(srcRow, r), rotated.getTileIdAt(r, c));
+					assertEquals(src.isWalkableAt(srcRow, r), rotated.isWalkableAt(r, c));
+				}
+			}
+		}
+	}
+
+	@Test
+	void flipMatchesCellByCell() {
+		Random random = new Random(1700);
+		for (int[] shape : SHAPES) {
+			TileRegion src = randomRegion(random, shape[0], shape[1]);
+			for (boolean horizontal : new boolean[] {true, false}) {
+				TileRegion flipped = RegionOperations.flip(src, horizontal);
+				assertEquals(src.numRows(), flipped.numRows());
+				assertEquals(src.numCols(), flipped.numCols());
+				for (int r = 0; r < src.numRows(); r++) {
+					for (int c = 0; c < src.numCols(); c++) {
+						int srcRow = horizontal ? r : src.numRows() - 1 - r;
+						int srcCol = horizontal ? src.numCols() - 1 - c : c;
+						assertEquals(src.getTileIdAt(srcRow, srcCol), flipped.getTileIdAt(r, c));
+						assertEquals(src.isWalkableAt(srcRow, srcCol), flipped.isWalkableAt(r, c));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void rotateAndFlipUndoInLevel() {
+		short[] tiles = TestLevels.tiles(3);
+		Random random = new Random(17000);
+		int size = 400;
+		LevelEditorModel model = TestLevels.random(random, size, size, tiles, 0.5);
+		for (int i = 0; i < 6; i++) {
+			int r1 = random.nextInt(size - 1);
+			int c1 = random.nextInt(size - 1);
+			int r2 = r1 + 1 + random.nextInt(size - r1 - 1);
+			int c2 = c1 + 1 + random.nextInt(size - c1 - 1);
+			int[] before = TestLevels.cells(model);
+			int[] expected = before.clone();
+			if (i % 3 == 0) {
+				// The rectangle is cleared and its rotation pasted over it, cut off at the level's edge
+				for (int r = r1; r < r2; r++)
+					for (int c = c1; c < c2; c++)
+						expected[r * size + c] = 0;
+				for (int r = 0; r < c2 - c1 && r1 + r < size; r++) {
+					for (int c = 0; c < r2 - r1 && c1 + c < size; c++) {
+						int cell = before[(r2 - 1 - c) * size + c1 + r];
+						if (cell >> 1 != TilePalette.EMPTY)
+							expected[(r1 + r) * size + c1 + c] = cell;
+					}
+				}
+				model.rotateRegion(r1, c1, r2, c2);
+			}
+			else {
+				boolean horizontal = i % 3 == 1;
+				for (int r = r1; r < r2; r++)
+					for (int c = c1; c < c2; c++)
+						expected[r * size + c] = horizontal ? before[r * size + c2 - 1 - (c - c1)] : before[(r2 - 1 - (r - r1)) * size + c];
+				model.flipRegion(r1, c1, r2, c2, horizontal);
+			}
+			assertArrayEquals(expected, TestLevels.cells(model));
+			assertTrue(model.undo());
+			assertArrayEquals(before, TestLevels.cells(model));
+			assertTrue(model.redo());
+			assertArrayEquals(expected, TestLevels.cells(model));
+		}
+	}
+
+	private static TileRegion randomRegion(Random random, int numRows, int numCols) {
+		short[] tiles = TestLevels.tiles(4);
+		TileRegion region = new TileRegion(numRows, numCols);
+		for (int r = 0; r < numRows; r++) {
+			for (int c = 0; c < numCols; c++) {
+				int pick = random.nextInt(tiles.length + 1);
+				region.set(r, c, pick == tiles.length ? TilePalette.EMPTY : tiles[pick], random.nextBoolean());
+			}
+		}
+		return region;
+	}
+}
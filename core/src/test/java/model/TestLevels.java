@@ -0,0 +1,54 @@
+package model;
+import java.util.Random;
+
+/**
+ * Random levels and cell dumps shared by the model tests.
+ */
+class TestLevels {
+
+	private TestLevels() {
+	}
+
+	/** Palette IDs of n test tiles */
+	static short[] tiles(int n) {
+		short[] ids = new short[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = TilePalette.getShared().intern(null, "test" + i + ".png");
+		return ids;
+	}
+
+	/** A level made of random overlapping rectangles of the given tiles and of empty cells,
+	 *  so it has regions of every size.  Painted cells are walkable with chance walkable. */
+	static LevelEditorModel random(Random random, int numRows, int numCols, short[] tiles, double walkable) {
+		LevelEditorModel model = new LevelEditorModel(numRows, numCols);
+		ChunkedGrid grid = model.getLayer(LevelEditorModel.BACKGROUND).getGrid();
+		int rects = numRows * numCols / 200;
+		for (int i = 0; i < rects; i++) {
+			int r1 = random.nextInt(numRows);
+			int c1 = random.nextInt(numCols);
+			int r2 = Math.min(numRows, r1 + 1 + random.nextInt(20));
+			int c2 = Math.min(numCols, c1 + 1 + random.nextInt(20));
+			int pick = random.nextInt(tiles.length + 1);
+			short id = pick == tiles.length ? TilePalette.EMPTY : tiles[pick];
+			for (int r = r1; r < r2; r++)
+				for (int c = c1; c < c2; c++)
+					grid.set(r, c, id, random.nextDouble() < walkable);
+		}
+		model.cellsEdited(grid, 0, 0, numRows, numCols);
+		return model;
+	}
+
+	/** Every cell of a layer as tile ID * 2 + walkable, row-major */
+	static int[] cells(LevelEditorModel model, int layer) {
+		int[] cells = new int[model.numRows() * model.numCols()];
+		ChunkedGrid grid = model.getLayer(layer).getGrid();
+		for (int r = 0, i = 0; r < model.numRows(); r++)
+			for (int c = 0; c < model.numCols(); c++, i++)
+				cells[i] = grid.get(r, c) * 2 + (grid.isWalkable(r, c) ? 1 : 0);
+		return cells;
+	}
+
+	static int[] cells(LevelEditorModel model) {
+		return cells(model, LevelEditorModel.BACKGROUND);
+	}
+}
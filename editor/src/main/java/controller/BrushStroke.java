@@ -0,0 +1,81 @@
+package controller;
+import java.util.Arrays;
+
+/**
+ * The cells a paint or erase stroke still has to apply.  Mouse positions come in at
+ * whatever rate the mouse reports them, so each new cell is joined to the previous one
+ * with a Bresenham line and the stroke stays continuous however fast it's dragged.  The
+ * cells queue up until the controller takes them all at the next frame.
+ *
+ * Cells are (row, col) and may lie outside the level; the model skips those, so a
+ * stroke that leaves the canvas and comes back still paints the parts inside.
+ */
+class BrushStroke {
+
+	private short tileId;			// Tile the stroke paints, TilePalette.EMPTY to erase
+	private int lastRow;			// Cell the stroke reached last
+	private int lastCol;
+	private int[] pending;			// Row and column pairs not applied yet
+	private int numPending;
+
+	/** Starts a stroke at (row, col), which is queued right away */
+	BrushStroke(short tileId, int row, int col) {
+		this.tileId = tileId;
+		pending = new int[64];
+		lastRow = row;
+		lastCol = col;
+		add(row, col);
+	}
+
+	short getTileId() {
+		return tileId;
+	}
+
+	/** Extends the stroke to (row, col), queueing every cell on the way */
+	void moveTo(int row, int col) {
+		// Bresenham, leaving out the cell we're already at
+		int dr = Math.abs(row - lastRow);
+		int dc = Math.abs(col - lastCol);
+		int stepR = row > lastRow ? 1 : -1;
+		int stepC = col > lastCol ? 1 : -1;
+		int err = dc - dr;
+		int r = lastRow;
+		int c = lastCol;
+		while (r != row || c != col) {
+			int e2 = 2 * err;
+			if (e2 >= -dr) {
+				err -= dr;
+				c += stepC;
+			}
+			if (e2 <= dc) {
+				err += dc;
+				r += stepR;
+			}
+			add(r, c);
+		}
+		lastRow = row;
+		lastCol = col;
+	}
+
+	/** Number of cells queued since the last clearPending() */
+	int numPending() {
+		return numPending;
+	}
+
+	/** Queued cells as row and column pairs; only the first numPending() are valid */
+	int[] getPending() {
+		return pending;
+	}
+
+	void clearPending() {
+		numPending = 0;
+	}
+
+	private void add(int row, int col) {
+		if (2 * numPending + 2 > pending.length)
+			pending = Arrays.copyOf(pending, pending.length * 2);
+		pending[2 * numPending] = row;
+		pending[2 * numPending + 1] = col;
+		numPending++;
+	}
+}
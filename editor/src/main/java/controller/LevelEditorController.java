@@ -0,0 +1,1132 @@
+package controller;
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import model.BackgroundTile;
+import model.BinaryLevelFile;
+import model.EditJournal;
+import model.LevelChangeListener;
+import model.LevelLayer;
+import model.LevelEditorModel;
+import model.LevelSnapshot;
+import model.ProgressListener;
+import model.ReachabilityGraph;
+import model.TileAtlasFile;
+import model.TilePalette;
+import view.LevelEditorView;
+
+
+public class LevelEditorController {
+
+	// Tool palette modes
+	public static final int PAINT_MODE = 0;
+	public static final int ERASE_MODE = 1;
+	public static final int SELECT_MODE = 2;
+	public static final int MOVE_MODE = 3;
+	public static final int FILL_MODE = 4;
+	private static final String[] TOOL_NAMES = {"paint", "erase", "select", "move", "fill"};
+	private static final int STROKE_FRAME_MS = 16;	// How often a brush stroke is applied and repainted
+
+	// Which mouse mode we're in (paint, erase, select, move, fill)
+	private int toolMode;
+	private Point selectionStartCoord;				// Upper left corner of selection in (row, col) form
+	private Point selectionEndCoord;				// Lower right corner of selection in (row, col) form
+	private Point selectionMouseStartCoord;			// Mouse pixel coords used to detect dragging direction
+	private int clipboardLayerColPlacement;
+	private int clipboardLayerRowPlacement;
+
+	private BackgroundTile currentTile;				// Currently selected BackgroundTile for popup use
+	private Point currentCell;						// Where currentTile is, as (row, col)
+
+	private LevelEditorModel model;
+	private LevelEditorView view;
+	private Rectangle dirtyCells;					// Cells changed since the last repaint, x = col and y = row
+	private ReachabilityGraph.Route[] keyRoutes;	// Routes between the key locations, null until asked for again
+	private SaveWorker saveWorker;					// Save running in the background, if any
+	private EditJournal journal;					// Crash recovery journal for this window's level
+	private BrushStroke stroke;						// Paint or erase stroke in progress, if any
+	private Timer strokeTimer;						// Applies the stroke once per frame while it lasts
+
+	private static boolean checkedJournals;			// Whether we've looked for journals left by a crash yet
+	
+	public LevelEditorController() {
+		this((File)null);
+	}
+
+	/** Drives a level without a window, so a CanvasPanel can draw it off screen (e.g. in
+	 *  the benchmarks).  Only the methods the canvas uses work. */
+	public LevelEditorController(LevelEditorModel model) {
+		toolMode = PAINT_MODE;
+		this.model = model;
+	}
+
+	/** Opens a window, recovering its level from an abandoned journal if one is given */
+	private LevelEditorController(File abandonedJournal) {
+		// Default tool mode
+		toolMode = PAINT_MODE;
+
+		model = new LevelEditorModel(10, 10);
+		view = new LevelEditorView(this);
+		model.addLevelChangeListener(new MyLevelChangeListener());
+		strokeTimer = new Timer(STROKE_FRAME_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyStroke();
+			}
+		});
+		
+		// Create listeners
+		TimedMouseListener mouseListener = new TimedMouseListener(new MyMouseListener());
+		MyMenuListener menuListener = new MyMenuListener();
+		MyButtonListener buttonListener = new MyButtonListener();
+		MyPopUpListener popUpListener = new MyPopUpListener();
+		MyLayerListener layerListener = new MyLayerListener();
+
+		// Attach listeners
+		view.addMyMouseListeners(mouseListener);
+		view.addMyButtonListeners(buttonListener);
+		view.addMyMenuListeners(menuListener);
+		view.addMyPopUpMenuListeners(popUpListener);
+		view.addMyLayerListeners(layerListener);
+
+		// Journal every edit so the level survives a crash, and throw the journal away on a normal close
+		try {
+			if (abandonedJournal != null) {
+				int cellWidth = view.getCanvas().getPreferredSize().width / numCols();
+				journal = EditJournal.recover(model, abandonedJournal);
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellWidth * numRows()));
+				view.getCanvas().revalidate();
+				repaintAll();
+				if (journal.baseWasMissing())
+					JOptionPane.showInternalMessageDialog(view.getContentPane(), "The level this was based on is gone, so only the recorded edits were recovered.");
+			}
+			else
+				journal = EditJournal.start(model);
+		} catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showInternalMessageDialog(view.getContentPane(), "Couldn't start crash recovery for this level.  See console for details.");
+		}
+		updateLayersMenu();
+		view.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				if (journal != null)
+					journal.close();
+			}
+		});
+
+		if (!checkedJournals) {
+			checkedJournals = true;
+			recoverAbandonedJournals();
+		}
+	}
+
+	/** Offers to reopen each level whose editor didn't shut down properly */
+	private void recoverAbandonedJournals() {
+		for (File file : EditJournal.findAbandoned()) {
+			int response = JOptionPane.showConfirmDialog(view,
+					"The editor didn't shut down properly while a level was open.\nRecover the level as it was on " + new Date(file.lastModified()) + "?",
+					"Recover Level", JOptionPane.YES_NO_OPTION);
+			if (response == JOptionPane.YES_OPTION)
+				new LevelEditorController(file);
+			else
+				EditJournal.discard(file);
+		}
+	}
+	
+    /** Collects the cells the model reports as changed until the next repaintDirtyCells().
+     *  Background changes can also change the routes between key locations. */
+    private class MyLevelChangeListener implements LevelChangeListener {
+
+		@Override
+		public void cellsChanged(int row, int col, int numRows, int numCols) {
+			keyRoutes = null;
+			addDirtyCells(row, col, numRows, numCols);
+		}
+
+		@Override
+		public void layerCellsChanged(int layer, int row, int col, int numRows, int numCols) {
+			addDirtyCells(row, col, numRows, numCols);
+		}
+
+		private void addDirtyCells(int row, int col, int numRows, int numCols) {
+			Rectangle cells = new Rectangle(col, row, numCols, numRows);
+			if (dirtyCells == null)
+				dirtyCells = cells;
+			else
+				dirtyCells.add(cells);
+		}
+    }
+
+    /** Picks the layer to edit, shows and hides layers and sets their opacity.  Only a
+     *  repaint is needed to show or hide a layer, since each is drawn from its own cache. */
+    private class MyLayerListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			for (int i = 0; i < view.editLayerMenuItems.length; i++) {
+				if (e.getSource() == view.editLayerMenuItems[i])
+					model.setCurrentLayer(i);
+				else if (e.getSource() == view.showLayerMenuItems[i]) {
+					model.getLayer(i).setVisible(view.showLayerMenuItems[i].isSelected());
+					repaintAll();
+				}
+			}
+			if (e.getSource() == view.layerOpacityMenuItem) {
+				LevelLayer layer = model.getLayer(model.getCurrentLayer());
+				String answer = (String)JOptionPane.showInternalInputDialog(view.getContentPane(),
+						"Opacity of the " + layer.getName() + " layer, from 0 to 100%",
+						"Layer Opacity",
+						JOptionPane.QUESTION_MESSAGE,
+						null,
+						null,
+						Math.round(layer.getOpacity() * 100) + "");
+				if (answer == null)
+					return;
+				try {
+					layer.setOpacity(Integer.parseInt(answer.trim()) / 100f);
+				} catch (NumberFormatException e1) {
+					JOptionPane.showInternalMessageDialog(view.getContentPane(), "Opacity has to be a whole number from 0 to 100.");
+					return;
+				}
+				repaintAll();
+			}
+		}
+    }
+
+    /**
+     * Writes a snapshot of the level on a background thread so editing can go on while
+     * it saves.  Files ending in BinaryLevelFile.EXTENSION use the chunked binary format,
+     * anything else the text format.  Shows a progress dialog that can cancel the save;
+     * a cancelled save leaves the previous file untouched.
+     */
+    private class SaveWorker extends SwingWorker<Void, Void> implements ProgressListener {
+		private LevelSnapshot snapshot;
+		private File file;
+		private ProgressMonitor monitor;
+
+		SaveWorker(LevelSnapshot snapshot, File file) {
+			this.snapshot = snapshot;
+			this.file = file;
+			monitor = new ProgressMonitor(view, "Saving " + file.getName(), null, 0, 100);
+			addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent evt) {
+					if (!"progress".equals(evt.getPropertyName()))
+						return;
+					monitor.setProgress(getProgress());
+					if (monitor.isCanceled())
+						cancel(true);
+				}
+			});
+		}
+
+		@Override
+		protected Void doInBackground() throws Exception {
+			if (file.getName().endsWith(BinaryLevelFile.EXTENSION))
+				snapshot.saveBinary(file, this);
+			else
+				snapshot.saveText(file, this);
+			return null;
+		}
+
+		@Override
+		public void progressed(long done, long total) throws IOException {
+			if (isCancelled())
+				throw new InterruptedIOException("Save cancelled");
+			if (total > 0)
+				setProgress((int)(done * 100 / total));
+		}
+
+		@Override
+		protected void done() {
+			monitor.close();
+			model.finishSave(snapshot);
+			saveWorker = null;
+			try {
+				get();
+				JOptionPane.showInternalMessageDialog(view.getContentPane(), "File saved!");
+			} catch (CancellationException e) {
+				JOptionPane.showInternalMessageDialog(view.getContentPane(), "Save cancelled, " + file.getName() + " wasn't changed.");
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+				JOptionPane.showInternalMessageDialog(view.getContentPane(), "An error has occured :( See console for details.");
+			}
+		}
+    }
+
+    /** Handle ctrl+click popUp menu */
+    private class MyPopUpListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (e.getSource() == view.tilePropertyWalkable) {
+				// If we have something selected then change the property for all tiles in the selection
+				if (toolMode == SELECT_MODE && selectionStartCoord != selectionEndCoord) {
+					model.setWalkableInRegion(selectionRow1(), selectionCol1(), selectionRow2(), selectionCol2(), view.tilePropertyWalkable.isSelected());
+				}
+				// Otherwise just set the property of the tile that was clicked on
+				else
+					currentTile.setProertyWalkable(view.tilePropertyWalkable.isSelected());
+				repaintDirtyCells();
+			}
+			else if (e.getSource() == view.tilePropertyKeyLocation) {
+				model.setKeyLocation(currentCell.x, currentCell.y, view.tilePropertyKeyLocation.isSelected());
+				keyRoutes = null;
+				repaintAll();
+			}
+		}
+    }
+    
+    /** Handle tool pallete buttons */
+    private class MyButtonListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (e.getSource() == view.brushButton) {
+				// If we came from MOVE_MODE and there's something waiting in the clipboard
+				// (copy layer) then paste the clipboard contents and reset the clipboard
+				if (toolMode == MOVE_MODE && clipboardLayerHasData()) {
+					model.pasteClipboardLayer((int)selectionStartCoord.getX(), (int)selectionStartCoord.getY());
+					model.clearClipboard();
+					model.setClipboardLayerVisible(false);
+				}
+				// User selected paint mode, so hide any selections
+				toolMode = PAINT_MODE;
+				model.setSelectionVisible(false);
+				repaintAll();
+			}
+			else if (e.getSource() == view.eraserButton) {
+				toolMode = ERASE_MODE;
+				repaintAll();
+			}
+			else if (e.getSource() == view.fillButton) {
+				// If we came from MOVE_MODE and there's something waiting in the clipboard
+				// (copy layer) then paste the clipboard contents and reset the clipboard
+				if (toolMode == MOVE_MODE && clipboardLayerHasData()) {
+					model.pasteClipboardLayer((int)selectionStartCoord.getX(), (int)selectionStartCoord.getY());
+					model.clearClipboard();
+					model.setClipboardLayerVisible(false);
+				}
+				// A selection left visible limits the fill
+				toolMode = FILL_MODE;
+				repaintAll();
+			}
+			else if (e.getSource() == view.selectionButton) {
+				// If we came from MOVE_MODE and there's something waiting in the clipboard
+				// (copy layer) then paste the clipboard contents and reset the clipboard
+				if (toolMode == MOVE_MODE && clipboardLayerHasData()) {
+					model.pasteClipboardLayer((int)selectionStartCoord.getX(), (int)selectionStartCoord.getY());
+					model.clearClipboard();
+					model.setClipboardLayerVisible(false);
+				}
+				// User selected "select mode" so reset the selection and make any future
+				// selections visible
+				toolMode = SELECT_MODE;
+				model.setSelectionVisible(true);
+				selectionStartCoord = new Point(0, 0);
+				selectionEndCoord = selectionStartCoord;
+				repaintAll();
+			}
+			else if (e.getSource() == view.moveButton) {
+				// If we came from SELECT_MODE and there's a selection region defined
+				// then copy the selection to the clipboard (copy layer) in case the
+				// user wants to move the selection
+				if (toolMode == SELECT_MODE && selectionStartCoord != selectionEndCoord) {
+					model.setClipboardLayer(selectionStartCoord, selectionEndCoord);
+					clipboardLayerRowPlacement = (int)selectionStartCoord.getX();
+					clipboardLayerColPlacement = (int)selectionStartCoord.getY();
+					model.setClipboardLayerVisible(true);
+				}
+				toolMode = MOVE_MODE;
+				view.moveButton.setSelected(true);
+				model.setSelectionVisible(true);
+				repaintAll();
+			}
+			else if (e.getSource() == view.copyButton) {
+				model.setClipboardLayer(selectionStartCoord, selectionEndCoord);
+			}
+			else if (e.getSource() == view.pasteButton) {
+				// If we're in MOVE mode and there's a selection region defined then copy
+				// the selection to the clipboard (copy layer) and paste it
+				if (toolMode == MOVE_MODE && selectionStartCoord != selectionEndCoord && clipboardLayerHasData()) {
+					model.pasteClipboardLayer((int)selectionStartCoord.getX(), (int)selectionStartCoord.getY());
+					model.clearClipboard();
+					model.setClipboardLayerVisible(false);
+					model.setSelectionVisible(false);
+					selectionStartCoord = new Point(0, 0);
+					selectionEndCoord = selectionStartCoord;
+					repaintAll();
+				}
+				// Otherwise if there's no selection region defined then paste the
+				// copied layer into the upper left corner of the canvas and select it
+				else if (toolMode != MOVE_MODE || selectionStartCoord == selectionEndCoord && clipboardLayerHasData()) {
+					model.setClipboardLayerVisible(true);
+					view.moveButton.setSelected(true);
+					toolMode = MOVE_MODE;
+					selectionStartCoord = new Point(0, 0);
+					selectionEndCoord = new Point((int)model.getClipboardLayerDimensions().getHeight(), (int)model.getClipboardLayerDimensions().getWidth());
+					model.setSelectionVisible(true);
+					repaintAll();
+				}
+			}
+		}
+    }
+    
+    /** Handle menu items */
+    private class MyMenuListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (e.getSource() == view.loadMenuItem) {
+				// Pop up a JFileChooser and if user cancels, quit this method
+				JFileChooser fChooser = new JFileChooser(".");
+				int response = fChooser.showOpenDialog(null);
+				if (response != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+
+				File file = fChooser.getSelectedFile();
+				try {
+					// Keep the current cell size
+					int cellWidth = Math.max(LevelEditorView.MIN_CELL_WIDTH, view.getCanvas().getWidth() / numCols());
+					int unknownTiles = 0;
+					if (file.getName().endsWith(BinaryLevelFile.EXTENSION))
+						model.loadBinary(file);
+					else
+						unknownTiles = model.loadText(file);
+					view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellWidth * numRows()));
+					view.getCanvas().revalidate();
+					updateLayersMenu();
+					repaintAll();
+					if (unknownTiles > 0)
+						JOptionPane.showInternalMessageDialog(view.getContentPane(), unknownTiles + " cells use tiles that aren't in the images folder.");
+				} catch (IOException e1) {
+					e1.printStackTrace();
+					JOptionPane.showInternalMessageDialog(view.getContentPane(), "An error has occured :( See console for details.");
+				}
+			}
+			else if (e.getSource() == view.saveMenuItem) {
+				// Pop up a JFileChooser and if user cancels, quit this method
+				JFileChooser fChooser = new JFileChooser(".");
+				int response = fChooser.showSaveDialog(null);
+				if (response != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+
+				// Only one save at a time per window
+				if (saveWorker != null) {
+					JOptionPane.showInternalMessageDialog(view.getContentPane(), "Still saving the last file, please wait.");
+					return;
+				}
+
+				// Copy the level as it is right now and write it out in the background
+				saveWorker = new SaveWorker(model.snapshot(), fChooser.getSelectedFile());
+				saveWorker.execute();
+			}
+			// Pack the tile images into an atlas for the game, next to a level file
+			else if (e.getSource() == view.exportAtlasMenuItem) {
+				JFileChooser fChooser = new JFileChooser(".");
+				fChooser.setSelectedFile(new File("level" + TileAtlasFile.EXTENSION));
+				int response = fChooser.showSaveDialog(null);
+				if (response != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+
+				// Picking a level puts the atlas next to it under the level's name
+				File file = fChooser.getSelectedFile();
+				final File manifest = file.getName().endsWith(TileAtlasFile.EXTENSION) ? file : TileAtlasFile.manifestFor(file);
+				final File[] imageFiles = view.listOfFiles;
+				new SwingWorker<TileAtlasFile, Void>() {
+					@Override
+					protected TileAtlasFile doInBackground() throws Exception {
+						return TileAtlasFile.export(imageFiles, manifest, null);
+					}
+
+					@Override
+					protected void done() {
+						try {
+							TileAtlasFile atlas = get();
+							String message = "Packed " + atlas.numTiles() + " tiles into " + atlas.numPages() + " page(s) of " + manifest.getName() + ".";
+							if (!atlas.getSkipped().isEmpty())
+								message += "\n" + atlas.getSkipped().size() + " images couldn't be read or were too big and were left out.";
+							JOptionPane.showInternalMessageDialog(view.getContentPane(), message);
+						} catch (InterruptedException | ExecutionException e) {
+							e.printStackTrace();
+							JOptionPane.showInternalMessageDialog(view.getContentPane(), "An error has occured :( See console for details.");
+						}
+					}
+				}.execute();
+			}
+			else if (e.getSource() == view.undoMenuItem) {
+				model.undo();
+				repaintDirtyCells();
+			}
+			else if (e.getSource() == view.redoMenuItem) {
+				model.redo();
+				repaintDirtyCells();
+			}
+			// Fill the selection with the left-click tile
+			else if (e.getSource() == view.fillSelectionMenuItem) {
+				if (hasSelection() && view.tilePalette.getLeftBrush() >= 0) {
+					model.fillRegion(selectionRow1(), selectionCol1(), selectionRow2(), selectionCol2(), view.tileIds[view.tilePalette.getLeftBrush()]);
+					repaintDirtyCells();
+				}
+			}
+			// Swap the right-click tile for the left-click tile in the selection, or everywhere
+			else if (e.getSource() == view.replaceTileMenuItem) {
+				if (view.tilePalette.getLeftBrush() >= 0 && view.tilePalette.getRightBrush() >= 0) {
+					short from = view.tileIds[view.tilePalette.getRightBrush()];
+					short to = view.tileIds[view.tilePalette.getLeftBrush()];
+					if (hasSelection())
+						model.replaceInRegion(selectionRow1(), selectionCol1(), selectionRow2(), selectionCol2(), from, to);
+					else
+						model.replaceInRegion(0, 0, numRows(), numCols(), from, to);
+					repaintDirtyCells();
+				}
+			}
+			// Rotate or flip what's being moved, otherwise the selected cells
+			else if (e.getSource() == view.rotateMenuItem || e.getSource() == view.flipHorizontalMenuItem || e.getSource() == view.flipVerticalMenuItem) {
+				boolean rotate = e.getSource() == view.rotateMenuItem;
+				boolean horizontal = e.getSource() == view.flipHorizontalMenuItem;
+				Point oldStart = selectionStartCoord;
+				Point oldEnd = selectionEndCoord;
+				if (toolMode == MOVE_MODE && clipboardLayerHasData() && model.clipboardLayerVisible()) {
+					if (rotate)
+						model.rotateClipboard();
+					else
+						model.flipClipboard(horizontal);
+					selectionEndCoord = new Point((int)selectionStartCoord.getX() + numClipboardRows(), (int)selectionStartCoord.getY() + numClipboardCols());
+				}
+				else if (hasSelection()) {
+					int r1 = selectionRow1();
+					int c1 = selectionCol1();
+					int r2 = selectionRow2();
+					int c2 = selectionCol2();
+					if (rotate) {
+						model.rotateRegion(r1, c1, r2, c2);
+						selectionStartCoord = new Point(r1, c1);
+						selectionEndCoord = new Point(Math.min(numRows(), r1 + c2 - c1), Math.min(numCols(), c1 + r2 - r1));
+					}
+					else
+						model.flipRegion(r1, c1, r2, c2, horizontal);
+					repaintDirtyCells();
+				}
+				repaintSelectionChange(oldStart, oldEnd);
+			}
+			// Open a new EditorFrame (useful for copying and pasting between windows)
+			else if (e.getSource() == view.newEditorMenuItem) {
+				new LevelEditorController();
+			}
+			// Change the grid size
+			else if (e.getSource() == view.gridSizeMenuItem) {
+				int numRows = Integer.parseInt((String)JOptionPane.showInternalInputDialog(view.getContentPane(),
+                        "How many rows?",
+                        "Change Grid Size",
+                        JOptionPane.QUESTION_MESSAGE,
+                        null,
+                        null,
+                        numRows() + ""));
+				int numCols = Integer.parseInt((String)JOptionPane.showInternalInputDialog(view.getContentPane(),
+                        "How many columns?",
+                        "Change Grid Size",
+                        JOptionPane.QUESTION_MESSAGE,
+                        null,
+                        null,
+                        numCols() + ""));                        
+				model.setGridSize(numRows, numCols);
+				int cellWidth = Math.max(LevelEditorView.MIN_CELL_WIDTH, view.getCanvas().getWidth() / numCols());
+				int cellHeight = cellWidth;
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellHeight * numRows()));
+				view.getCanvas().revalidate();
+				repaintAll();
+			}
+			// Zoom in 2x
+			else if (e.getSource() == view.zoomInMenuItem) {
+				int oldCellWidth = (int)(view.getCanvas().getWidth() / numCols());
+				int cellWidth = (int)(view.getCanvas().getWidth() / numCols() * 2);
+				if (cellWidth == oldCellWidth)
+					cellWidth *= 2;
+				int cellHeight = cellWidth;
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellHeight * numRows()));
+				view.getCanvas().revalidate();
+				repaintAll();
+			}
+			// Zoom out 2x
+			else if (e.getSource() == view.zoomOutMenuItem) {
+				int cellWidth = (int)(view.getCanvas().getWidth() / numCols() / 2);
+				if (cellWidth < LevelEditorView.MIN_CELL_WIDTH)
+					cellWidth = LevelEditorView.MIN_CELL_WIDTH;
+				int cellHeight = cellWidth;
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellHeight * numRows()));
+				view.getCanvas().revalidate();
+				repaintAll();
+			}
+			else if (e.getSource() == view.walkableRegionsMenuItem || e.getSource() == view.keyRoutesMenuItem
+					|| e.getSource() == view.performanceOverlayMenuItem) {
+				repaintAll();
+			}
+		}    	
+    }
+    
+    /** Passes mouse events on to another listener, recording how long each takes to
+     *  handle as a MouseInputEvent */
+    private class TimedMouseListener extends MouseAdapter {
+		private MouseAdapter listener;
+
+		TimedMouseListener(MouseAdapter listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void mousePressed(MouseEvent e) {
+			MouseInputEvent event = startMouseEvent("pressed");
+			try {
+				listener.mousePressed(e);
+			} finally {
+				event.commit();
+			}
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			MouseInputEvent event = startMouseEvent("released");
+			try {
+				listener.mouseReleased(e);
+			} finally {
+				event.commit();
+			}
+		}
+
+		@Override
+		public void mouseClicked(MouseEvent e) {
+			MouseInputEvent event = startMouseEvent("clicked");
+			try {
+				listener.mouseClicked(e);
+			} finally {
+				event.commit();
+			}
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			MouseInputEvent event = startMouseEvent("dragged");
+			try {
+				listener.mouseDragged(e);
+			} finally {
+				event.commit();
+			}
+		}
+
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			MouseInputEvent event = startMouseEvent("wheel");
+			try {
+				listener.mouseWheelMoved(e);
+			} finally {
+				event.commit();
+			}
+		}
+
+		private MouseInputEvent startMouseEvent(String action) {
+			MouseInputEvent event = new MouseInputEvent();
+			if (event.isEnabled()) {
+				event.action = action;
+				event.tool = TOOL_NAMES[toolMode];
+			}
+			event.begin();
+			return event;
+		}
+    }
+
+    /** Handle mouse movement, clicks, and wheel */
+	private class MyMouseListener extends MouseAdapter {
+		
+    	@Override
+		public void mousePressed(MouseEvent e) {
+			super.mousePressed(e);
+
+			// Determine the grid location we click on
+			int row = e.getY() / (view.getCanvas().getHeight() / numRows());
+			int col = e.getX() / (view.getCanvas().getWidth() / numCols());
+			
+			// Left-click + Ctrl brings up the tile properties popup menu
+			int popUpMask = MouseEvent.BUTTON1_MASK | MouseEvent.CTRL_MASK;			
+			if ((e.getModifiers() & popUpMask) == popUpMask) {
+				currentTile = model.getTileAt(row, col);
+				currentCell = new Point(row, col);
+				if (currentTile != null) {
+					view.tilePropertyWalkable.setSelected(currentTile.getPropertyWalkable());
+					view.tilePropertyKeyLocation.setSelected(model.isKeyLocation(row, col));
+					view.popUpMenu.show(view.getCanvas(), e.getX(), e.getY());
+				}
+				return;
+			}
+
+			// Everything painted until the mouse is released is undone together
+			model.beginEdit();
+
+			if (toolMode == PAINT_MODE) {
+				if (view.tilePalette.getLeftBrush() >= 0) {
+					int brush = e.getButton() == MouseEvent.BUTTON1 ? view.tilePalette.getLeftBrush() : view.tilePalette.getRightBrush();
+					startStroke(view.tileIds[brush], row, col);
+				}
+			}
+			else if (toolMode == ERASE_MODE) {
+				startStroke(TilePalette.EMPTY, row, col);
+			}
+			else if (toolMode == SELECT_MODE) {
+				selectionStartCoord = new Point(row, col);
+				selectionEndCoord = new Point(row + 1, col + 1);
+				selectionMouseStartCoord = new Point(e.getX(), e.getY());
+			}
+			else if (toolMode == MOVE_MODE) {
+				// If the user has a region selected but there's nothing in the clipboard (copy layer),
+				// we'll assume the user wants to copy and move the current selection.  We'll do this by
+				// it to the clipboard and letting them move the selection copy.
+				selectionMouseStartCoord = new Point(e.getX(), e.getY());
+				Point oldStart = selectionStartCoord;
+				Point oldEnd = selectionEndCoord;
+				// If there something in the clipboard (copy layer) then move it to mouse location
+				if (isWithinBounds(e.getX(), e.getY()) && clipboardLayerHasData()) {
+					int r = e.getY() / (view.getCanvas().getHeight() / numRows());
+					int c = e.getX() / (view.getCanvas().getWidth() / numCols());
+					clipboardLayerRowPlacement = r;
+					clipboardLayerColPlacement = c;					
+					selectionStartCoord = new Point(r, c);
+					selectionEndCoord = new Point(r + (int)model.getClipboardLayerDimensions().getHeight(), c + (int)model.getClipboardLayerDimensions().getWidth());
+				}
+				repaintSelectionChange(oldStart, oldEnd);
+			}
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			super.mouseReleased(e);
+
+			// Left-click + Ctrl brings up the tile properties popup menu
+			int popUpMask = MouseEvent.BUTTON1_MASK | MouseEvent.CTRL_MASK;			
+			if ((e.getModifiers() & popUpMask) == popUpMask) {
+				model.endEdit();
+				return;
+			}
+			
+			if (stroke != null) {
+				stroke.moveTo(strokeRow(e), strokeCol(e));
+				finishStroke();
+			}
+			if (toolMode == FILL_MODE) {
+
+				// Determine the grid location we click on
+				int row = e.getY() / (view.getCanvas().getHeight() / numRows());
+				int col = e.getX() / (view.getCanvas().getWidth() / numCols());
+
+				if (isWithinBounds(e.getX(), e.getY()) && view.tilePalette.getLeftBrush() >= 0) {
+					short id = view.tileIds[e.getButton() == MouseEvent.BUTTON1 ? view.tilePalette.getLeftBrush() : view.tilePalette.getRightBrush()];
+					if (selectionContains(row, col))
+						model.fillAt(row, col, id, selectionRow1(), selectionCol1(), selectionRow2(), selectionCol2());
+					else
+						model.fillAt(row, col, id);
+					repaintDirtyCells();
+				}
+			}
+			model.endEdit();
+		}
+
+		@Override
+		public void mouseClicked(MouseEvent e) {
+			super.mouseClicked(e);
+
+			// Left-click + Ctrl brings up the tile properties popup menu
+			int popUpMask = MouseEvent.BUTTON1_MASK | MouseEvent.CTRL_MASK;	
+			if ((e.getModifiers() & popUpMask) == popUpMask)
+				return;
+			
+			if (toolMode == SELECT_MODE) {
+				Point oldEnd = selectionEndCoord;
+				selectionEndCoord = selectionStartCoord;
+				repaintSelectionChange(selectionStartCoord, oldEnd);
+			}
+		}
+		
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			super.mouseDragged(e);
+
+			// Left-click + Ctrl brings up the tile properties popup menu
+			int popUpMask = MouseEvent.BUTTON1_DOWN_MASK | MouseEvent.CTRL_DOWN_MASK;	
+			if ((e.getModifiersEx() & popUpMask) == popUpMask)
+				return;
+
+			if (stroke != null) {
+				// Painted at the next frame, along with anything else dragged over until then
+				stroke.moveTo(strokeRow(e), strokeCol(e));
+			}
+			else if (toolMode == SELECT_MODE) {
+				Point oldStart = selectionStartCoord;
+				Point oldEnd = selectionEndCoord;
+
+				if (isWithinBounds(e.getX(), e.getY())) {
+
+					// Dragging in a southeast direction
+					if (e.getX() > selectionMouseStartCoord.getX() && e.getY() > selectionMouseStartCoord.getY()) {
+						int r2 = 1 + e.getY() / (view.getCanvas().getHeight() / numRows());
+						int c2 = 1 + e.getX() / (view.getCanvas().getWidth() / numCols());
+						selectionEndCoord = new Point(r2, c2);
+
+					}
+					// Dragging in a northwest direction
+					else if (e.getX() < selectionMouseStartCoord.getX() && e.getY() < selectionMouseStartCoord.getY()) {
+						int r1 = e.getY() / (view.getCanvas().getHeight() / numRows());
+						int c1 = e.getX() / (view.getCanvas().getWidth() / numCols());
+						selectionStartCoord = new Point(r1, c1);
+					}
+					// Dragging in a northeast direction
+					else if (e.getX() > selectionMouseStartCoord.getX() && e.getY() < selectionMouseStartCoord.getY()) {
+						int r1 = e.getY() / (view.getCanvas().getHeight() / numRows());
+						int c1 = (int)selectionMouseStartCoord.getX() / (view.getCanvas().getWidth() / numCols());
+						int r2 = 1 + (int)selectionMouseStartCoord.getY() / (view.getCanvas().getHeight() / numRows());
+						int c2 = 1 + e.getX() / (view.getCanvas().getWidth() / numCols());
+						selectionStartCoord = new Point(r1, c1);
+						selectionEndCoord = new Point(r2, c2);
+					}
+					// Dragging in a southwest direction
+					else if (e.getX() < selectionMouseStartCoord.getX() && e.getY() > selectionMouseStartCoord.getY()) {
+						int r1 = (int)selectionMouseStartCoord.getY() / (view.getCanvas().getHeight() / numRows());
+						int c1 = e.getX() / (view.getCanvas().getWidth() / numCols());
+						int r2 = 1 + e.getY() / (view.getCanvas().getHeight() / numRows());
+						int c2 = 1 + (int)selectionMouseStartCoord.getX() / (view.getCanvas().getWidth() / numCols());
+						selectionStartCoord = new Point(r1, c1);
+						selectionEndCoord = new Point(r2, c2);
+					}
+				}
+				repaintSelectionChange(oldStart, oldEnd);
+			}
+			else if (toolMode == MOVE_MODE) {
+				Point oldStart = selectionStartCoord;
+				Point oldEnd = selectionEndCoord;
+				if (isWithinBounds(e.getX(), e.getY()) && clipboardLayerHasData()) {
+
+					// Determine the grid location we click on
+					int r = e.getY() / (view.getCanvas().getHeight() / numRows());
+					int c = e.getX() / (view.getCanvas().getWidth() / numCols());
+					clipboardLayerRowPlacement = r;
+					clipboardLayerColPlacement = c;
+					selectionStartCoord = new Point(r, c);
+					selectionEndCoord = new Point(r + (int)model.getClipboardLayerDimensions().getHeight(), c + (int)model.getClipboardLayerDimensions().getWidth());
+				}
+				repaintSelectionChange(oldStart, oldEnd);
+			}
+		}
+
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			super.mouseWheelMoved(e);
+			
+			if (e.getWheelRotation() < 0) {
+				int oldCellWidth = (int)(view.getCanvas().getWidth() / numCols());
+				int cellWidth = (int)(view.getCanvas().getWidth() / numCols() * 1.2);
+				if (cellWidth == oldCellWidth)
+					cellWidth *= 2;
+				int cellHeight = cellWidth;
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellHeight * numRows()));
+			}
+			else if (e.getWheelRotation() > 0) {
+				int cellWidth = (int)(view.getCanvas().getWidth() / numCols() / 1.2);
+				if (cellWidth < LevelEditorView.MIN_CELL_WIDTH)
+					cellWidth = LevelEditorView.MIN_CELL_WIDTH;
+				int cellHeight = cellWidth;
+				view.getCanvas().setPreferredSize(new Dimension(cellWidth * numCols(), cellHeight * numRows()));
+			}
+			view.getCanvas().revalidate();
+			repaintAll();
+		}
+
+		/** Row under the mouse, which may be outside the level while dragging */
+		private int strokeRow(MouseEvent e) {
+			return Math.floorDiv(e.getY(), view.getCanvas().getHeight() / numRows());
+		}
+
+		/** Column under the mouse, which may be outside the level while dragging */
+		private int strokeCol(MouseEvent e) {
+			return Math.floorDiv(e.getX(), view.getCanvas().getWidth() / numCols());
+		}
+
+	    /** Helper function to ensure a pixel location (x, y) is within the canvas bounds */		
+		private boolean isWithinBounds(int x, int y) {
+			return x > 0 && x < view.getCanvas().getWidth() && y > 0 && y < view.getCanvas().getHeight();
+		}
+	}
+
+	/** Starts painting (or erasing, with TilePalette.EMPTY) a stroke at (row, col) */
+	private void startStroke(short tileId, int row, int col) {
+		stroke = new BrushStroke(tileId, row, col);
+		strokeTimer.start();
+	}
+
+	/** Applies the cells the stroke crossed since the last frame as one batch, then
+	 *  repaints once */
+	private void applyStroke() {
+		if (stroke == null || stroke.numPending() == 0)
+			return;
+		model.setTilesAt(stroke.getPending(), stroke.numPending(), stroke.getTileId());
+		stroke.clearPending();
+		repaintDirtyCells();
+	}
+
+	/** Applies what's left of the stroke and ends it */
+	private void finishStroke() {
+		applyStroke();
+		strokeTimer.stop();
+		stroke = null;
+	}
+
+	/** Repaints the whole canvas, for changes like zooming that affect everything */
+	private void repaintAll() {
+		dirtyCells = null;
+		view.getCanvas().repaint();
+	}
+
+	/** Repaints just the cells that changed since the last call */
+	private void repaintDirtyCells() {
+		if (dirtyCells == null)
+			return;
+		// Joining or splitting regions can recolor cells anywhere in view, and routes can move anywhere
+		if (walkableRegionsVisible() || keyRoutesVisible()) {
+			repaintAll();
+			return;
+		}
+		repaintCells(dirtyCells.y, dirtyCells.x, dirtyCells.y + dirtyCells.height, dirtyCells.x + dirtyCells.width, 0);
+		dirtyCells = null;
+	}
+
+	/** Repaints the old and the current selection outline (and with it the clipboard
+	 *  overlay, which always sits under the selection in MOVE_MODE) */
+	private void repaintSelectionChange(Point oldStart, Point oldEnd) {
+		int pad = 4;		// The dashed outline is drawn 5 pixels wide, centered on the cell edges
+		if (oldStart != null && oldEnd != null)
+			repaintCells((int)oldStart.getX(), (int)oldStart.getY(), (int)oldEnd.getX(), (int)oldEnd.getY(), pad);
+		if (selectionStartCoord != null && selectionEndCoord != null)
+			repaintCells((int)selectionStartCoord.getX(), (int)selectionStartCoord.getY(), (int)selectionEndCoord.getX(), (int)selectionEndCoord.getY(), pad);
+		repaintDirtyCells();
+	}
+
+	/** Repaints the cells in rows [r1, r2) and columns [c1, c2) plus pad pixels around them */
+	private void repaintCells(int r1, int c1, int r2, int c2, int pad) {
+		int cellWidth = view.getCanvas().getWidth() / numCols();
+		int cellHeight = view.getCanvas().getHeight() / numRows();
+		view.getCanvas().repaint(c1 * cellWidth - pad, r1 * cellHeight - pad, (c2 - c1) * cellWidth + 2 * pad + 1, (r2 - r1) * cellHeight + 2 * pad + 1);
+	}
+
+	/** Whether cells are colored by the walkable region they're in */
+	public boolean walkableRegionsVisible() {
+		return view != null && view.walkableRegionsMenuItem.isSelected();
+	}
+
+	/** Returns the ID of the walkable region (r, c) is in, or WalkableRegions.NONE */
+	public long getWalkableRegionAt(int r, int c) {
+		return model.getWalkableRegionAt(r, c);
+	}
+
+	/** Whether routes from the first key location to the others are drawn */
+	public boolean keyRoutesVisible() {
+		return view != null && view.keyRoutesMenuItem.isSelected();
+	}
+
+	/** Whether frame times and cache hit rates are drawn over the canvas */
+	public boolean performanceOverlayVisible() {
+		return view != null && view.performanceOverlayMenuItem.isSelected();
+	}
+
+	/** Key locations as (row, col) in the order they were marked */
+	public List<Point> getKeyLocations() {
+		return model.getKeyLocations();
+	}
+
+	/** Routes from the first key location to each of the others, null where there's no route.
+	 *  Only worked out again after the background or the key locations changed. */
+	public ReachabilityGraph.Route[] getKeyRoutes() {
+		if (keyRoutes == null)
+			keyRoutes = model.checkKeyLocations();
+		return keyRoutes;
+	}
+
+	public boolean clipboardLayerHasData() {
+		return model.getClipboardRegion() != null;
+	}
+
+	public boolean clipboardLayerVisible() {
+		return model.clipboardLayerVisible();
+	}
+
+	public boolean selectionVisible() {
+		return model.selectionVisible();
+	}
+
+	public int numRows() {
+		return model.numRows();
+	}
+
+	public int numCols() {
+		return model.numCols();
+	}
+
+	public int numClipboardRows() {
+		return model.getClipboardRegion().numRows();
+	}
+
+	public int numClipboardCols() {
+		return model.getClipboardRegion().numCols();
+	}
+
+	public int getClipboardLayerColPlacement() {
+		return clipboardLayerColPlacement;
+	}
+
+	public int getClipboardLayerRowPlacement() {
+		return clipboardLayerRowPlacement;
+	}
+
+	/** Whether a selection of at least one cell is showing */
+	private boolean hasSelection() {
+		return model.selectionVisible() && selectionStartCoord != null && selectionEndCoord != null
+				&& selectionStartCoord.getX() != selectionEndCoord.getX() && selectionStartCoord.getY() != selectionEndCoord.getY();
+	}
+
+	/** Whether (row, col) is inside the current selection, if one is showing */
+	private boolean selectionContains(int row, int col) {
+		return hasSelection() && row >= selectionRow1() && row < selectionRow2() && col >= selectionCol1() && col < selectionCol2();
+	}
+
+	// Bounds of the current selection whichever way it was dragged, as rows [row1, row2)
+	// and columns [col1, col2)
+	private int selectionRow1() {
+		return (int)Math.min(selectionStartCoord.getX(), selectionEndCoord.getX());
+	}
+
+	private int selectionRow2() {
+		return (int)Math.max(selectionStartCoord.getX(), selectionEndCoord.getX());
+	}
+
+	private int selectionCol1() {
+		return (int)Math.min(selectionStartCoord.getY(), selectionEndCoord.getY());
+	}
+
+	private int selectionCol2() {
+		return (int)Math.max(selectionStartCoord.getY(), selectionEndCoord.getY());
+	}
+
+	/** Sets the upper-left corner of the current selection.
+	 *  Point is stored as (row, col) rather than (x, y) */
+	public void setSelectionStartCoord(Point p) {
+		selectionStartCoord = p;
+	}
+
+	/** Sets the lower-right corner of the current selection.
+	 *  Point is stored as (row, col) rather than (x, y) */
+	public void setSelectionEndCoord(Point p) {
+		selectionEndCoord = p;
+	}
+
+	/** Returns the upper-left coordinates of the current selection.
+	 *  Point is stored as (row, col) rather than (x, y) */
+	public Point getSelectionStartCoord() {
+		return selectionStartCoord;
+	}
+
+	/** Returns the lower-right coordinates of the current selection.
+	 *  Point is stored as (row, col) rather than (x, y) */
+	public Point getSelectionEndCoord() {
+		return selectionEndCoord;
+	}
+
+	/** Returns the Image at (r, c) in the model's background layer
+	 *  or null if there is no image at location (r, c) */
+	public Image getBackgroundImageAt(int row, int col) {
+		return TilePalette.getShared().getImage(model.getTileIdAt(row, col));
+	}
+
+	/** Returns the TilePalette ID at (r, c) in one of the model's layers */
+	public short getTileIdAt(int layer, int row, int col) {
+		return model.getTileIdAt(layer, row, col);
+	}
+
+	/** Returns true if any cell of a layer's chunk at chunk coordinates (chunkRow, chunkCol) has a tile */
+	public boolean chunkHasTiles(int layer, int chunkRow, int chunkCol) {
+		return model.chunkHasTiles(layer, chunkRow, chunkCol);
+	}
+
+	/** Number of layers in the level, stacked from the background up */
+	public int numLayers() {
+		return model.numLayers();
+	}
+
+	public String getLayerName(int layer) {
+		return model.getLayer(layer).getName();
+	}
+
+	public boolean isLayerVisible(int layer) {
+		return model.getLayer(layer).isVisible();
+	}
+
+	/** How opaque a layer is drawn, from 0 to 1 */
+	public float getLayerOpacity(int layer) {
+		return model.getLayer(layer).getOpacity();
+	}
+
+	/** Returns true if a layer has no tiles, so drawing it can be skipped */
+	public boolean isLayerEmpty(int layer) {
+		return model.getLayer(layer).isEmpty();
+	}
+
+	/** Rebuilds the Layers menu to match the model's layers, e.g. after a level was loaded */
+	private void updateLayersMenu() {
+		String[] names = new String[model.numLayers()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = model.getLayer(i).getName();
+		view.setLayerNames(names);
+		view.editLayerMenuItems[model.getCurrentLayer()].setSelected(true);
+		for (int i = 0; i < names.length; i++)
+			view.showLayerMenuItems[i].setSelected(model.getLayer(i).isVisible());
+	}
+
+	/** Lets a view component hear about changes to the level */
+	public void addLevelChangeListener(LevelChangeListener l) {
+		model.addLevelChangeListener(l);
+	}
+
+	/** Returns the TilePalette ID at (r, c) in the model's clipboard layer */
+	public short getCopyLayerTileIdAt(int row, int col) {
+		return model.getClipboardRegion().getTileIdAt(row, col);
+	}
+
+	/** Returns the Image at (r, c) in the model's clipboard layer
+	 *  or null if there is no image at location (r, c) */
+	public Image getCopyLayerImageAt(int row, int col) {
+		return TilePalette.getShared().getImage(model.getClipboardRegion().getTileIdAt(row, col));
+	}
+}
\ No newline at end of file
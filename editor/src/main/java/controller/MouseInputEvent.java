@@ -0,0 +1,23 @@
+package controller;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for handling one mouse event on the canvas, not counting the
+ * repaint it causes (see leveleditor.CanvasPaint).
+ */
+@Name("leveleditor.MouseInput")
+@Label("Mouse Input")
+@Category({"Level Editor", "Input"})
+@Description("Handling a mouse event on the canvas")
+class MouseInputEvent extends Event {
+
+	@Label("Action")
+	String action;				// "pressed", "released", "clicked", "dragged" or "wheel"
+
+	@Label("Tool")
+	String tool;
+}
@@ -0,0 +1,45 @@
+package view;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for drawing one layer of the canvas (gridlines, background,
+ * clipboard, selection and so on), or for the whole frame with the layer "frame".
+ */
+@Name("leveleditor.CanvasPaint")
+@Label("Canvas Paint")
+@Category({"Level Editor", "Rendering"})
+@Description("Drawing a layer of the level canvas")
+class CanvasPaintEvent extends Event {
+
+	@Label("Layer")
+	String layer;
+
+	@Label("Cells")
+	@Description("Cells inside the painted area")
+	int cells;
+
+	@Label("Cell Width")
+	int cellWidth;
+
+	/** Starts timing a layer */
+	static CanvasPaintEvent start(String layer) {
+		CanvasPaintEvent event = new CanvasPaintEvent();
+		event.layer = layer;
+		event.begin();
+		return event;
+	}
+
+	/** Records the layer as drawn */
+	void finish(int cells, int cellWidth) {
+		end();
+		if (!shouldCommit())
+			return;
+		this.cells = cells;
+		this.cellWidth = cellWidth;
+		commit();
+	}
+}
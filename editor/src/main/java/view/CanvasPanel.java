@@ -0,0 +1,508 @@
+package view;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import controller.LevelEditorController;
+import model.ChunkedGrid;
+import model.ReachabilityGraph;
+import model.TilePalette;
+import model.WalkableRegions;
+
+public class CanvasPanel extends JPanel {
+	
+	private static final long serialVersionUID = -7643413096529405862L;
+
+	public static final int SWATCH_CELL_WIDTH = 8;		// Below this cells are drawn as flat colors without gridlines
+	public static final int OVERVIEW_CELL_WIDTH = 2;	// At or below this the downsampled OverviewGrid is drawn instead
+	private static final Color KEY_ROUTE_COLOR = new Color(0, 160, 60);
+	private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+	private static final int OVERLAY_WIDTH = 320;
+	private static final int OVERLAY_HEIGHT = 72;
+	private static final int OVERLAY_REFRESH_MS = 500;
+	private LevelEditorController controller;
+	private ScaledTileCache tileCache;
+	private TileAtlas atlas;
+	private ChunkImageCache chunkCache;
+	private ArrayList<OverviewGrid> overviews;	// One per layer, made the first time it's drawn
+	private ChangeListener imagesLoaded;		// Redraws everything when tile images finish loading
+	private PerformanceStats stats;
+	private Timer overlayTimer;					// Refreshes the performance overlay while it's on
+	private Rectangle overlayBounds;			// Where the overlay was last drawn
+	private boolean refreshingOverlay;			// Painting just to refresh the overlay
+	
+	public CanvasPanel(LevelEditorController controller) {
+		this.controller = controller;
+		tileCache = ScaledTileCache.getShared();
+		atlas = new TileAtlas(tileCache);
+		chunkCache = new ChunkImageCache(controller, atlas);
+		controller.addLevelChangeListener(chunkCache);
+		overviews = new ArrayList<OverviewGrid>();
+		imagesLoaded = new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				atlas.clear();
+				chunkCache.clear();
+				for (OverviewGrid overview : overviews)
+					overview.invalidate();
+				repaint();
+			}
+		};
+		TileImageLoader.getShared().addChangeListener(imagesLoaded);
+		stats = new PerformanceStats();
+		overlayTimer = new Timer(OVERLAY_REFRESH_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!controller.performanceOverlayVisible() || overlayBounds == null) {
+					overlayTimer.stop();
+					if (overlayBounds != null)
+						repaint(overlayBounds);
+					overlayBounds = null;
+					return;
+				}
+				stats.sampleCaches(tileCache.getHits(), tileCache.getMisses(), chunkCache.getHits(), chunkCache.getMisses());
+				refreshingOverlay = true;
+				try {
+					paintImmediately(overlayBounds);
+				} finally {
+					refreshingOverlay = false;
+				}
+			}
+		});
+	}	
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		CanvasPaintEvent frame = CanvasPaintEvent.start("frame");
+		int cellWidth = cellWidth();
+		int cells = 0;
+		Rectangle area;
+		// The frame is recorded even when there's nothing to paint
+		try {
+			super.paintComponent(g);
+
+			// Only the part of the canvas that's both dirty and scrolled into view gets painted
+			area = paintArea(g);
+			if (area.isEmpty() || cellWidth <= 0 || cellHeight() <= 0)
+				return;
+			cells = (lastRow(area) - firstRow(area)) * (lastCol(area) - firstCol(area));
+
+			// Zoomed far out, individual tiles and gridlines are just noise
+			if (cellWidth <= OVERVIEW_CELL_WIDTH) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("overview");
+				drawOverview(g, area);
+				layer.finish(cells, cellWidth);
+			}
+			else if (cellWidth < SWATCH_CELL_WIDTH) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("swatches");
+				drawSwatches(g, area);
+				layer.finish(cells, cellWidth);
+			}
+			else {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("gridlines");
+				drawGridlines(g, area);
+				layer.finish(cells, cellWidth);
+				// Layers are stacked bottom up, each from its own baked chunks
+				for (int i = 0; i < controller.numLayers(); i++) {
+					Graphics2D g2 = layerGraphics(g, i);
+					if (g2 == null)
+						continue;
+					layer = CanvasPaintEvent.start(controller.getLayerName(i));
+					drawLayer(g2, i, area);
+					layer.finish(cells, cellWidth);
+					g2.dispose();
+				}
+			}
+
+			if (controller.walkableRegionsVisible()) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("walkable regions");
+				drawWalkableRegions(g, area);
+				layer.finish(cells, cellWidth);
+			}
+
+			if (!controller.getKeyLocations().isEmpty()) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("key locations");
+				drawKeyLocations(g);
+				layer.finish(controller.getKeyLocations().size(), cellWidth);
+			}
+
+			if (controller.clipboardLayerHasData() && controller.clipboardLayerVisible()) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("clipboard");
+				drawClipboardLayer(g, area);
+				layer.finish(controller.numClipboardRows() * controller.numClipboardCols(), cellWidth);
+			}
+
+			if (controller.selectionVisible()) {
+				CanvasPaintEvent layer = CanvasPaintEvent.start("selection");
+				drawSelection(g, area);
+				layer.finish(0, cellWidth);
+			}
+		} finally {
+			frame.finish(cells, cellWidth);
+			// Refreshing the overlay by itself isn't a frame worth counting
+			if (!refreshingOverlay)
+				stats.frameDrawn(System.nanoTime() - start, cells);
+		}
+
+		if (controller.performanceOverlayVisible())
+			drawPerformanceOverlay(g, area);
+	}
+
+	/** Draws frame times, repaints, cells drawn and cache hit rates in the top left
+	 *  corner of the view, and keeps them refreshing while the overlay is on */
+	private void drawPerformanceOverlay(Graphics g, Rectangle area) {
+		Rectangle visible = getVisibleRect();
+		Rectangle bounds = new Rectangle(visible.x + 8, visible.y + 8, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+		// Scrolling copies the overlay along with the level, so clean up where it was
+		if (!bounds.equals(overlayBounds)) {
+			if (overlayBounds != null)
+				repaint(overlayBounds);
+			repaint(bounds);
+			overlayBounds = bounds;
+		}
+		if (!overlayTimer.isRunning())
+			overlayTimer.start();
+		if (!bounds.intersects(area))
+			return;
+
+		String[] lines = {
+			String.format("Frame ms  p50 %.1f  p95 %.1f  p99 %.1f", stats.percentile(0.5), stats.percentile(0.95), stats.percentile(0.99)),
+			String.format("Repaints/s  %d", stats.framesPerSecond()),
+			String.format("Cells/frame  %,d", stats.getLastCells()),
+			"Tile cache  " + percent(stats.getTileHitRate()) + "   Chunk cache  " + percent(stats.getChunkHitRate())
+		};
+		g.setColor(OVERLAY_BACKGROUND);
+		g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+		g.setColor(Color.WHITE);
+		int lineHeight = g.getFontMetrics().getHeight();
+		for (int i = 0; i < lines.length; i++)
+			g.drawString(lines[i], bounds.x + 6, bounds.y + 4 + g.getFontMetrics().getAscent() + i*lineHeight);
+	}
+
+	/** A hit rate as a percentage, or a dash if there were no lookups */
+	private static String percent(double rate) {
+		return rate < 0 ? "-" : String.format("%.0f%%", rate * 100);
+	}
+
+	/** Draws a dashed rectangle to show the user's current selection */
+	private void drawSelection(Graphics g, Rectangle area) {
+		Graphics2D g2 = (Graphics2D)g;
+		float[] dash = {10, 10};
+		g2.setStroke(new BasicStroke(5, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL, 1, dash, 0));
+
+		// Note: I store these Points as (row, col) rather than (x, y)
+		int x1 = (int)controller.getSelectionStartCoord().getY();
+		int y1 = (int)controller.getSelectionStartCoord().getX();
+		int x2 = (int)controller.getSelectionEndCoord().getY();
+		int y2 = (int)controller.getSelectionEndCoord().getX();
+
+		// Skip the outline if none of it (including the stroke width) is in view
+		Rectangle outline = new Rectangle(x1*cellWidth(), y1*cellHeight(), (x2 - x1)*cellWidth(), (y2 - y1)*cellHeight());
+		Rectangle stroked = new Rectangle(outline);
+		stroked.grow(3, 3);
+		if (!stroked.intersects(area))
+			return;
+
+		g2.drawRect(outline.x, outline.y, outline.width, outline.height);
+	}
+
+	/** Draws the board gridlines that fall inside area */
+	private void drawGridlines(Graphics g, Rectangle area) {
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+		
+		// Vertical gridlines
+		for (int c = firstCol(area); c < Math.min(controller.numCols(), lastCol(area) + 1); c++) {
+			g.drawLine(c*cellWidth, area.y, c*cellWidth, area.y + area.height);
+		}
+		
+		// Horizontal gridlines
+		for (int r = firstRow(area); r < Math.min(controller.numRows(), lastRow(area) + 1); r++) {
+			g.drawLine(area.x, r*cellHeight, area.x + area.width, r*cellHeight);
+		}			
+	}
+
+	/** Draws the part of the clipboard data that's inside area wherever the user drags the mouse */
+	private void drawClipboardLayer(Graphics g, Rectangle area) {
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+		int rowOffset = controller.getClipboardLayerRowPlacement();
+		int colOffset = controller.getClipboardLayerColPlacement();
+
+		int r1 = Math.max(0, firstRow(area) - rowOffset);
+		int r2 = Math.min(controller.numClipboardRows(), lastRow(area) - rowOffset);
+		int c1 = Math.max(0, firstCol(area) - colOffset);
+		int c2 = Math.min(controller.numClipboardCols(), lastCol(area) - colOffset);
+
+		for (int r = r1; r < r2; r++) {
+			for (int c = c1; c < c2; c++) {
+				short id = controller.getCopyLayerTileIdAt(r, c);
+				if (cellWidth < SWATCH_CELL_WIDTH) {
+					if (id != TilePalette.EMPTY) {
+						g.setColor(new Color(tileCache.getAverageColor(id), true));
+						g.fillRect((c + colOffset)*cellWidth, (r + rowOffset)*cellHeight, cellWidth, cellHeight);
+					}
+					continue;
+				}
+				atlas.draw(g, id, (c + colOffset)*cellWidth, (r + rowOffset)*cellHeight, cellWidth, cellHeight);
+			}
+		}
+	}
+
+	/** Returns a copy of g that blends at a layer's opacity, or null if the layer is
+	 *  hidden, fully transparent or has no tiles.  Dispose of it when done. */
+	private Graphics2D layerGraphics(Graphics g, int layer) {
+		float opacity = controller.getLayerOpacity(layer);
+		if (!controller.isLayerVisible(layer) || opacity <= 0 || controller.isLayerEmpty(layer))
+			return null;
+		Graphics2D g2 = (Graphics2D)g.create();
+		if (opacity < 1)
+			g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+		return g2;
+	}
+
+	/** Draws one layer's tiles that fall inside area */
+	private void drawLayer(Graphics g, int layer, Rectangle area) {
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+
+		// Blit whole baked chunks when they're a sensible size
+		if (chunkCache.canBake(cellWidth, cellHeight)) {
+			int chunkWidth = cellWidth * ChunkedGrid.CHUNK_SIZE;
+			int chunkHeight = cellHeight * ChunkedGrid.CHUNK_SIZE;
+			for (int cr = firstRow(area) >> ChunkedGrid.CHUNK_SHIFT; cr <= (lastRow(area) - 1) >> ChunkedGrid.CHUNK_SHIFT; cr++) {
+				for (int cc = firstCol(area) >> ChunkedGrid.CHUNK_SHIFT; cc <= (lastCol(area) - 1) >> ChunkedGrid.CHUNK_SHIFT; cc++) {
+					if (!controller.chunkHasTiles(layer, cr, cc))
+						continue;
+					g.drawImage(chunkCache.get(layer, cr, cc, cellWidth, cellHeight), cc * chunkWidth, cr * chunkHeight, null);
+				}
+			}
+			return;
+		}
+
+		// Zoomed in too far to bake, so don't hold on to chunks baked at another size
+		chunkCache.clear();
+		
+		for (int r = firstRow(area); r < lastRow(area); r++) {
+			for (int c = firstCol(area); c < lastCol(area); c++)
+				atlas.draw(g, controller.getTileIdAt(layer, r, c), c*cellWidth, r*cellHeight, cellWidth, cellHeight);
+		}
+	}
+
+	/** Draws each visible cell of every shown layer as its tile's average color */
+	private void drawSwatches(Graphics g, Rectangle area) {
+		for (int i = 0; i < controller.numLayers(); i++) {
+			Graphics2D g2 = layerGraphics(g, i);
+			if (g2 == null)
+				continue;
+			drawSwatches(g2, i, area);
+			g2.dispose();
+		}
+	}
+
+	/** Draws each visible cell of a layer as its tile's average color.  Runs of cells
+	 *  with the same color in a row are filled with one rectangle. */
+	private void drawSwatches(Graphics g, int layer, Rectangle area) {
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+		int firstCol = firstCol(area);
+		int lastCol = lastCol(area);
+
+		for (int r = firstRow(area); r < lastRow(area); r++) {
+			int runStart = firstCol;
+			int runColor = tileCache.getAverageColor(controller.getTileIdAt(layer, r, firstCol));
+			for (int c = firstCol + 1; c <= lastCol; c++) {
+				int color = c < lastCol ? tileCache.getAverageColor(controller.getTileIdAt(layer, r, c)) : 0;
+				if (c < lastCol && color == runColor)
+					continue;
+				if (runColor != 0) {
+					g.setColor(new Color(runColor, true));
+					g.fillRect(runStart*cellWidth, r*cellHeight, (c - runStart)*cellWidth, cellHeight);
+				}
+				runStart = c;
+				runColor = color;
+			}
+		}
+	}
+
+	/** Tints each walkable cell inside area with a color picked from its region's ID, so
+	 *  cells that connect share a color.  Runs of one region in a row are filled together. */
+	private void drawWalkableRegions(Graphics g, Rectangle area) {
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+		int firstCol = firstCol(area);
+		int lastCol = lastCol(area);
+
+		for (int r = firstRow(area); r < lastRow(area); r++) {
+			int runStart = firstCol;
+			long runRegion = controller.getWalkableRegionAt(r, firstCol);
+			for (int c = firstCol + 1; c <= lastCol; c++) {
+				long region = c < lastCol ? controller.getWalkableRegionAt(r, c) : WalkableRegions.NONE;
+				if (c < lastCol && region == runRegion)
+					continue;
+				if (runRegion != WalkableRegions.NONE) {
+					g.setColor(regionColor(runRegion));
+					g.fillRect(runStart*cellWidth, r*cellHeight, (c - runStart)*cellWidth, cellHeight);
+				}
+				runStart = c;
+				runRegion = region;
+			}
+		}
+	}
+
+	/** Draws the key locations numbered in the order they were marked and, if asked for,
+	 *  the route from the first to each of the others with its length.  Key locations the
+	 *  first can't reach are drawn in red. */
+	private void drawKeyLocations(Graphics g) {
+		Graphics2D g2 = (Graphics2D)g;
+		int cellWidth = cellWidth();
+		int cellHeight = cellHeight();
+		List<Point> keys = controller.getKeyLocations();
+		ReachabilityGraph.Route[] routes = controller.keyRoutesVisible() ? controller.getKeyRoutes() : null;
+
+		if (routes != null) {
+			g2.setStroke(new BasicStroke(2));
+			g2.setColor(KEY_ROUTE_COLOR);
+			for (ReachabilityGraph.Route route : routes) {
+				if (route == null)
+					continue;
+				int[] points = route.getWaypoints();
+				for (int i = 2; i < points.length; i += 2)
+					g2.drawLine(points[i - 1]*cellWidth + cellWidth/2, points[i - 2]*cellHeight + cellHeight/2,
+							points[i + 1]*cellWidth + cellWidth/2, points[i]*cellHeight + cellHeight/2);
+			}
+		}
+
+		int size = Math.max(6, Math.min(cellWidth, cellHeight));
+		for (int i = 0; i < keys.size(); i++) {
+			int x = keys.get(i).y*cellWidth + cellWidth/2;
+			int y = keys.get(i).x*cellHeight + cellHeight/2;
+			boolean unreachable = routes != null && i > 0 && routes[i] == null;
+			g2.setColor(unreachable ? Color.RED : KEY_ROUTE_COLOR);
+			g2.fillOval(x - size/2, y - size/2, size, size);
+			g2.setColor(Color.BLACK);
+			String label = Integer.toString(i + 1);
+			if (routes != null && i > 0)
+				label += routes[i] == null ? " unreachable" : " (" + routes[i].getLength() + ")";
+			g2.drawString(label, x + size/2 + 2, y + 4);
+		}
+	}
+
+	/** A half transparent, fully saturated color for a region ID */
+	private static Color regionColor(long region) {
+		long h = region * 0x9E3779B97F4A7C15L;
+		Color hue = Color.getHSBColor((h >>> 40) / (float)(1 << 24), 0.85f, 1f);
+		return new Color(hue.getRed(), hue.getGreen(), hue.getBlue(), 110);
+	}
+
+	/** Draws the downsampled summary of each shown layer, one scaled blit per layer for the whole area */
+	private void drawOverview(Graphics g, Rectangle area) {
+		for (int i = 0; i < controller.numLayers(); i++) {
+			Graphics2D g2 = layerGraphics(g, i);
+			if (g2 == null)
+				continue;
+			drawOverview(g2, overview(i).getImage(), area);
+			g2.dispose();
+		}
+	}
+
+	private void drawOverview(Graphics g, BufferedImage img, Rectangle area) {
+		int groupWidth = cellWidth() * OverviewGrid.FACTOR;
+		int groupHeight = cellHeight() * OverviewGrid.FACTOR;
+
+		int gc1 = firstCol(area) / OverviewGrid.FACTOR;
+		int gr1 = firstRow(area) / OverviewGrid.FACTOR;
+		int gc2 = Math.min(img.getWidth(), (lastCol(area) + OverviewGrid.FACTOR - 1) / OverviewGrid.FACTOR);
+		int gr2 = Math.min(img.getHeight(), (lastRow(area) + OverviewGrid.FACTOR - 1) / OverviewGrid.FACTOR);
+		if (gc1 >= gc2 || gr1 >= gr2)
+			return;
+		g.drawImage(img, gc1*groupWidth, gr1*groupHeight, gc2*groupWidth, gr2*groupHeight, gc1, gr1, gc2, gr2, null);
+	}
+
+	/** The summary of a layer, made and hooked up to the level the first time it's asked for */
+	private OverviewGrid overview(int layer) {
+		while (overviews.size() <= layer) {
+			OverviewGrid overview = new OverviewGrid(controller, tileCache, overviews.size());
+			controller.addLevelChangeListener(overview);
+			overviews.add(overview);
+		}
+		return overviews.get(layer);
+	}
+
+	/** The part of the canvas that needs painting: the clip intersected with what's scrolled into view */
+	private Rectangle paintArea(Graphics g) {
+		Rectangle area = getVisibleRect();
+		Rectangle clip = g.getClipBounds();
+		return clip == null ? area : area.intersection(clip);
+	}
+
+	/** First row that overlaps area */
+	private int firstRow(Rectangle area) {
+		return Math.max(0, area.y / cellHeight());
+	}
+
+	/** One past the last row that overlaps area */
+	private int lastRow(Rectangle area) {
+		return Math.min(controller.numRows(), (area.y + area.height + cellHeight() - 1) / cellHeight());
+	}
+
+	/** First column that overlaps area */
+	private int firstCol(Rectangle area) {
+		return Math.max(0, area.x / cellWidth());
+	}
+
+	/** One past the last column that overlaps area */
+	private int lastCol(Rectangle area) {
+		return Math.min(controller.numCols(), (area.x + area.width + cellWidth() - 1) / cellWidth());
+	}
+	
+	/** The cache of pre-scaled tile images this canvas draws from */
+	public ScaledTileCache getTileCache() {
+		return tileCache;
+	}
+
+	/** The tile images packed at the current cell size, which this canvas draws tiles from */
+	public TileAtlas getAtlas() {
+		return atlas;
+	}
+
+	/** Listener this canvas registered with the TileImageLoader */
+	public ChangeListener getImagesLoadedListener() {
+		return imagesLoaded;
+	}
+
+	/** Frame timings shown by the performance overlay */
+	public PerformanceStats getPerformanceStats() {
+		return stats;
+	}
+
+	/** The cache of baked layer chunks this canvas draws from */
+	public ChunkImageCache getChunkCache() {
+		return chunkCache;
+	}
+
+	/** Cell width in pixels */
+	private int cellWidth() {
+		return getWidth() / controller.numCols();
+	}
+
+	/** Cell height in pixels */
+	private int cellHeight() {
+		return getHeight() / controller.numRows();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,165 @@
+package view;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import controller.LevelEditorController;
+import model.ChunkedGrid;
+import model.LevelChangeListener;
+import model.LevelEditorModel;
+import model.TilePalette;
+
+/**
+ * Bakes chunks of each level layer into offscreen images at the current cell size so
+ * the canvas can draw a whole chunk with one blit instead of one draw per tile.  Every
+ * layer is baked separately, so the canvas can stack them with their own opacity, and
+ * editing one layer or hiding it leaves the others' baked chunks alone.
+ *
+ * Baked chunks are thrown away when the cells in them change or the zoom level changes,
+ * and all layers share one least-recently-used memory budget.  The budget in bytes can
+ * be set with the system property leveleditor.chunkCacheBytes.
+ */
+public class ChunkImageCache implements LevelChangeListener {
+
+	public static final long DEFAULT_BUDGET = 128L << 20;
+	public static final int MAX_CHUNK_PIXELS = 1024;		// Chunks bigger than this on screen aren't baked
+
+	private static final int CHUNK_ROW_MASK = 0xffffff;
+
+	private LevelEditorController controller;
+	private TileAtlas atlas;
+	private LinkedHashMap<Long, BufferedImage> baked;		// Layer and chunk coordinate -> image, in LRU order
+	private int cellWidth;									// Cell size the baked images were drawn at
+	private int cellHeight;
+	private long budget;
+	private long bytesUsed;
+	private long hits;
+	private long misses;
+
+	public ChunkImageCache(LevelEditorController controller, TileAtlas atlas) {
+		this.controller = controller;
+		this.atlas = atlas;
+		budget = Long.getLong("leveleditor.chunkCacheBytes", DEFAULT_BUDGET);
+		baked = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true);
+	}
+
+	/** Whether chunks can be baked at this cell size */
+	public boolean canBake(int cellWidth, int cellHeight) {
+		return cellWidth * ChunkedGrid.CHUNK_SIZE <= MAX_CHUNK_PIXELS && cellHeight * ChunkedGrid.CHUNK_SIZE <= MAX_CHUNK_PIXELS;
+	}
+
+	/** Returns the baked image of a layer's chunk at the given cell size, baking it if
+	 *  needed.  Changing the cell size throws away everything baked at the old size. */
+	public Image get(int layer, int chunkRow, int chunkCol, int cellWidth, int cellHeight) {
+		if (cellWidth != this.cellWidth || cellHeight != this.cellHeight) {
+			clear();
+			this.cellWidth = cellWidth;
+			this.cellHeight = cellHeight;
+		}
+		Long key = key(layer, chunkRow, chunkCol);
+		BufferedImage img = baked.get(key);
+		if (img != null) {
+			hits++;
+			return img;
+		}
+		misses++;
+
+		img = bake(layer, chunkRow, chunkCol);
+		baked.put(key, img);
+		bytesUsed += sizeOf(img);
+		evict();
+		return img;
+	}
+
+	/** Drops the background's baked chunks that overlap the changed cells */
+	@Override
+	public void cellsChanged(int row, int col, int numRows, int numCols) {
+		layerCellsChanged(LevelEditorModel.BACKGROUND, row, col, numRows, numCols);
+	}
+
+	/** Drops a layer's baked chunks that overlap the changed cells */
+	@Override
+	public void layerCellsChanged(int layer, int row, int col, int numRows, int numCols) {
+		if (baked.isEmpty())
+			return;
+		long numChunks = (long)((numRows >> ChunkedGrid.CHUNK_SHIFT) + 2) * ((numCols >> ChunkedGrid.CHUNK_SHIFT) + 2);
+		if (numChunks > baked.size()) {
+			// Cheaper to check each baked chunk than each chunk in the changed area
+			Iterator<Map.Entry<Long, BufferedImage>> it = baked.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Long, BufferedImage> entry = it.next();
+				int cr = (int)(entry.getKey() >> 32) & CHUNK_ROW_MASK;
+				int cc = (int)(long)entry.getKey();
+				if ((int)(entry.getKey() >>> 56) == layer && cr >= row >> ChunkedGrid.CHUNK_SHIFT && cr <= (row + numRows - 1) >> ChunkedGrid.CHUNK_SHIFT
+						&& cc >= col >> ChunkedGrid.CHUNK_SHIFT && cc <= (col + numCols - 1) >> ChunkedGrid.CHUNK_SHIFT) {
+					bytesUsed -= sizeOf(entry.getValue());
+					it.remove();
+				}
+			}
+			return;
+		}
+		for (int cr = row >> ChunkedGrid.CHUNK_SHIFT; cr <= (row + numRows - 1) >> ChunkedGrid.CHUNK_SHIFT; cr++) {
+			for (int cc = col >> ChunkedGrid.CHUNK_SHIFT; cc <= (col + numCols - 1) >> ChunkedGrid.CHUNK_SHIFT; cc++) {
+				BufferedImage img = baked.remove(key(layer, cr, cc));
+				if (img != null)
+					bytesUsed -= sizeOf(img);
+			}
+		}
+	}
+
+	public void clear() {
+		baked.clear();
+		bytesUsed = 0;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	/** Draws every tile of one of a layer's chunks into a new image */
+	private BufferedImage bake(int layer, int chunkRow, int chunkCol) {
+		BufferedImage img = ScaledTileCache.createCompatibleImage(cellWidth * ChunkedGrid.CHUNK_SIZE, cellHeight * ChunkedGrid.CHUNK_SIZE);
+		Graphics2D g2 = img.createGraphics();
+		int firstRow = chunkRow << ChunkedGrid.CHUNK_SHIFT;
+		int firstCol = chunkCol << ChunkedGrid.CHUNK_SHIFT;
+		int lastRow = Math.min(controller.numRows(), firstRow + ChunkedGrid.CHUNK_SIZE);
+		int lastCol = Math.min(controller.numCols(), firstCol + ChunkedGrid.CHUNK_SIZE);
+		for (int r = firstRow; r < lastRow; r++) {
+			for (int c = firstCol; c < lastCol; c++) {
+				short id = controller.getTileIdAt(layer, r, c);
+				if (id != TilePalette.EMPTY)
+					atlas.draw(g2, id, (c - firstCol) * cellWidth, (r - firstRow) * cellHeight, cellWidth, cellHeight);
+			}
+		}
+		g2.dispose();
+		return img;
+	}
+
+	private void evict() {
+		Iterator<BufferedImage> it = baked.values().iterator();
+		while (bytesUsed > budget && it.hasNext()) {
+			bytesUsed -= sizeOf(it.next());
+			it.remove();
+		}
+	}
+
+	/** The layer goes in the top 8 bits, above a 24 bit chunk row */
+	private static Long key(int layer, int chunkRow, int chunkCol) {
+		return ((long)(layer << 24 | chunkRow & CHUNK_ROW_MASK) << 32) | (chunkCol & 0xffffffffL);
+	}
+
+	private static long sizeOf(BufferedImage img) {
+		return 4L * img.getWidth() * img.getHeight();
+	}
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package view;
 import java.awt.Component;
 import java.awt.Font;
 import java.awt.Image;
+import java.util.Arrays;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
@@ -9,7 +10,7 @@ import javax.swing.JList;
 import javax.swing.ListCellRenderer;
 
 /**
- * ComboBoxRender allows JComboBoxes to draw an ImageIcon with associated text.
+ * ComboBoxRender allows JComboBoxes and JLists to draw an ImageIcon with associated text.
  * Code modified from Oracle tutorial by Eric Ferrante.
  * 
  * How to use this renderer:
@@ -25,11 +26,15 @@ import javax.swing.ListCellRenderer;
  *    can set the description of an ImageIcon using the setDescription method. See
  *    ImageIcon API.
  * 
- * 3. Create a new ComboBoxRenderer and pass in your array of ImageIcons:
-        ComboBoxRenderer renderer = new ComboBoxRenderer(iconList);
+ * 3. Create a new ComboBoxRenderer and pass in your array of ImageIcons and the
+ *    TilePalette ID of each:
+        ComboBoxRenderer renderer = new ComboBoxRenderer(iconList, tileIds);
  * 
  * 4. Attached the renderer to the JComboBox using setRenderer:
  *      myComboBox.setRenderer(renderer);
+ *
+ * Each icon is scaled to THUMBNAIL_SIZE once and kept, so scrolling through the list
+ * doesn't rescale anything.  Call clearThumbnails() when the images change.
  * 
  * Source:
  * http://docs.oracle.com/javase/tutorial/uiswing/components/combobox.html
@@ -39,11 +44,18 @@ import javax.swing.ListCellRenderer;
 public class ComboBoxRenderer extends JLabel implements ListCellRenderer<Object> {
 
 	private static final long serialVersionUID = 1135802729975729492L;
+
+	public static final int THUMBNAIL_SIZE = 32;
+
 	private Font uhOhFont;
 	private ImageIcon[] images;
+	private short[] tileIds;			// TilePalette ID of each entry in images
+	private ImageIcon[] thumbnails;		// Scaled copy of each entry in images, built when first drawn
 
-	public ComboBoxRenderer(ImageIcon[] images) {
+	public ComboBoxRenderer(ImageIcon[] images, short[] tileIds) {
 		this.images = images;
+		this.tileIds = tileIds;
+		thumbnails = new ImageIcon[images.length];
 		setOpaque(false);
 		setHorizontalAlignment(LEFT);
 		setVerticalAlignment(CENTER);
@@ -69,9 +81,8 @@ public class ComboBoxRenderer extends JLabel implements ListCellRenderer<Object>
 			}
 	
 			// Set the icon and text. If icon was null, say so.
-			ImageIcon icon = new ImageIcon(images[selectedIndex].getImage().getScaledInstance(32, 32, Image.SCALE_DEFAULT));
 			if (images[selectedIndex] != null) {
-				setIcon(icon);
+				setIcon(getThumbnail(selectedIndex));
 				setText(images[selectedIndex].getDescription());
 				setFont(list.getFont());
 			} else {
@@ -81,6 +92,20 @@ public class ComboBoxRenderer extends JLabel implements ListCellRenderer<Object>
 		return this;
 	}
 
+	/** Forgets the scaled icons, e.g. after tile images finished loading */
+	public void clearThumbnails() {
+		Arrays.fill(thumbnails, null);
+	}
+
+	/** The scaled icon of entry index, built the first time it's asked for */
+	ImageIcon getThumbnail(int index) {
+		if (thumbnails[index] == null) {
+			Image img = ScaledTileCache.getShared().get(tileIds[index], THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+			thumbnails[index] = new ImageIcon(img != null ? img : images[index].getImage());
+		}
+		return thumbnails[index];
+	}
+
 	// Set the font and text when no image was found.
 	protected void setUhOhText(String uhOhText, Font normalFont) {
 		if (uhOhFont == null) { // lazily create this font
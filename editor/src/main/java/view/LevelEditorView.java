@@ -3,6 +3,8 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.io.File;
 import java.io.FilenameFilter;
@@ -11,7 +13,7 @@ import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
-import javax.swing.JComboBox;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -21,55 +23,76 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JRadioButton;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.border.LineBorder;
-import javax.swing.border.TitledBorder;
 
 import controller.LevelEditorController;
 
+
 public class LevelEditorView extends JFrame {
 
 	private static final long serialVersionUID = 6652774452907126316L;
 	
-	public static final int MIN_CELL_WIDTH = 5;		// Minimum pixel width of cells when zooming in
+	public static final int MIN_CELL_WIDTH = 1;		// Minimum pixel width of cells when zooming out
 
-	public JComboBox<Integer[]> foregroundBrush;	// Left-click ImageIcon selection
-	public JComboBox<Integer[]> backgroundBrush;	// Right-click ImageIcon selection
-	public Integer[] intArray;						// Used to build the JComboBoxes for tile selection
+	public TilePalettePanel tilePalette;			// Left-click and right-click ImageIcon selection
 	public File[] listOfFiles;						// List of image Files to load
-	public ImageIcon[] images;						// List of ImageIcons to display in the JComboBoxes
+	public ImageIcon[] images;						// List of ImageIcons to display in the tile palette
+	public short[] tileIds;							// TilePalette ID of each entry in images
 	public JMenuItem newEditorMenuItem;				// MenuItem for opening an additional window
 	public JMenuItem loadMenuItem;					// MenuItem for loading a file
 	public JMenuItem saveMenuItem;					// MenuItem for saving a file
+	public JMenuItem exportAtlasMenuItem;			// MenuItem for exporting the tiles as a texture atlas
+	public JMenuItem undoMenuItem;					// MenuItem for undoing the last edit
+	public JMenuItem redoMenuItem;					// MenuItem for redoing the last undone edit
+	public JMenuItem fillSelectionMenuItem;			// MenuItem for filling the selection with the left-click tile
+	public JMenuItem replaceTileMenuItem;			// MenuItem for replacing the right-click tile with the left-click tile
+	public JMenuItem rotateMenuItem;				// MenuItem for rotating the selection or clipboard
+	public JMenuItem flipHorizontalMenuItem;		// MenuItem for mirroring the selection or clipboard left to right
+	public JMenuItem flipVerticalMenuItem;			// MenuItem for mirroring the selection or clipboard top to bottom
 	public JMenuItem gridSizeMenuItem;				// MenuItem for changing the grid size
 	public JMenuItem zoomInMenuItem;				// MenuItem for zooming in
 	public JMenuItem zoomOutMenuItem;				// MenuItem for zooming out
+	public JCheckBoxMenuItem walkableRegionsMenuItem;	// MenuItem for coloring cells by the walkable region they're in
+	public JCheckBoxMenuItem keyRoutesMenuItem;		// MenuItem for showing routes from the first key location to the others
+	public JCheckBoxMenuItem performanceOverlayMenuItem;	// MenuItem for showing frame times and cache hit rates on the canvas
+	public JMenu layersMenu;						// Menu for picking the layer to edit and the layers to show
+	public JRadioButtonMenuItem[] editLayerMenuItems;	// MenuItems for painting into each layer, bottom layer first
+	public JCheckBoxMenuItem[] showLayerMenuItems;	// MenuItems for showing or hiding each layer, bottom layer first
+	public JMenuItem layerOpacityMenuItem;			// MenuItem for changing how opaque the edited layer is drawn
 	public JPopupMenu popUpMenu;					// Menu that pops up when Ctrl+clicking a cell
 	public JRadioButton brushButton;				// Paint tool button
 	public JRadioButton eraserButton;				// Eraser tool button
+	public JRadioButton fillButton;					// Fill tool button
 	public JRadioButton selectionButton;			// Select tool button
 	public JRadioButton moveButton;					// Move tool button
 	public JButton copyButton;						// Copy tool button
 	public JButton pasteButton;						// Paste tool button
 	public JCheckBox tilePropertyWalkable;			// Tile property: walkable
+	public JCheckBox tilePropertyKeyLocation;		// Tile property: has to be reachable from the other key locations
 
 	private JPanel contentPane;						// A custom content pane used for this JPanel
 	private CanvasPanel canvasPanel;				// Where the user draws the level
 	private JPanel canvasParent;					// This is what the canvasPanel sits inside of
 	private JScrollPane scrollPane;					// Scrollbars attached to canvasParent
+	private ChangeListener imagesLoaded;			// Hears about tile images finishing loading
+	private ActionListener layerListener;			// Hears about the layer MenuItems, which are rebuilt per level
 
 	/**
 	 * Create the frame.
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public LevelEditorView(LevelEditorController controller) {
 				
 		// Set up window and content pane properties
 		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		setTitle("Level Editor");
-		setBounds(300, 100, 620, 670);
-		setMinimumSize(new Dimension(620, 670));
+		setBounds(300, 100, 800, 670);
+		setMinimumSize(new Dimension(800, 670));
 		contentPane = new JPanel();
 		contentPane.setLayout(new BorderLayout());
 		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
@@ -93,39 +116,22 @@ public class LevelEditorView extends JFrame {
 		}
 		
 		
-		// Create an index array to be used by the JComboBox
-        intArray = new Integer[listOfFiles.length];
-
-        // Load the images and initialize the index array
+        // Start loading the images.  They're decoded in the background and show up as
+        // they finish (see TileImageLoader).
         images = new ImageIcon[listOfFiles.length];
+        tileIds = new short[listOfFiles.length];
+        TileImageLoader loader = TileImageLoader.getShared();
         for (int i = 0; i < listOfFiles.length; i++) {
-            intArray[i] = new Integer(i);
-            images[i] = createImageIcon("images/" + listOfFiles[i].getName());
+            tileIds[i] = loader.load(listOfFiles[i]);
+            images[i] = loader.getIcon(tileIds[i]);
             images[i].setDescription(listOfFiles[i].getName().substring(0, listOfFiles[i].getName().lastIndexOf('.')));
         }
 
         // Create GUI elements
 
-        // A custom renderer that draws labeled ImageIcons
-        ComboBoxRenderer renderer = new ComboBoxRenderer(images);
-        
-        // A drop down that selects what ImageIcon to paint when left-clicking
-        foregroundBrush = new JComboBox(intArray);
-        foregroundBrush.setRenderer(renderer);
-        foregroundBrush.setMaximumRowCount(10);
-        foregroundBrush.setBorder(new TitledBorder("Left click"));
-
-        // A drop down that selects what ImageIcon to paint when right-clicking
-        backgroundBrush = new JComboBox(intArray);
-        backgroundBrush.setRenderer(renderer);
-        backgroundBrush.setMaximumRowCount(10);
-        backgroundBrush.setBorder(new TitledBorder("Right click"));
-
-        // A JPanel to put the left-click and right-click dropdowns into
-        JPanel brushPanel = new JPanel();
-        brushPanel.setBackground(Color.GRAY);
-        brushPanel.add(foregroundBrush);
-        brushPanel.add(backgroundBrush);
+        // A searchable list that selects what ImageIcons to paint when left-clicking
+        // and right-clicking
+        tilePalette = new TilePalettePanel(images, tileIds);
         
         // Where the level is painted
 		canvasPanel = new CanvasPanel(controller);
@@ -149,25 +155,31 @@ public class LevelEditorView extends JFrame {
 		ImageIcon brushUnselected = createImageIcon("resources/" + "brush_unselected.png");
 		ImageIcon eraserSelected = createImageIcon("resources/" + "eraser_selected.png");
 		ImageIcon eraserUnselected = createImageIcon("resources/" + "eraser_unselected.png");
+		ImageIcon fillSelected = createImageIcon("resources/" + "fill_selected.png");
+		ImageIcon fillUnselected = createImageIcon("resources/" + "fill_unselected.png");
 		ImageIcon selectionSselected = createImageIcon("resources/" + "selection_selected.png");
 		ImageIcon selectionUnselected = createImageIcon("resources/" + "selection_unselected.png");
 		ImageIcon moveSelected = createImageIcon("resources/" + "move_selection_selected.png");
 		ImageIcon moveUnselected = createImageIcon("resources/" + "move_selection_unselected.png");
 		brushButton = new JRadioButton(brushUnselected, true);
 		eraserButton = new JRadioButton(eraserUnselected, false);
+		fillButton = new JRadioButton(fillUnselected, false);
 		selectionButton = new JRadioButton(selectionUnselected, false);
 		moveButton = new JRadioButton(moveUnselected, false);
 		brushButton.setSelectedIcon(brushSelected);
 		eraserButton.setSelectedIcon(eraserSelected);
+		fillButton.setSelectedIcon(fillSelected);
 		selectionButton.setSelectedIcon(selectionSselected);
 		moveButton.setSelectedIcon(moveSelected);
 		ButtonGroup bGroup = new ButtonGroup();
 		bGroup.add(brushButton);
 		bGroup.add(eraserButton);
+		bGroup.add(fillButton);
 		bGroup.add(selectionButton);
 		bGroup.add(moveButton);
 		toolbarPanel.add(brushButton);
 		toolbarPanel.add(eraserButton);
+		toolbarPanel.add(fillButton);
 		toolbarPanel.add(selectionButton);
 		toolbarPanel.add(moveButton);
 
@@ -179,20 +191,56 @@ public class LevelEditorView extends JFrame {
 		// Menubar
 		JMenuBar menubar = new JMenuBar();
 		JMenu fileMenu = new JMenu("File");
+		JMenu editMenu = new JMenu("Edit");
 		JMenu optionsMenu = new JMenu("Options");
 		newEditorMenuItem = new JMenuItem("New Window", 'N');
 		loadMenuItem = new JMenuItem("Load", 'L');
 		saveMenuItem = new JMenuItem("Save", 'S');
+		exportAtlasMenuItem = new JMenuItem("Export Tile Atlas", 'E');
+		undoMenuItem = new JMenuItem("Undo", 'U');
+		undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+		redoMenuItem = new JMenuItem("Redo", 'R');
+		redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+		fillSelectionMenuItem = new JMenuItem("Fill Selection", 'F');
+		replaceTileMenuItem = new JMenuItem("Replace Right-Click Tile With Left-Click Tile", 'P');
+		rotateMenuItem = new JMenuItem("Rotate 90\u00b0", 'T');
+		rotateMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK));
+		flipHorizontalMenuItem = new JMenuItem("Flip Horizontal", 'H');
+		flipVerticalMenuItem = new JMenuItem("Flip Vertical", 'V');
 		gridSizeMenuItem = new JMenuItem("Change Grid Size", 'g');
 		zoomInMenuItem = new JMenuItem("Zoom In (mouse wheel)", 'i');
 		zoomOutMenuItem = new JMenuItem("Zoom Out (mouse wheel)", 'o');
+		walkableRegionsMenuItem = new JCheckBoxMenuItem("Show Walkable Regions");
+		walkableRegionsMenuItem.setMnemonic('w');
+		keyRoutesMenuItem = new JCheckBoxMenuItem("Show Key Location Routes");
+		keyRoutesMenuItem.setMnemonic('k');
+		performanceOverlayMenuItem = new JCheckBoxMenuItem("Show Performance Overlay");
+		performanceOverlayMenuItem.setMnemonic('p');
+		layersMenu = new JMenu("Layers");
+		layerOpacityMenuItem = new JMenuItem("Layer Opacity...", 'O');
+		setLayerNames(new String[0]);
 		fileMenu.add(newEditorMenuItem);
 		fileMenu.add(loadMenuItem);
 		fileMenu.add(saveMenuItem);
+		fileMenu.add(exportAtlasMenuItem);
+		editMenu.add(undoMenuItem);
+		editMenu.add(redoMenuItem);
+		editMenu.addSeparator();
+		editMenu.add(fillSelectionMenuItem);
+		editMenu.add(replaceTileMenuItem);
+		editMenu.add(rotateMenuItem);
+		editMenu.add(flipHorizontalMenuItem);
+		editMenu.add(flipVerticalMenuItem);
 		optionsMenu.add(gridSizeMenuItem);
 		optionsMenu.add(zoomInMenuItem);
 		optionsMenu.add(zoomOutMenuItem);
+		optionsMenu.addSeparator();
+		optionsMenu.add(walkableRegionsMenuItem);
+		optionsMenu.add(keyRoutesMenuItem);
+		optionsMenu.add(performanceOverlayMenuItem);
 		menubar.add(fileMenu);
+		menubar.add(editMenu);
+		menubar.add(layersMenu);
 		menubar.add(optionsMenu);
 
 		// Popup menu (when ctrl+clicking a cell)
@@ -201,11 +249,22 @@ public class LevelEditorView extends JFrame {
 		popUpMenu.addSeparator();
 		tilePropertyWalkable = new JCheckBox("Walkable", true);
 		popUpMenu.add(tilePropertyWalkable);
+		tilePropertyKeyLocation = new JCheckBox("Key Location", false);
+		popUpMenu.add(tilePropertyKeyLocation);
 		
 		// Add GUI components to our content pane
-		contentPane.add(brushPanel, BorderLayout.PAGE_START);
+		contentPane.add(tilePalette, BorderLayout.LINE_END);
 		contentPane.add(scrollPane, BorderLayout.CENTER);
 		contentPane.add(toolbarPanel, BorderLayout.LINE_START);
+		// Redraw the tile palette as its images finish loading
+		imagesLoaded = new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				tilePalette.imagesChanged();
+			}
+		};
+		loader.addChangeListener(imagesLoaded);
+
 		this.setJMenuBar(menubar);
 		this.setContentPane(contentPane);
 		this.setVisible(true);
@@ -222,9 +281,17 @@ public class LevelEditorView extends JFrame {
 		canvasParent.addMouseWheelListener(m);
 	}
 	
+	@Override
+	public void dispose() {
+		TileImageLoader.getShared().removeChangeListener(imagesLoaded);
+		TileImageLoader.getShared().removeChangeListener(canvasPanel.getImagesLoadedListener());
+		super.dispose();
+	}
+
 	public void addMyButtonListeners(ActionListener b) {
 		brushButton.addActionListener(b);
 		eraserButton.addActionListener(b);
+		fillButton.addActionListener(b);
 		selectionButton.addActionListener(b);
 		moveButton.addActionListener(b);
 		copyButton.addActionListener(b);
@@ -235,13 +302,61 @@ public class LevelEditorView extends JFrame {
 		newEditorMenuItem.addActionListener(m);
 		loadMenuItem.addActionListener(m);
 		saveMenuItem.addActionListener(m);
+		exportAtlasMenuItem.addActionListener(m);
+		undoMenuItem.addActionListener(m);
+		redoMenuItem.addActionListener(m);
+		fillSelectionMenuItem.addActionListener(m);
+		replaceTileMenuItem.addActionListener(m);
+		rotateMenuItem.addActionListener(m);
+		flipHorizontalMenuItem.addActionListener(m);
+		flipVerticalMenuItem.addActionListener(m);
+		walkableRegionsMenuItem.addActionListener(m);
+		keyRoutesMenuItem.addActionListener(m);
+		performanceOverlayMenuItem.addActionListener(m);
 		gridSizeMenuItem.addActionListener(m);
 		zoomInMenuItem.addActionListener(m);
 		zoomOutMenuItem.addActionListener(m);
 	}
 	
+	/** Rebuilds the Layers menu for layers with these names, bottom layer first.  Every
+	 *  layer starts out shown and the first one is the one being edited. */
+	public void setLayerNames(String[] names) {
+		layersMenu.removeAll();
+		ButtonGroup group = new ButtonGroup();
+		editLayerMenuItems = new JRadioButtonMenuItem[names.length];
+		showLayerMenuItems = new JCheckBoxMenuItem[names.length];
+		for (int i = 0; i < names.length; i++) {
+			editLayerMenuItems[i] = new JRadioButtonMenuItem("Edit " + names[i], i == 0);
+			group.add(editLayerMenuItems[i]);
+			layersMenu.add(editLayerMenuItems[i]);
+		}
+		layersMenu.addSeparator();
+		for (int i = 0; i < names.length; i++) {
+			showLayerMenuItems[i] = new JCheckBoxMenuItem("Show " + names[i], true);
+			layersMenu.add(showLayerMenuItems[i]);
+		}
+		layersMenu.addSeparator();
+		layersMenu.add(layerOpacityMenuItem);
+		if (layerListener != null)
+			addLayerItemListeners(layerListener);
+	}
+
+	public void addMyLayerListeners(ActionListener l) {
+		layerListener = l;
+		layerOpacityMenuItem.addActionListener(l);
+		addLayerItemListeners(l);
+	}
+
+	private void addLayerItemListeners(ActionListener l) {
+		for (JRadioButtonMenuItem item : editLayerMenuItems)
+			item.addActionListener(l);
+		for (JCheckBoxMenuItem item : showLayerMenuItems)
+			item.addActionListener(l);
+	}
+
 	public void addMyPopUpMenuListeners(ActionListener a) {
-		tilePropertyWalkable.addActionListener(a);		
+		tilePropertyWalkable.addActionListener(a);
+		tilePropertyKeyLocation.addActionListener(a);		
 	}
 	
     /** Returns an ImageIcon, or null if the path was invalid. */
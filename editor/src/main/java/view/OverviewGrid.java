@@ -0,0 +1,108 @@
+package view;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import controller.LevelEditorController;
+import model.ChunkedGrid;
+import model.LevelChangeListener;
+import model.LevelEditorModel;
+
+/**
+ * A downsampled summary of one level layer used when the canvas is zoomed very far
+ * out.  Each pixel of the summary image is the average color of a FACTOR x FACTOR group
+ * of cells, so the whole visible level can be drawn with a single scaled blit.
+ *
+ * The summary is built the first time it's needed and after that only the groups that
+ * overlap changed cells are recomputed.
+ */
+public class OverviewGrid implements LevelChangeListener {
+
+	public static final int FACTOR = 4;		// Cells along one side of a summary pixel
+
+	private LevelEditorController controller;
+	private ScaledTileCache tileCache;
+	private int layer;						// Layer summarized
+	private BufferedImage image;			// One pixel per group of cells
+	private int[] pixels;					// image's backing array, non-premultiplied ARGB
+	private int numRows;					// Level size the summary was built for
+	private int numCols;
+	private boolean stale;					// Rebuild everything next time it's needed
+
+	public OverviewGrid(LevelEditorController controller, ScaledTileCache tileCache, int layer) {
+		this.controller = controller;
+		this.tileCache = tileCache;
+		this.layer = layer;
+		stale = true;
+	}
+
+	/** Returns the summary image, bringing it up to date first if needed */
+	public BufferedImage getImage() {
+		if (stale || numRows != controller.numRows() || numCols != controller.numCols())
+			rebuild();
+		return image;
+	}
+
+	@Override
+	public void cellsChanged(int row, int col, int numRows, int numCols) {
+		layerCellsChanged(LevelEditorModel.BACKGROUND, row, col, numRows, numCols);
+	}
+
+	/** Recomputes just the summary pixels that overlap the changed cells, if they're in this layer */
+	@Override
+	public void layerCellsChanged(int layer, int row, int col, int numRows, int numCols) {
+		if (layer != this.layer || stale || image == null)
+			return;
+		// Resized, or so much changed (e.g. a new level was loaded) that it's not worth doing piecemeal
+		if (this.numRows != controller.numRows() || this.numCols != controller.numCols() || (long)numRows * numCols * 2 >= (long)this.numRows * this.numCols) {
+			stale = true;
+			return;
+		}
+		int lastGroupRow = Math.min(image.getHeight(), (row + numRows + FACTOR - 1) / FACTOR);
+		int lastGroupCol = Math.min(image.getWidth(), (col + numCols + FACTOR - 1) / FACTOR);
+		for (int gr = Math.max(0, row / FACTOR); gr < lastGroupRow; gr++)
+			for (int gc = Math.max(0, col / FACTOR); gc < lastGroupCol; gc++)
+				pixels[gr * image.getWidth() + gc] = averageOf(gr, gc);
+	}
+
+	/** Forget the summary, e.g. after tile images changed */
+	public void invalidate() {
+		stale = true;
+	}
+
+	private void rebuild() {
+		numRows = controller.numRows();
+		numCols = controller.numCols();
+		int width = Math.max(1, (numCols + FACTOR - 1) / FACTOR);
+		int height = Math.max(1, (numRows + FACTOR - 1) / FACTOR);
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		for (int gr = 0; gr < height; gr++) {
+			for (int gc = 0; gc < width; gc++) {
+				// Whole chunks with no tiles stay transparent
+				if (controller.chunkHasTiles(layer, gr * FACTOR >> ChunkedGrid.CHUNK_SHIFT, gc * FACTOR >> ChunkedGrid.CHUNK_SHIFT))
+					pixels[gr * width + gc] = averageOf(gr, gc);
+			}
+		}
+		stale = false;
+	}
+
+	/** Alpha-weighted average of the tile colors in one group of cells */
+	private int averageOf(int groupRow, int groupCol) {
+		long a = 0, r = 0, g = 0, b = 0;
+		int lastRow = Math.min(numRows, (groupRow + 1) * FACTOR);
+		int lastCol = Math.min(numCols, (groupCol + 1) * FACTOR);
+		for (int row = groupRow * FACTOR; row < lastRow; row++) {
+			for (int col = groupCol * FACTOR; col < lastCol; col++) {
+				int argb = tileCache.getAverageColor(controller.getTileIdAt(layer, row, col));
+				int alpha = argb >>> 24;
+				a += alpha;
+				r += alpha * ((argb >> 16) & 0xff);
+				g += alpha * ((argb >> 8) & 0xff);
+				b += alpha * (argb & 0xff);
+			}
+		}
+		if (a == 0)
+			return 0;
+		return (int)(a / (FACTOR * FACTOR)) << 24 | (int)(r / a) << 16 | (int)(g / a) << 8 | (int)(b / a);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package view;
+import java.util.Arrays;
+
+/**
+ * Frame timings and cache counters behind the canvas's performance overlay.  Keeps the
+ * last FRAMES frames, and the cache hit rates seen between the last two calls to
+ * sampleCaches().  Only meant to be used from the Swing event thread.
+ */
+public class PerformanceStats {
+
+	public static final int FRAMES = 256;
+
+	private static final long SECOND = 1_000_000_000L;
+
+	private long[] frameTimes;			// How long each frame took to paint, in ns, as a ring
+	private long[] frameEnds;			// System.nanoTime() at the end of each frame
+	private int numFrames;
+	private int next;
+	private int lastCells;				// Cells inside the area painted by the last frame
+
+	private long tileHits;				// Cache counters when last sampled
+	private long tileMisses;
+	private long chunkHits;
+	private long chunkMisses;
+	private double tileHitRate;			// Hit rates between the last two samples, -1 with no lookups
+	private double chunkHitRate;
+
+	public PerformanceStats() {
+		frameTimes = new long[FRAMES];
+		frameEnds = new long[FRAMES];
+		tileHitRate = -1;
+		chunkHitRate = -1;
+	}
+
+	/** Records a frame that took nanos to paint and covered cells cells */
+	public void frameDrawn(long nanos, int cells) {
+		frameTimes[next] = nanos;
+		frameEnds[next] = System.nanoTime();
+		next = (next + 1) % FRAMES;
+		numFrames = Math.min(numFrames + 1, FRAMES);
+		lastCells = cells;
+	}
+
+	/** The frame time in milliseconds that fraction (0 to 1) of the recent frames were at
+	 *  or under, or 0 before the first frame */
+	public double percentile(double fraction) {
+		if (numFrames == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(frameTimes, numFrames);
+		Arrays.sort(sorted);
+		int i = (int)Math.ceil(fraction * numFrames) - 1;
+		return sorted[Math.max(0, Math.min(numFrames - 1, i))] / 1e6;
+	}
+
+	/** Frames finished in the last second */
+	public int framesPerSecond() {
+		long since = System.nanoTime() - SECOND;
+		int count = 0;
+		for (int i = 0; i < numFrames; i++)
+			if (frameEnds[i] - since > 0)
+				count++;
+		return count;
+	}
+
+	public int getLastCells() {
+		return lastCells;
+	}
+
+	/** Works out the hit rates since the last call from the caches' running totals */
+	public void sampleCaches(long tileHits, long tileMisses, long chunkHits, long chunkMisses) {
+		tileHitRate = hitRate(tileHits - this.tileHits, tileMisses - this.tileMisses);
+		chunkHitRate = hitRate(chunkHits - this.chunkHits, chunkMisses - this.chunkMisses);
+		this.tileHits = tileHits;
+		this.tileMisses = tileMisses;
+		this.chunkHits = chunkHits;
+		this.chunkMisses = chunkMisses;
+	}
+
+	/** ScaledTileCache hit rate from 0 to 1, or -1 if there were no lookups */
+	public double getTileHitRate() {
+		return tileHitRate;
+	}
+
+	/** ChunkImageCache hit rate from 0 to 1, or -1 if there were no lookups */
+	public double getChunkHitRate() {
+		return chunkHitRate;
+	}
+
+	private static double hitRate(long hits, long misses) {
+		// A cache that was cleared counts from zero again
+		if (hits < 0 || misses < 0 || hits + misses == 0)
+			return -1;
+		return (double)hits / (hits + misses);
+	}
+}
@@ -0,0 +1,202 @@
+package view;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import model.TilePalette;
+
+/**
+ * Keeps copies of the tile images already scaled to the size they're drawn at, so the
+ * canvas can blit them 1:1 instead of having Java2D rescale every tile on every frame.
+ *
+ * Scaled copies are built from a mipmap chain (the tile image halved over and over) so
+ * that small zoom levels still look smooth, and they're kept in least-recently-used order
+ * under a memory budget.  The budget in bytes can be set with the system property
+ * leveleditor.tileCacheBytes.  Only meant to be used from the Swing event thread.
+ */
+public class ScaledTileCache {
+
+	public static final long DEFAULT_BUDGET = 64L << 20;
+
+	private static final ScaledTileCache shared = new ScaledTileCache(Long.getLong("leveleditor.tileCacheBytes", DEFAULT_BUDGET));
+
+	private LinkedHashMap<Long, BufferedImage> scaled;		// (tile ID, width, height) -> scaled image, in LRU order
+	private HashMap<Short, BufferedImage[]> mipmaps;		// Tile ID -> full size image followed by each halving
+	private int[] averageColors;							// Tile ID -> ARGB average color, 0 if not computed yet
+	private long budget;
+	private long bytesUsed;
+	private long hits;
+	private long misses;
+
+	public ScaledTileCache(long budget) {
+		this.budget = budget;
+		scaled = new LinkedHashMap<Long, BufferedImage>(256, 0.75f, true);
+		mipmaps = new HashMap<Short, BufferedImage[]>();
+		averageColors = new int[0];
+	}
+
+	/** The cache shared by every canvas (tile IDs are the same in every window) */
+	public static ScaledTileCache getShared() {
+		return shared;
+	}
+
+	/** Returns the tile's image scaled to width x height, or null for an empty cell */
+	public Image get(short id, int width, int height) {
+		if (id == TilePalette.EMPTY || width <= 0 || height <= 0)
+			return null;
+		Long key = ((long)id << 32) | ((long)(width & 0xffff) << 16) | (height & 0xffff);
+		BufferedImage img = scaled.get(key);
+		if (img != null) {
+			hits++;
+			return img;
+		}
+		misses++;
+		TileImageLoader.getShared().needSize(id, width, height);
+
+		BufferedImage[] chain = getMipmaps(id);
+		if (chain == null)
+			return TilePalette.getShared().getImage(id);	// Not decoded yet, let Java2D deal with it
+
+		// Start from the smallest mipmap that's still at least as big as the target
+		BufferedImage src = chain[0];
+		for (BufferedImage level : chain) {
+			if (level.getWidth() < width || level.getHeight() < height)
+				break;
+			src = level;
+		}
+		img = scale(src, width, height);
+
+		scaled.put(key, img);
+		bytesUsed += sizeOf(img);
+		evict();
+		return img;
+	}
+
+	/** Returns the average color of a tile as non-premultiplied ARGB, or 0 (fully
+	 *  transparent) for an empty cell or a tile whose image isn't ready.  This is the
+	 *  1x1 level at the bottom of the tile's mipmap chain. */
+	public int getAverageColor(short id) {
+		if (id == TilePalette.EMPTY)
+			return 0;
+		if (id < averageColors.length && averageColors[id] != 0)
+			return averageColors[id];
+		BufferedImage[] chain = getMipmaps(id);
+		if (chain == null)
+			return 0;
+		if (id >= averageColors.length)
+			averageColors = Arrays.copyOf(averageColors, Math.max(id + 1, averageColors.length * 2));
+		averageColors[id] = chain[chain.length - 1].getRGB(0, 0);
+		return averageColors[id];
+	}
+
+	/** Drops everything cached for one tile, e.g. after its image changed */
+	public void invalidate(short id) {
+		if (id < averageColors.length)
+			averageColors[id] = 0;
+		BufferedImage[] chain = mipmaps.remove(id);
+		if (chain != null)
+			for (BufferedImage level : chain)
+				bytesUsed -= sizeOf(level);
+		Iterator<Map.Entry<Long, BufferedImage>> it = scaled.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, BufferedImage> entry = it.next();
+			if ((short)(entry.getKey() >>> 32) == id) {
+				bytesUsed -= sizeOf(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		scaled.clear();
+		mipmaps.clear();
+		averageColors = new int[0];
+		bytesUsed = 0;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/** Builds (once) the mipmap chain for a tile, or returns null if its image isn't ready */
+	private BufferedImage[] getMipmaps(short id) {
+		BufferedImage[] chain = mipmaps.get(id);
+		if (chain != null)
+			return chain;
+		Image original = TilePalette.getShared().getImage(id);
+		if (original == null || original.getWidth(null) <= 0 || original.getHeight(null) <= 0)
+			return null;
+
+		int levels = 1;
+		for (int w = original.getWidth(null), h = original.getHeight(null); w > 1 || h > 1; w = Math.max(1, w / 2), h = Math.max(1, h / 2))
+			levels++;
+		chain = new BufferedImage[levels];
+		chain[0] = scale(original, original.getWidth(null), original.getHeight(null));
+		for (int i = 1; i < levels; i++)
+			chain[i] = scale(chain[i - 1], Math.max(1, chain[i - 1].getWidth() / 2), Math.max(1, chain[i - 1].getHeight() / 2));
+
+		for (BufferedImage level : chain)
+			bytesUsed += sizeOf(level);
+		mipmaps.put(id, chain);
+		return chain;
+	}
+
+	/** Throws out the least recently used scaled images until we're back under budget.
+	 *  Mipmaps are kept since they're needed to rebuild any size. */
+	private void evict() {
+		Iterator<BufferedImage> it = scaled.values().iterator();
+		while (bytesUsed > budget && it.hasNext()) {
+			bytesUsed -= sizeOf(it.next());
+			it.remove();
+		}
+	}
+
+	/** Draws src into a new display-compatible image of the given size */
+	private static BufferedImage scale(Image src, int width, int height) {
+		BufferedImage img = createCompatibleImage(width, height);
+		Graphics2D g2 = img.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g2.drawImage(src, 0, 0, width, height, null);
+		g2.dispose();
+		return img;
+	}
+
+	/** A translucent image in the screen's native format, so blitting it needs no conversion */
+	static BufferedImage createCompatibleImage(int width, int height) {
+		if (GraphicsEnvironment.isHeadless())
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+	}
+
+	private static long sizeOf(BufferedImage img) {
+		return 4L * img.getWidth() * img.getHeight();
+	}
+}
\ No newline at end of file
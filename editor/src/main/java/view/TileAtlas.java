@@ -0,0 +1,130 @@
+package view;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.AtlasPacker;
+import model.TilePalette;
+
+/**
+ * The tile images at the current cell size packed into a few large pages, so drawing a
+ * level copies sub-rectangles out of one image instead of switching source images for
+ * almost every cell.  Tiles are added the first time they're drawn, which at one cell
+ * size makes every slot the same size.  Changing the cell size starts over.
+ *
+ * The pages are limited by a memory budget in bytes, which can be set with the system
+ * property leveleditor.atlasBytes.  Tiles that don't fit, and tiles bigger than a page,
+ * are drawn straight from the ScaledTileCache instead.  Only meant to be used from the
+ * Swing event thread.
+ */
+public class TileAtlas {
+
+	public static final long DEFAULT_BUDGET = 64L << 20;
+	public static final int PAGE_SIZE = 2048;
+
+	private static final int UNPLACED = -1;		// Not in the atlas yet
+	private static final int NO_ROOM = -2;		// Won't fit, draw it from the tile cache
+
+	private ScaledTileCache tileCache;
+	private ArrayList<BufferedImage> pages;
+	private AtlasPacker packer;
+	private long[] slots;					// Tile ID -> page << 48 | x << 24 | y, or UNPLACED or NO_ROOM
+	private int cellWidth;					// Size the tiles are packed at
+	private int cellHeight;
+	private long budget;
+	private long bytesUsed;
+
+	public TileAtlas(ScaledTileCache tileCache) {
+		this.tileCache = tileCache;
+		budget = Long.getLong("leveleditor.atlasBytes", DEFAULT_BUDGET);
+		pages = new ArrayList<BufferedImage>();
+		slots = new long[0];
+	}
+
+	/** Draws a tile at (x, y) at the given cell size, adding it to the atlas if needed */
+	public void draw(Graphics g, short id, int x, int y, int cellWidth, int cellHeight) {
+		if (id == TilePalette.EMPTY)
+			return;
+		if (cellWidth != this.cellWidth || cellHeight != this.cellHeight) {
+			clear();
+			this.cellWidth = cellWidth;
+			this.cellHeight = cellHeight;
+		}
+		long slot = slot(id);
+		if (slot == UNPLACED)
+			slot = place(id);
+		if (slot == NO_ROOM || slot == UNPLACED) {
+			Image img = tileCache.get(id, cellWidth, cellHeight);
+			if (img != null)
+				g.drawImage(img, x, y, cellWidth, cellHeight, null);
+			return;
+		}
+		int sx = (int)(slot >>> 24) & 0xffffff;
+		int sy = (int)slot & 0xffffff;
+		g.drawImage(pages.get((int)(slot >>> 48)), x, y, x + cellWidth, y + cellHeight, sx, sy, sx + cellWidth, sy + cellHeight, null);
+	}
+
+	/** Throws the pages away, e.g. after tile images finished loading */
+	public void clear() {
+		pages.clear();
+		packer = null;
+		slots = new long[0];
+		bytesUsed = 0;
+	}
+
+	public int numPages() {
+		return pages.size();
+	}
+
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	private long slot(short id) {
+		return id < slots.length ? slots[id] : UNPLACED;
+	}
+
+	/** Copies a tile into the atlas, opening a page if needed.  Returns its slot, NO_ROOM,
+	 *  or UNPLACED if its image isn't ready to be packed yet. */
+	private long place(short id) {
+		if (id >= slots.length) {
+			int oldLength = slots.length;
+			slots = Arrays.copyOf(slots, Math.max(id + 1, slots.length * 2));
+			Arrays.fill(slots, oldLength, slots.length, UNPLACED);
+		}
+
+		// A tile that's still loading comes back at some other size, don't pack it yet
+		Image img = tileCache.get(id, cellWidth, cellHeight);
+		if (img == null || img.getWidth(null) != cellWidth || img.getHeight(null) != cellHeight)
+			return UNPLACED;
+
+		if (packer == null) {
+			// Pages only need to be big enough for the whole palette at this size
+			int perSide = (int)Math.ceil(Math.sqrt(TilePalette.getShared().size()));
+			packer = new AtlasPacker(Math.min(PAGE_SIZE, cellWidth * perSide), Math.min(PAGE_SIZE, cellHeight * perSide), 0);
+		}
+		int[] place = packer.add(cellWidth, cellHeight);
+		if (place == null) {
+			slots[id] = NO_ROOM;
+			return NO_ROOM;
+		}
+		if (place[0] == pages.size()) {
+			long pageBytes = 4L * packer.pageWidth() * packer.pageHeight();
+			if (bytesUsed + pageBytes > budget) {
+				slots[id] = NO_ROOM;
+				return NO_ROOM;
+			}
+			pages.add(ScaledTileCache.createCompatibleImage(packer.pageWidth(), packer.pageHeight()));
+			bytesUsed += pageBytes;
+		}
+
+		Graphics2D g2 = pages.get(place[0]).createGraphics();
+		g2.drawImage(img, place[1], place[2], null);
+		g2.dispose();
+		slots[id] = ((long)place[0] << 48) | ((long)place[1] << 24) | place[2];
+		return slots[id];
+	}
+}
@@ -0,0 +1,29 @@
+package view;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for decoding a tile image on one of TileImageLoader's threads.
+ */
+@Name("leveleditor.TileDecode")
+@Label("Tile Decode")
+@Category({"Level Editor", "Images"})
+@Description("Decoding a tile image or its cached preview")
+class TileDecodeEvent extends Event {
+
+	@Label("File")
+	String file;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Preview")
+	@Description("Only the downscaled cached preview was decoded, not the full image")
+	boolean preview;
+}
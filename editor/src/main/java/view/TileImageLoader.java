@@ -0,0 +1,256 @@
+package view;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import model.TilePalette;
+
+/**
+ * Decodes the tile images on a pool of worker threads so windows can be shown right
+ * away.  Each tile starts out as an ImageIcon holding a transparent placeholder, and
+ * the placeholder is swapped for the real image, in both the icon and the TilePalette,
+ * on the Swing event thread when it's ready, after which ChangeListeners are told so they can repaint.
+ *
+ * A downscaled preview of every tile (at most PREVIEW_SIZE pixels on a side) is kept in
+ * a cache folder, keyed by the image's path, size and modification time.  When a preview
+ * is cached only the preview is decoded; the full image is only decoded once something
+ * needs the tile drawn bigger than the preview.  The folder can be set with the system
+ * property leveleditor.thumbnailDir.
+ */
+public class TileImageLoader {
+
+	public static final int PREVIEW_SIZE = 64;
+
+	private static final TileImageLoader shared = new TileImageLoader();
+
+	private ExecutorService decoders;
+	private File cacheDir;
+	private HashMap<Short, ImageIcon> icons;					// Tile ID -> icon handed out for it
+	private HashMap<Short, File> files;						// Tile ID -> image file
+	private Set<Short> previewOnly;							// Tiles whose icon holds just the cached preview
+	private ConcurrentLinkedQueue<Loaded> loaded;				// Decoded images waiting to be swapped in
+	private AtomicBoolean swapScheduled;
+	private ArrayList<ChangeListener> listeners;
+
+	private TileImageLoader() {
+		decoders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Tile decoder");
+				t.setDaemon(true);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+		String dir = System.getProperty("leveleditor.thumbnailDir");
+		cacheDir = dir != null ? new File(dir) : new File(System.getProperty("user.home"), ".leveleditor" + File.separator + "thumbnails");
+		icons = new HashMap<Short, ImageIcon>();
+		files = new HashMap<Short, File>();
+		previewOnly = ConcurrentHashMap.newKeySet();
+		loaded = new ConcurrentLinkedQueue<Loaded>();
+		swapScheduled = new AtomicBoolean();
+		listeners = new ArrayList<ChangeListener>();
+	}
+
+	/** The loader shared by every window, so each image is only decoded once */
+	public static TileImageLoader getShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the palette ID of the tile in file, registering it with a placeholder icon
+	 * and queueing it for decoding the first time it's asked for.  Must be called on the
+	 * Swing event thread.
+	 */
+	public short load(File file) {
+		TilePalette palette = TilePalette.getShared();
+		short id = palette.idOf(file.getName());
+		if (id != TilePalette.EMPTY && icons.containsKey(id))
+			return id;
+
+		Image placeholder = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		id = palette.intern(placeholder, file.getName());
+		if (palette.getImage(id) == null) {
+			// Named by a level before its image was loaded, so it has no image yet
+			palette.setImage(id, placeholder);
+		}
+		ImageIcon icon = new ImageIcon(palette.getImage(id));
+		icons.put(id, icon);
+		files.put(id, file);
+		final short tileId = id;
+		decoders.execute(new Runnable() {
+			@Override
+			public void run() {
+				decode(tileId, file, true);
+			}
+		});
+		return id;
+	}
+
+	/** Returns the icon handed out for a tile ID, or null if it isn't one of ours */
+	public ImageIcon getIcon(short id) {
+		return icons.get(id);
+	}
+
+	/** Tells the loader a tile is about to be drawn at width x height, so a tile that only
+	 *  has its preview so far gets fully decoded if the preview is too small */
+	public void needSize(short id, int width, int height) {
+		if (width <= PREVIEW_SIZE && height <= PREVIEW_SIZE || !previewOnly.remove(id))
+			return;
+		final File file = files.get(id);
+		decoders.execute(new Runnable() {
+			@Override
+			public void run() {
+				decode(id, file, false);
+			}
+		});
+	}
+
+	public void addChangeListener(ChangeListener l) {
+		listeners.add(l);
+	}
+
+	public void removeChangeListener(ChangeListener l) {
+		listeners.remove(l);
+	}
+
+	/** Worker thread: decodes a tile from its cached preview if allowed and available, or
+	 *  from its file, caching a new preview along the way */
+	private void decode(short id, File file, boolean previewOk) {
+		TileDecodeEvent event = new TileDecodeEvent();
+		event.begin();
+		File preview = previewFile(file);
+		BufferedImage img = null;
+		boolean isPreview = false;
+		try {
+			if (previewOk && preview.exists()) {
+				img = ImageIO.read(preview);
+				// A preview smaller than PREVIEW_SIZE either way is the whole image
+				isPreview = img != null && (img.getWidth() == PREVIEW_SIZE || img.getHeight() == PREVIEW_SIZE);
+			}
+		} catch (IOException e) {
+			img = null;
+		}
+
+		Image full = null;
+		if (img == null) {
+			try {
+				img = ImageIO.read(file);
+			} catch (IOException e) {
+				img = null;
+			}
+			if (img == null)
+				full = new ImageIcon(file.getPath()).getImage();		// Formats ImageIO can't read
+			else if (!preview.exists())
+				savePreview(img, preview);
+		}
+
+		Image decoded = full != null ? full : img;
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = file.getName();
+			event.width = decoded.getWidth(null);
+			event.height = decoded.getHeight(null);
+			event.preview = isPreview;
+			event.commit();
+		}
+
+		if (isPreview)
+			previewOnly.add(id);
+		loaded.add(new Loaded(id, decoded));
+		if (swapScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					swapLoaded();
+				}
+			});
+		}
+	}
+
+	/** Event thread: puts every decoded image into its icon and the palette and tells the
+	 *  listeners once */
+	private void swapLoaded() {
+		swapScheduled.set(false);
+		TilePalette palette = TilePalette.getShared();
+		ScaledTileCache tileCache = ScaledTileCache.getShared();
+		Loaded next;
+		boolean any = false;
+		while ((next = loaded.poll()) != null) {
+			icons.get(next.id).setImage(next.image);
+			palette.setImage(next.id, next.image);
+			tileCache.invalidate(next.id);
+			any = true;
+		}
+		if (!any)
+			return;
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener l : new ArrayList<ChangeListener>(listeners))
+			l.stateChanged(event);
+	}
+
+	/** Cache file for an image's preview, named after its path, size and modification time */
+	private File previewFile(File file) {
+		String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+		return new File(cacheDir, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".png");
+	}
+
+	private void savePreview(BufferedImage img, File preview) {
+		double scale = Math.min(1.0, (double)PREVIEW_SIZE / Math.max(img.getWidth(), img.getHeight()));
+		int width = Math.max(1, (int)Math.round(img.getWidth() * scale));
+		int height = Math.max(1, (int)Math.round(img.getHeight() * scale));
+		BufferedImage small = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = small.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(img, 0, 0, width, height, null);
+		g2.dispose();
+
+		File temp = new File(cacheDir, preview.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			cacheDir.mkdirs();
+			ImageIO.write(small, "png", temp);
+			try {
+				Files.move(temp.toPath(), preview.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), preview.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// The cache is only an optimization
+			temp.delete();
+		}
+	}
+
+	/** A decoded image on its way to the event thread */
+	private static class Loaded {
+		final short id;
+		final Image image;
+
+		Loaded(short id, Image image) {
+			this.id = id;
+			this.image = image;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package view;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.AbstractListModel;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import model.TileNameIndex;
+
+/**
+ * The list of tiles to paint with.  Left-clicking a tile makes it the left-click brush and
+ * right-clicking makes it the right-click brush; the two brushes are shown above the list.
+ * Typing in the search field narrows the list down to the tiles whose names contain the
+ * text.
+ *
+ * The list has a fixed row size so JList only ever lays out and paints the rows that are
+ * on screen, and the renderer keeps one thumbnail per tile, so thousands of tiles scroll
+ * as smoothly as a handful.
+ */
+public class TilePalettePanel extends JPanel {
+
+	private static final long serialVersionUID = -4710366385318093527L;
+
+	private ImageIcon[] images;
+	private ComboBoxRenderer renderer;
+	private TileNameIndex nameIndex;		// Searches the tile names
+	private FilteredTiles filtered;			// Indices into images matching the search
+	private JList<Integer> list;
+	private JTextField search;
+	private JLabel leftLabel;				// Shows the left-click brush
+	private JLabel rightLabel;				// Shows the right-click brush
+	private int leftBrush;					// Index into images, or -1 for none
+	private int rightBrush;
+
+	/** images and tileIds are the view's arrays of tile icons and their palette IDs */
+	public TilePalettePanel(ImageIcon[] images, short[] tileIds) {
+		this.images = images;
+		setLayout(new BorderLayout());
+		setBackground(Color.GRAY);
+		setPreferredSize(new Dimension(180, 0));
+
+		String[] names = new String[images.length];
+		for (int i = 0; i < images.length; i++)
+			names[i] = images[i].getDescription();
+		nameIndex = new TileNameIndex(names);
+		renderer = new ComboBoxRenderer(images, tileIds);
+
+		// The current brushes
+		leftBrush = images.length > 0 ? 0 : -1;
+		rightBrush = leftBrush;
+		leftLabel = new JLabel();
+		leftLabel.setBorder(new TitledBorder("Left click"));
+		leftLabel.setHorizontalTextPosition(JLabel.CENTER);
+		leftLabel.setVerticalTextPosition(JLabel.BOTTOM);
+		rightLabel = new JLabel();
+		rightLabel.setBorder(new TitledBorder("Right click"));
+		rightLabel.setHorizontalTextPosition(JLabel.CENTER);
+		rightLabel.setVerticalTextPosition(JLabel.BOTTOM);
+		JPanel brushPanel = new JPanel(new GridLayout(1, 2));
+		brushPanel.setBackground(Color.GRAY);
+		brushPanel.add(leftLabel);
+		brushPanel.add(rightLabel);
+
+		search = new JTextField();
+		search.setBorder(new TitledBorder("Search"));
+		search.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				filtered.setMatches(nameIndex.find(search.getText()));
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				filtered.setMatches(nameIndex.find(search.getText()));
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+
+		JPanel top = new JPanel(new BorderLayout());
+		top.setBackground(Color.GRAY);
+		top.add(brushPanel, BorderLayout.PAGE_START);
+		top.add(search, BorderLayout.PAGE_END);
+
+		// Fixed cell sizes keep JList from asking the renderer to measure every row
+		filtered = new FilteredTiles(nameIndex.find(""));
+		list = new JList<Integer>(filtered);
+		list.setCellRenderer(renderer);
+		list.setFixedCellHeight(ComboBoxRenderer.THUMBNAIL_SIZE + 4);
+		list.setFixedCellWidth(150);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				int row = list.locationToIndex(e.getPoint());
+				if (row < 0 || !list.getCellBounds(row, row).contains(e.getPoint()))
+					return;
+				if (SwingUtilities.isRightMouseButton(e))
+					setRightBrush(filtered.getElementAt(row));
+				else
+					setLeftBrush(filtered.getElementAt(row));
+			}
+		});
+
+		add(top, BorderLayout.PAGE_START);
+		add(new JScrollPane(list, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.CENTER);
+		updateBrushLabels();
+	}
+
+	/** Index into the view's images of the left-click brush, or -1 if there are no tiles */
+	public int getLeftBrush() {
+		return leftBrush;
+	}
+
+	/** Index into the view's images of the right-click brush, or -1 if there are no tiles */
+	public int getRightBrush() {
+		return rightBrush;
+	}
+
+	public void setLeftBrush(int index) {
+		leftBrush = index;
+		updateBrushLabels();
+	}
+
+	public void setRightBrush(int index) {
+		rightBrush = index;
+		updateBrushLabels();
+	}
+
+	/** Rebuilds the thumbnails, e.g. after tile images finished loading */
+	public void imagesChanged() {
+		renderer.clearThumbnails();
+		updateBrushLabels();
+		list.repaint();
+	}
+
+	private void updateBrushLabels() {
+		updateBrushLabel(leftLabel, leftBrush);
+		updateBrushLabel(rightLabel, rightBrush);
+	}
+
+	private void updateBrushLabel(JLabel label, int index) {
+		if (index < 0) {
+			label.setIcon(null);
+			label.setText("(none)");
+			return;
+		}
+		label.setIcon(renderer.getThumbnail(index));
+		label.setText(images[index].getDescription());
+	}
+
+	/** The tiles matching the search, in the order the name index returned them */
+	private static class FilteredTiles extends AbstractListModel<Integer> {
+
+		private static final long serialVersionUID = 2918054328427162385L;
+
+		private int[] matches;
+
+		FilteredTiles(int[] matches) {
+			this.matches = matches;
+		}
+
+		void setMatches(int[] matches) {
+			int changed = Math.max(this.matches.length, matches.length);
+			this.matches = matches;
+			if (changed > 0)
+				fireContentsChanged(this, 0, changed - 1);
+		}
+
+		@Override
+		public int getSize() {
+			return matches.length;
+		}
+
+		@Override
+		public Integer getElementAt(int index) {
+			return matches[index];
+		}
+	}
+}